@@ -0,0 +1,77 @@
+package org.benchchat;
+
+import org.protocolchat.Frame;
+import org.protocolchat.Opcode;
+import org.protocolchat.Protocol;
+import org.serverchat.ClientHandler;
+import org.serverchat.WireFormat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Подключение клиентов к серверу внутри процесса бенчмарка.
+ * <p>
+ * Клиент — это {@link ClientHandler} поверх {@link InMemoryTransport}; данные «от клиента» передаются
+ * в {@link ClientHandler#handleInput(ByteBuffer)} так же, как их передаёт цикл событий неблокирующего сервера,
+ * поэтому регистрация, комнаты и рассылка работают по тем же путям, что и с настоящими сокетами.
+ * </p>
+ */
+final class BenchmarkClients {
+
+    private BenchmarkClients() {
+    }
+
+    /**
+     * Подключает клиента и регистрирует его имя.
+     *
+     * @param username Имя пользователя.
+     * @param wireFormat Протокол клиента: {@link WireFormat#LINE} или бинарный.
+     * @return Зарегистрированный клиент в комнате по умолчанию.
+     * @throws IOException если сервер не принял данные клиента.
+     */
+    static ClientHandler connect(String username, WireFormat wireFormat) throws IOException {
+        ClientHandler client = new ClientHandler(new InMemoryTransport());
+        if (wireFormat == WireFormat.LINE) {
+            client.handleInput(ByteBuffer.wrap((username + "\n").getBytes(StandardCharsets.UTF_8)));
+        } else {
+            ByteArrayOutputStream handshake = new ByteArrayOutputStream();
+            handshake.write(Protocol.MAGIC);
+            handshake.write(Frame.hello(Protocol.VERSION).encode());
+            handshake.write(Frame.of(Opcode.USERNAME, username).encode());
+            client.handleInput(ByteBuffer.wrap(handshake.toByteArray()));
+        }
+        if (client.username == null) {
+            throw new IllegalStateException("Имя пользователя '" + username + "' не зарегистрировано");
+        }
+        return client;
+    }
+
+    /**
+     * Кодирует строку сообщения или команды так, как её отправил бы клиент с указанным протоколом.
+     *
+     * @param line Сообщение или команда строкового протокола (например, {@code /kick имя}).
+     * @param wireFormat Протокол клиента.
+     * @return Байты, которые нужно передать в {@link ClientHandler#handleInput(ByteBuffer)}.
+     */
+    static byte[] encode(String line, WireFormat wireFormat) {
+        return wireFormat == WireFormat.LINE
+                ? (line + "\n").getBytes(StandardCharsets.UTF_8)
+                : Frame.fromLine(line).encode();
+    }
+
+    /**
+     * Отключает клиентов без уведомления остальных участников.
+     *
+     * @param clients Клиенты.
+     */
+    static void disconnectAll(ClientHandler... clients) {
+        for (ClientHandler client : clients) {
+            if (client != null) {
+                client.cleanupClientResources(false);
+            }
+        }
+    }
+}
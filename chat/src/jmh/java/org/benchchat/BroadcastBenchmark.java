@@ -0,0 +1,93 @@
+package org.benchchat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.serverchat.ClientHandler;
+import org.serverchat.WireFormat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Рассылка сообщения участникам комнаты ({@link ClientHandler#broadcastMessage(String)}) в зависимости
+ * от размера комнаты и протокола клиентов.
+ * <p>
+ * {@code broadcastMessage} измеряет саму рассылку: снимок участников, однократное кодирование
+ * и постановку в очередь каждому получателю. {@code chatInput} — полный путь сообщения от клиента:
+ * разбор входящих байтов, обработка команды и та же рассылка.
+ * </p>
+ *
+ * <p>Переменные класса:</p>
+ * <ul>
+ *   <li>{@code roomSize} — Число участников комнаты вместе с отправителем.</li>
+ *   <li>{@code wireFormat} — Протокол всех клиентов комнаты.</li>
+ *   <li>{@code clients} — Участники комнаты; первый — отправитель.</li>
+ *   <li>{@code chatInput} — Сообщение отправителя в байтах его протокола.</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BroadcastBenchmark {
+
+    private static final String MESSAGE = "Всем привет! Сборка прошла, можно выкатывать.";
+
+    @Param({"10", "100", "1000"})
+    public int roomSize;
+
+    @Param({"LINE", "BINARY"})
+    public WireFormat wireFormat;
+
+    private ClientHandler[] clients;
+    private byte[] chatInput;
+
+    /**
+     * Подключает участников комнаты.
+     *
+     * @throws IOException если сервер не принял данные клиента.
+     */
+    @Setup(Level.Trial)
+    public void connectClients() throws IOException {
+        clients = new ClientHandler[roomSize];
+        for (int i = 0; i < roomSize; i++) {
+            clients[i] = BenchmarkClients.connect("user" + i, wireFormat);
+        }
+        chatInput = BenchmarkClients.encode(MESSAGE, wireFormat);
+    }
+
+    /**
+     * Отключает участников комнаты.
+     */
+    @TearDown(Level.Trial)
+    public void disconnectClients() {
+        BenchmarkClients.disconnectAll(clients);
+    }
+
+    /**
+     * Рассылка готового сообщения всем участникам комнаты.
+     */
+    @Benchmark
+    public void broadcastMessage() {
+        clients[0].broadcastMessage(MESSAGE);
+    }
+
+    /**
+     * Обработка сообщения от клиента: разбор, проверка и рассылка остальным участникам.
+     *
+     * @return {@code false}, если сервер прекратил чтение от клиента.
+     * @throws IOException если сервер не принял данные клиента.
+     */
+    @Benchmark
+    public boolean chatInput() throws IOException {
+        return clients[0].handleInput(ByteBuffer.wrap(chatInput));
+    }
+}
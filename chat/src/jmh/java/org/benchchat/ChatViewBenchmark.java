@@ -0,0 +1,198 @@
+package org.benchchat;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.scene.Scene;
+import javafx.scene.control.ListView;
+import javafx.scene.control.TextArea;
+import javafx.scene.layout.StackPane;
+import javafx.stage.Stage;
+import org.clientchat.ChatHistory;
+import org.clientchat.UIHandler;
+import org.serverchat.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Измеряет, сколько строк в секунду окно чата принимает, сохраняя 60 кадров в секунду.
+ * <p>
+ * Окно открывается с историей, уже заполненной до размера {@value ChatHistory#SCROLLBACK_PROPERTY}
+ * (у {@link TextArea} — тем же числом строк), и на каждом кадре ({@link AnimationTimer}) в чат добавляется
+ * {@code N} строк так, как их добавляет клиент: в список — одним пакетом за кадр
+ * ({@link org.clientchat.ChatUpdateQueue}), в {@link TextArea} — по одной, как это делал прежний клиент.
+ * {@code N} удваивается каждые несколько секунд; для каждого шага печатаются строки в секунду, частота кадров
+ * и 99-й процентиль длительности кадра. Итог — наибольшая скорость, при которой частота кадров не опускается
+ * ниже {@value #SUSTAINED_FPS}.
+ * </p>
+ *
+ * <p>Запуск: {@code ./gradlew runChatViewBenchmark -Pargs="list 3"} (вид {@code list} — {@link ListView}
+ * на {@link ChatHistory}, {@code textarea} — прежний {@link TextArea}; длительность шага в секундах).</p>
+ *
+ * <p>Переменные класса:</p>
+ * <ul>
+ *   <li>{@code SUSTAINED_FPS} — Наименьшая частота кадров, которая считается удержанием 60 кадров в секунду.</li>
+ *   <li>{@code MIN_FPS} — Частота кадров, ниже которой замер прекращается.</li>
+ *   <li>{@code MAX_LINES_PER_FRAME} — Наибольшее число строк за кадр.</li>
+ *   <li>{@code DEFAULT_STEP_SECONDS} — Длительность шага по умолчанию.</li>
+ *   <li>{@code SAMPLES} — Тексты сообщений.</li>
+ * </ul>
+ */
+public class ChatViewBenchmark {
+
+    private static final double SUSTAINED_FPS = 57;
+    private static final double MIN_FPS = 20;
+    private static final int MAX_LINES_PER_FRAME = 16384;
+    private static final int DEFAULT_STEP_SECONDS = 3;
+    private static final String[] SAMPLES = {
+            "Привет всем!",
+            "Кто-нибудь смотрел логи после вчерашнего релиза? Там что-то странное с таймаутами",
+            "ok",
+            "Deploy finished in 42s, all health checks are green",
+            "[лично] Вася: зайди в комнату dev, есть вопрос",
+    };
+
+    /**
+     * Точка входа бенчмарка.
+     *
+     * @param args Вид ({@code list} или {@code textarea}) и длительность шага в секундах.
+     * @throws InterruptedException если ожидание окончания замера прервано.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        boolean isTextArea = args.length > 0 && "textarea".equalsIgnoreCase(args[0]);
+        long stepNanos = TimeUnit.SECONDS.toNanos(args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_STEP_SECONDS);
+
+        CountDownLatch finished = new CountDownLatch(1);
+        Platform.startup(() -> start(isTextArea, stepNanos, finished));
+        finished.await();
+        Platform.exit();
+    }
+
+    /**
+     * Открывает окно с заполненной историей и запускает замер. Выполняется в потоке JavaFX.
+     *
+     * @param isTextArea {@code true} — замер {@link TextArea}, {@code false} — списка на {@link ChatHistory}.
+     * @param stepNanos Длительность шага в наносекундах.
+     * @param finished Защёлка, которая открывается по окончании замера.
+     */
+    private static void start(boolean isTextArea, long stepNanos, CountDownLatch finished) {
+        ChatHistory history = ChatHistory.fromSystemProperty();
+        StackPane root = new StackPane();
+        LineSink sink;
+        if (isTextArea) {
+            TextArea area = new TextArea();
+            area.setEditable(false);
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < history.getCapacity(); i++) {
+                text.append(line(i)).append('\n');
+            }
+            area.setText(text.toString());
+            root.getChildren().add(area);
+            sink = frameLines -> {
+                for (String line : frameLines) {
+                    area.appendText(line + "\n");
+                }
+            };
+        } else {
+            ListView<String> list = new UIHandler().createMessagesList(history);
+            List<String> lines = new ArrayList<>(history.getCapacity());
+            for (int i = 0; i < history.getCapacity(); i++) {
+                lines.add(line(i));
+            }
+            history.appendAll(lines);
+            root.getChildren().add(list);
+            sink = frameLines -> {
+                history.appendAll(frameLines);
+                list.scrollTo(history.size() - 1);
+            };
+        }
+
+        Stage stage = new Stage();
+        stage.setTitle("Chat view benchmark");
+        stage.setScene(new Scene(root, 540, 440));
+        stage.show();
+
+        System.out.printf(Locale.ROOT, "View: %s, scrollback: %d lines%n",
+                isTextArea ? "TextArea" : "ListView + ChatHistory", history.getCapacity());
+        System.out.printf(Locale.ROOT, "%14s %12s %8s %14s%n", "lines/frame", "lines/s", "fps", "p99 frame ms");
+
+        new AnimationTimer() {
+            private int linesPerFrame = 1;
+            private int next = history.getCapacity();
+            private long stepStart = 0;
+            private long lastFrame = 0;
+            private long frames = 0;
+            private long lines = 0;
+            private double sustainedLinesPerSecond = 0;
+            private LatencyHistogram frameTimes = new LatencyHistogram();
+            private final List<String> frameLines = new ArrayList<>();
+
+            @Override
+            public void handle(long now) {
+                if (lastFrame == 0) {
+                    stepStart = now;
+                } else {
+                    frameTimes.record(TimeUnit.NANOSECONDS.toMicros(now - lastFrame));
+                    frames++;
+                }
+                lastFrame = now;
+
+                if (now - stepStart >= stepNanos) {
+                    double seconds = (now - stepStart) / 1e9;
+                    double fps = frames / seconds;
+                    double linesPerSecond = lines / seconds;
+                    System.out.printf(Locale.ROOT, "%14d %12.0f %8.1f %14.2f%n", linesPerFrame, linesPerSecond, fps,
+                            frameTimes.getPercentile(0.99) / 1000.0);
+                    if (fps >= SUSTAINED_FPS) {
+                        sustainedLinesPerSecond = Math.max(sustainedLinesPerSecond, linesPerSecond);
+                    }
+                    if (fps < MIN_FPS || linesPerFrame >= MAX_LINES_PER_FRAME) {
+                        stop();
+                        System.out.printf(Locale.ROOT, "Sustained at 60 fps: %.0f lines/s%n", sustainedLinesPerSecond);
+                        stage.close();
+                        finished.countDown();
+                        return;
+                    }
+                    linesPerFrame *= 2;
+                    stepStart = now;
+                    frames = 0;
+                    lines = 0;
+                    frameTimes = new LatencyHistogram();
+                }
+
+                for (int i = 0; i < linesPerFrame; i++) {
+                    frameLines.add(line(next++));
+                }
+                sink.append(frameLines);
+                frameLines.clear();
+                lines += linesPerFrame;
+            }
+        }.start();
+    }
+
+    /**
+     * Формирует строку чата с заданным номером.
+     *
+     * @param index Номер строки.
+     * @return Строка чата.
+     */
+    private static String line(int index) {
+        return "Пользователь" + (index % 50) + ": " + SAMPLES[index % SAMPLES.length] + " #" + index;
+    }
+
+    /**
+     * Способ добавления строк кадра в проверяемый вид.
+     */
+    private interface LineSink {
+
+        /**
+         * Добавляет строки в чат.
+         *
+         * @param frameLines Строки чата, полученные за кадр.
+         */
+        void append(List<String> frameLines);
+    }
+}
@@ -0,0 +1,138 @@
+package org.benchchat;
+
+import org.clientchat.ClientConnection;
+import org.serverchat.Server;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.Locale;
+
+/**
+ * Измеряет число TLS-рукопожатий в секунду: полных и с возобновлением сессии.
+ * <p>
+ * Сервер запускается в том же процессе на свободном порту с SSL-контекстом и кэшем сессий из
+ * {@link Server#setupSSLContext()}, клиент использует общий контекст {@link ClientConnection#getSslContext()}.
+ * Каждое соединение выполняет рукопожатие, читает один байт (вместе с ним клиент получает билет сессии)
+ * и закрывается. Для полных рукопожатий кэш клиентских сессий очищается перед каждым подключением,
+ * для возобновлённых — сохраняется.
+ * </p>
+ *
+ * <p>Запуск: {@code ./gradlew runHandshakeBenchmark -Pargs="1000 200"} (число рукопожатий и прогрев).</p>
+ *
+ * <p>Переменные класса:</p>
+ * <ul>
+ *   <li>{@code DEFAULT_HANDSHAKES} — Число измеряемых рукопожатий каждого вида по умолчанию.</li>
+ *   <li>{@code DEFAULT_WARMUP} — Число рукопожатий прогрева каждого вида по умолчанию.</li>
+ * </ul>
+ */
+public class HandshakeBenchmark {
+
+    private static final int DEFAULT_HANDSHAKES = 1000;
+    private static final int DEFAULT_WARMUP = 200;
+
+    /**
+     * Точка входа бенчмарка.
+     *
+     * @param args Число измеряемых рукопожатий и число рукопожатий прогрева.
+     * @throws Exception При ошибке настройки SSL или соединения.
+     */
+    public static void main(String[] args) throws Exception {
+        int handshakes = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_HANDSHAKES;
+        int warmup = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_WARMUP;
+
+        SSLContext serverContext = new Server().setupSSLContext();
+        SSLContext clientContext = ClientConnection.getSslContext();
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+
+        try (SSLServerSocket serverSocket = (SSLServerSocket) serverContext.getServerSocketFactory()
+                .createServerSocket(0, 50, loopback)) {
+            Thread acceptor = new Thread(() -> acceptLoop(serverSocket), "handshake-acceptor");
+            acceptor.setDaemon(true);
+            acceptor.start();
+            int port = serverSocket.getLocalPort();
+
+            run(clientContext, loopback, port, warmup, false);
+            run(clientContext, loopback, port, warmup, true);
+            double full = run(clientContext, loopback, port, handshakes, false);
+            double resumed = run(clientContext, loopback, port, handshakes, true);
+
+            System.out.printf(Locale.ROOT, "Full handshakes:    %10.1f/s%n", full);
+            System.out.printf(Locale.ROOT, "Resumed handshakes: %10.1f/s (x%.2f)%n", resumed, resumed / full);
+        }
+    }
+
+    /**
+     * Выполняет серию подключений и возвращает их скорость.
+     *
+     * @param context SSL-контекст клиента.
+     * @param address Адрес сервера.
+     * @param port Порт сервера.
+     * @param count Число подключений.
+     * @param isResumed {@code true}, если сессии нужно возобновлять; {@code false} — выполнять полные рукопожатия.
+     * @return Число рукопожатий в секунду.
+     * @throws IOException При ошибке соединения.
+     */
+    private static double run(SSLContext context, InetAddress address, int port, int count, boolean isResumed)
+            throws IOException {
+        SSLSessionContext sessions = context.getClientSessionContext();
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            if (!isResumed) {
+                forgetSessions(sessions);
+            }
+            try (SSLSocket socket = (SSLSocket) context.getSocketFactory().createSocket(address, port)) {
+                socket.setTcpNoDelay(true);
+                socket.startHandshake();
+                if (socket.getInputStream().read() < 0) {
+                    throw new IOException("Сервер закрыл соединение до ответа");
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        return count * 1e9 / elapsed;
+    }
+
+    /**
+     * Удаляет все сессии из кэша клиента, чтобы следующее подключение выполнило полное рукопожатие.
+     *
+     * @param sessions Кэш клиентских сессий.
+     */
+    private static void forgetSessions(SSLSessionContext sessions) {
+        for (byte[] id : Collections.list(sessions.getIds())) {
+            SSLSession session = sessions.getSession(id);
+            if (session != null) {
+                session.invalidate();
+            }
+        }
+    }
+
+    /**
+     * Принимает подключения: завершает рукопожатие, отправляет один байт и закрывает соединение.
+     * Билет сессии сервер отправляет сразу после рукопожатия, поэтому он приходит клиенту раньше этого байта.
+     *
+     * @param serverSocket Серверный сокет.
+     */
+    private static void acceptLoop(SSLServerSocket serverSocket) {
+        while (!serverSocket.isClosed()) {
+            try (SSLSocket socket = (SSLSocket) serverSocket.accept()) {
+                // Без задержки Нейгла мелкие записи рукопожатия не ждут подтверждения и не искажают замер
+                socket.setTcpNoDelay(true);
+                socket.startHandshake();
+                OutputStream output = socket.getOutputStream();
+                output.write(1);
+                output.flush();
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    System.err.println("Handshake failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package org.benchchat;
+
+import org.serverchat.ClientTransport;
+import org.serverchat.OutboundMessage;
+import org.serverchat.OutboundQueue;
+import org.serverchat.WireFormat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Транспорт без сокета для бенчмарков: сообщение сразу «отправляется» — кодируется в формате клиента
+ * и записывается в поток, который только считает байты. Так в замер попадают постановка в очередь
+ * и кодирование, но не сеть и не TLS.
+ *
+ * <p>Переменные класса:</p>
+ * <ul>
+ *   <li>{@code outboundQueue} — Очередь клиента; остаётся пустой, нужна для {@code /queues}.</li>
+ *   <li>{@code sink} — Поток, принимающий байты сообщений.</li>
+ *   <li>{@code wireFormat} — Формат, в котором сообщения кодируются для клиента.</li>
+ *   <li>{@code bytesWritten} — Число «отправленных» байтов.</li>
+ *   <li>{@code isClosed} — Флаг закрытого соединения.</li>
+ * </ul>
+ */
+public class InMemoryTransport implements ClientTransport {
+
+    private final OutboundQueue outboundQueue = new OutboundQueue();
+    private final OutputStream sink = new OutputStream() {
+        @Override
+        public void write(int b) {
+            bytesWritten++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bytesWritten += len;
+        }
+    };
+    private volatile WireFormat wireFormat = WireFormat.LINE;
+    private long bytesWritten = 0;
+    private volatile boolean isClosed = false;
+
+    @Override
+    public boolean send(OutboundMessage message) {
+        try {
+            message.writeTo(sink, wireFormat);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return true;
+    }
+
+    @Override
+    public OutboundQueue getOutboundQueue() {
+        return outboundQueue;
+    }
+
+    @Override
+    public void setWireFormat(WireFormat wireFormat) {
+        this.wireFormat = wireFormat;
+    }
+
+    @Override
+    public WireFormat getWireFormat() {
+        return wireFormat;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return isClosed;
+    }
+
+    @Override
+    public String getRemoteAddress() {
+        return "in-memory";
+    }
+
+    @Override
+    public void close() {
+        isClosed = true;
+    }
+
+    @Override
+    public void abort() {
+        isClosed = true;
+    }
+
+    /**
+     * Возвращает число байтов, записанных в транспорт.
+     *
+     * @return Число байтов.
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+}
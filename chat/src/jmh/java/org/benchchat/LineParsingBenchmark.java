@@ -0,0 +1,123 @@
+package org.benchchat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.serverchat.InboundDecoder;
+import org.serverchat.LineDecoder;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Разбор входящего потока строкового протокола на строки.
+ * <p>
+ * {@code bufferedReaderReadLine} — прежний способ сервера ({@link BufferedReader#readLine()} поверх потока сокета),
+ * {@code lineDecoder} — {@link LineDecoder}, который сервер использует сейчас, {@code inboundDecoder} — разбор
+ * строк вместе с переводом в кадры ({@link InboundDecoder}). Данные подаются порциями по размеру буфера чтения
+ * сервера; всего в данных {@code lines} сообщений латиницей и кириллицей.
+ * </p>
+ *
+ * <p>Переменные класса:</p>
+ * <ul>
+ *   <li>{@code READ_CHUNK_SIZE} — Размер порции данных, как у буфера чтения сервера.</li>
+ *   <li>{@code lines} — Число строк во входящих данных.</li>
+ *   <li>{@code input} — Входящие данные.</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LineParsingBenchmark {
+
+    private static final int READ_CHUNK_SIZE = 8 * 1024;
+    private static final String[] SAMPLES = {
+            "Привет всем!",
+            "/list",
+            "Кто-нибудь смотрел логи после вчерашнего релиза? Там что-то странное с таймаутами",
+            "ok",
+            "/msg Вася зайди в комнату dev, есть вопрос",
+            "Deploy finished in 42s, all health checks are green",
+    };
+
+    @Param({"1000"})
+    public int lines;
+
+    private byte[] input;
+
+    /**
+     * Формирует входящие данные.
+     */
+    @Setup(Level.Trial)
+    public void createInput() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            text.append(SAMPLES[i % SAMPLES.length]).append('\n');
+        }
+        input = text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Разбор через {@link BufferedReader#readLine()}.
+     *
+     * @param blackhole Приёмник строк.
+     * @throws IOException не возникает при чтении из памяти.
+     */
+    @Benchmark
+    public void bufferedReaderReadLine(Blackhole blackhole) throws IOException {
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new ByteArrayInputStream(input), StandardCharsets.UTF_8), READ_CHUNK_SIZE);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            blackhole.consume(line);
+        }
+    }
+
+    /**
+     * Разбор через {@link LineDecoder}.
+     *
+     * @param blackhole Приёмник строк.
+     * @throws IOException не возникает на корректных данных.
+     */
+    @Benchmark
+    public void lineDecoder(Blackhole blackhole) throws IOException {
+        LineDecoder decoder = new LineDecoder();
+        for (int offset = 0; offset < input.length; offset += READ_CHUNK_SIZE) {
+            int length = Math.min(READ_CHUNK_SIZE, input.length - offset);
+            decoder.decode(ByteBuffer.wrap(input, offset, length), line -> {
+                blackhole.consume(line);
+                return true;
+            });
+        }
+    }
+
+    /**
+     * Разбор через {@link InboundDecoder} с переводом строк в кадры.
+     *
+     * @param blackhole Приёмник кадров.
+     * @throws IOException не возникает на корректных данных.
+     */
+    @Benchmark
+    public void inboundDecoder(Blackhole blackhole) throws IOException {
+        InboundDecoder decoder = new InboundDecoder();
+        for (int offset = 0; offset < input.length; offset += READ_CHUNK_SIZE) {
+            int length = Math.min(READ_CHUNK_SIZE, input.length - offset);
+            decoder.decode(ByteBuffer.wrap(input, offset, length), frame -> {
+                blackhole.consume(frame);
+                return true;
+            });
+        }
+    }
+}
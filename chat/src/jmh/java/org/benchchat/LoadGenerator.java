@@ -0,0 +1,474 @@
+package org.benchchat;
+
+import org.clientchat.ClientConnection;
+import org.protocolchat.Frame;
+import org.protocolchat.Opcode;
+import org.serverchat.LatencyHistogram;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Нагрузочный клиент без интерфейса: подключает к серверу множество пользователей и измеряет задержку рассылки.
+ * <p>
+ * Каждый пользователь — отдельное соединение {@link ClientConnection} с уникальным именем и двумя виртуальными
+ * потоками: отправитель с заданной частотой пишет в чат сообщения с меткой времени отправки, читатель
+ * принимает рассылку и записывает задержку «отправка — получение» в гистограмму. Отправители и получатели
+ * работают в одном процессе, поэтому метки {@link System#nanoTime()} сравнимы. Если задано число активных
+ * пользователей, пишут только они (равномерно распределённые среди всех), а остальные держат соединение
+ * и только принимают рассылку — так проверяется сервер с большим числом простаивающих подключений.
+ * </p>
+ * <p>
+ * Прогон состоит из трёх фаз: разгон (пользователи подключаются равномерно), устойчивая нагрузка и переподключения
+ * (каждую секунду часть пользователей отключается, вместо них подключаются новые). Для каждой фазы выводится
+ * пропускная способность, процентили p50/p99/p999 задержки доставки и её распределение; сообщение относится
+ * к фазе, в которой оно отправлено.
+ * </p>
+ *
+ * <p>Запуск: {@code ./gradlew runLoadGenerator -Dchat.load.clients=5000 -Dchat.load.messagesPerSecond=0.2}.</p>
+ *
+ * <p>Переменные класса:</p>
+ * <ul>
+ *   <li>{@code *_PROPERTY} — Системные свойства с параметрами прогона (значения по умолчанию — в {@code DEFAULT_*}).</li>
+ *   <li>{@code MARKER} — Начало текста нагрузочного сообщения, после него идёт метка времени отправки.</li>
+ *   <li>{@code PERCENTILES} — Выводимые процентили.</li>
+ *   <li>{@code PERCENTILE_NAMES} — Названия процентилей в отчёте.</li>
+ *   <li>{@code host}, {@code port} — Адрес сервера.</li>
+ *   <li>{@code clientCount} — Число одновременно подключенных пользователей.</li>
+ *   <li>{@code activeClients} — Число пользователей, которые отправляют сообщения.</li>
+ *   <li>{@code rooms} — Число комнат, по которым распределяются пользователи.</li>
+ *   <li>{@code messagesPerSecond} — Частота сообщений одного пользователя.</li>
+ *   <li>{@code messageBytes} — Размер текста сообщения.</li>
+ *   <li>{@code rampUpNanos}, {@code steadyNanos}, {@code churnNanos} — Длительности фаз.</li>
+ *   <li>{@code churnPerSecond} — Число переподключений в секунду в фазе переподключений.</li>
+ *   <li>{@code phases} — Статистика фаз.</li>
+ *   <li>{@code connectLatency} — Время от начала подключения до входа в комнату.</li>
+ *   <li>{@code connectFailures} — Число неудачных подключений.</li>
+ *   <li>{@code serverErrors} — Число сообщений об ошибках от сервера.</li>
+ *   <li>{@code nextUserId} — Номер следующего имени пользователя.</li>
+ *   <li>{@code threads} — Виртуальные потоки пользователей.</li>
+ *   <li>{@code startNanos} — Начало прогона.</li>
+ * </ul>
+ */
+public class LoadGenerator {
+
+    public static final String HOST_PROPERTY = "chat.load.host";
+    public static final String PORT_PROPERTY = "chat.load.port";
+    public static final String CLIENTS_PROPERTY = "chat.load.clients";
+    public static final String ACTIVE_PROPERTY = "chat.load.activeClients";
+    public static final String ROOMS_PROPERTY = "chat.load.rooms";
+    public static final String RATE_PROPERTY = "chat.load.messagesPerSecond";
+    public static final String MESSAGE_BYTES_PROPERTY = "chat.load.messageBytes";
+    public static final String RAMP_UP_PROPERTY = "chat.load.rampUpSeconds";
+    public static final String STEADY_PROPERTY = "chat.load.steadySeconds";
+    public static final String CHURN_PROPERTY = "chat.load.churnSeconds";
+    public static final String CHURN_RATE_PROPERTY = "chat.load.churnPerSecond";
+    public static final int DEFAULT_CLIENTS = 100;
+    public static final int DEFAULT_MESSAGE_BYTES = 64;
+    public static final double DEFAULT_RATE = 1.0;
+    public static final int DEFAULT_RAMP_UP_SECONDS = 10;
+    public static final int DEFAULT_STEADY_SECONDS = 30;
+    public static final int DEFAULT_CHURN_SECONDS = 20;
+
+    private static final String MARKER = "load ";
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final String[] PERCENTILE_NAMES = {"p50", "p90", "p99", "p999"};
+
+    private final String host = System.getProperty(HOST_PROPERTY, "127.0.0.1");
+    private final int port = Integer.getInteger(PORT_PROPERTY, 8040);
+    private final int clientCount = Integer.getInteger(CLIENTS_PROPERTY, DEFAULT_CLIENTS);
+    private final int activeClients = Math.min(clientCount, Integer.getInteger(ACTIVE_PROPERTY, clientCount));
+    private final int rooms = Math.max(1, Integer.getInteger(ROOMS_PROPERTY, 1));
+    private final double messagesPerSecond = Double.parseDouble(System.getProperty(RATE_PROPERTY, String.valueOf(DEFAULT_RATE)));
+    private final int messageBytes = Integer.getInteger(MESSAGE_BYTES_PROPERTY, DEFAULT_MESSAGE_BYTES);
+    private final long rampUpNanos = TimeUnit.SECONDS.toNanos(Integer.getInteger(RAMP_UP_PROPERTY, DEFAULT_RAMP_UP_SECONDS));
+    private final long steadyNanos = TimeUnit.SECONDS.toNanos(Integer.getInteger(STEADY_PROPERTY, DEFAULT_STEADY_SECONDS));
+    private final long churnNanos = TimeUnit.SECONDS.toNanos(Integer.getInteger(CHURN_PROPERTY, DEFAULT_CHURN_SECONDS));
+    private final int churnPerSecond = Integer.getInteger(CHURN_RATE_PROPERTY, Math.max(1, clientCount / 100));
+
+    private final PhaseStats[] phases = {new PhaseStats("ramp-up"), new PhaseStats("steady"), new PhaseStats("churn")};
+    private final LatencyHistogram connectLatency = new LatencyHistogram();
+    private final LongAdder connectFailures = new LongAdder();
+    private final LongAdder serverErrors = new LongAdder();
+    private final AtomicInteger nextUserId = new AtomicInteger();
+    private final ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor();
+    private long startNanos;
+
+    /**
+     * Точка входа нагрузочного клиента. Параметры задаются системными свойствами {@code chat.load.*}.
+     *
+     * @param args Не используются.
+     * @throws InterruptedException если прогон прерван.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        new LoadGenerator().run();
+        System.exit(0);
+    }
+
+    /**
+     * Выполняет прогон и выводит отчёт.
+     *
+     * @throws InterruptedException если прогон прерван.
+     */
+    public void run() throws InterruptedException {
+        System.out.printf(Locale.ROOT, "Load: %d clients (%d active) in %d room(s) -> %s:%d, %.2f msg/s per active client, %d bytes%n",
+                clientCount, activeClients, rooms, host, port, messagesPerSecond, messageBytes);
+        startNanos = System.nanoTime();
+        List<LoadClient> clients = new ArrayList<>(clientCount);
+
+        // Разгон: подключения распределены равномерно по фазе, рукопожатия идут параллельно
+        for (int i = 0; i < clientCount; i++) {
+            sleepUntil(startNanos + rampUpNanos * i / clientCount);
+            LoadClient client = new LoadClient();
+            clients.add(client);
+            threads.execute(client::connect);
+        }
+        sleepUntil(startNanos + rampUpNanos);
+        printProgress(clients);
+
+        sleepUntil(startNanos + rampUpNanos + steadyNanos);
+        printProgress(clients);
+
+        // Переподключения: каждую секунду случайные пользователи уходят, на их место приходят новые
+        long churnStart = startNanos + rampUpNanos + steadyNanos;
+        long churnEnd = churnStart + churnNanos;
+        long second = TimeUnit.SECONDS.toNanos(1);
+        for (long tick = churnStart; tick < churnEnd; tick += second) {
+            sleepUntil(tick);
+            for (int i = 0; i < churnPerSecond && !clients.isEmpty(); i++) {
+                int index = ThreadLocalRandom.current().nextInt(clients.size());
+                clients.get(index).disconnect();
+                phases[2].disconnects.increment();
+                LoadClient replacement = new LoadClient();
+                clients.set(index, replacement);
+                threads.execute(replacement::connect);
+            }
+        }
+        sleepUntil(churnEnd);
+
+        // Отправка прекращается, а приём продолжается, пока не дойдут уже отправленные сообщения
+        clients.forEach(client -> client.isSending = false);
+        TimeUnit.SECONDS.sleep(2);
+        clients.forEach(LoadClient::disconnect);
+        threads.shutdownNow();
+        printReport();
+    }
+
+    /**
+     * Определяет фазу прогона по моменту времени.
+     *
+     * @param nanos Момент {@link System#nanoTime()}.
+     * @return Статистика фазы или {@code null}, если прогон уже закончился.
+     */
+    private PhaseStats phaseAt(long nanos) {
+        long elapsed = nanos - startNanos;
+        if (elapsed < rampUpNanos) {
+            return phases[0];
+        }
+        if (elapsed < rampUpNanos + steadyNanos) {
+            return phases[1];
+        }
+        return elapsed < rampUpNanos + steadyNanos + churnNanos ? phases[2] : null;
+    }
+
+    /**
+     * Выводит число подключенных пользователей и отправленных сообщений.
+     *
+     * @param clients Пользователи.
+     */
+    private void printProgress(List<LoadClient> clients) {
+        long joined = clients.stream().filter(client -> client.isJoined).count();
+        System.out.printf(Locale.ROOT, "[%5.1f s] joined %d/%d, connect failures %d, server errors %d%n",
+                (System.nanoTime() - startNanos) / 1e9, joined, clients.size(), connectFailures.sum(), serverErrors.sum());
+    }
+
+    /**
+     * Выводит отчёт по фазам.
+     */
+    private void printReport() {
+        long[] durations = {rampUpNanos, steadyNanos, churnNanos};
+        for (int i = 0; i < phases.length; i++) {
+            double seconds = durations[i] / 1e9;
+            if (seconds <= 0) {
+                continue;
+            }
+            PhaseStats phase = phases[i];
+            System.out.printf(Locale.ROOT, "%n== %s (%.1f s): sent %.1f msg/s, delivered %.1f msg/s",
+                    phase.name, seconds, phase.sent.sum() / seconds, phase.latency.getCount() / seconds);
+            if (i == 2) {
+                System.out.printf(Locale.ROOT, ", reconnected %d", phase.disconnects.sum());
+            }
+            System.out.println();
+            printLatency("delivery", phase.latency);
+        }
+        System.out.println();
+        printLatency("connect", connectLatency);
+        System.out.printf(Locale.ROOT, "connect failures %d, server errors %d%n", connectFailures.sum(), serverErrors.sum());
+    }
+
+    /**
+     * Выводит процентили и распределение задержек.
+     *
+     * @param name Название замера.
+     * @param histogram Гистограмма.
+     */
+    private static void printLatency(String name, LatencyHistogram histogram) {
+        if (histogram.getCount() == 0) {
+            System.out.println(name + ": no samples");
+            return;
+        }
+        StringBuilder line = new StringBuilder(String.format(Locale.ROOT, "%s latency (n=%d): mean %s",
+                name, histogram.getCount(), formatMicros((long) histogram.getMean())));
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            line.append(", ").append(PERCENTILE_NAMES[i]).append(' ')
+                    .append(formatMicros(histogram.getPercentile(PERCENTILES[i])));
+        }
+        line.append(", max ").append(formatMicros(histogram.getMax()));
+        System.out.println(line);
+
+        long[] counts = histogram.getPowerOfTwoCounts();
+        long total = histogram.getCount();
+        for (int k = 0; k < counts.length; k++) {
+            if (counts[k] != 0) {
+                double share = 100.0 * counts[k] / total;
+                System.out.printf(Locale.ROOT, "  < %-9s %6.2f%% %s%n",
+                        formatMicros(1L << (k + 1)), share, "#".repeat((int) Math.ceil(share / 2)));
+            }
+        }
+    }
+
+    /**
+     * Форматирует задержку в подходящих единицах.
+     *
+     * @param micros Задержка в микросекундах.
+     * @return Строка вида {@code 850us}, {@code 12.3ms} или {@code 1.50s}.
+     */
+    private static String formatMicros(long micros) {
+        if (micros < 1000) {
+            return micros + "us";
+        }
+        if (micros < 1_000_000) {
+            return String.format(Locale.ROOT, "%.1fms", micros / 1e3);
+        }
+        return String.format(Locale.ROOT, "%.2fs", micros / 1e6);
+    }
+
+    /**
+     * Ждёт наступления момента времени.
+     *
+     * @param deadline Момент {@link System#nanoTime()}.
+     */
+    private static void sleepUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    /**
+     * Статистика одной фазы прогона.
+     *
+     * <p>Переменные класса:</p>
+     * <ul>
+     *   <li>{@code name} — Название фазы.</li>
+     *   <li>{@code sent} — Число отправленных сообщений.</li>
+     *   <li>{@code latency} — Задержки доставки сообщений, отправленных в фазе.</li>
+     *   <li>{@code disconnects} — Число отключений в фазе переподключений.</li>
+     * </ul>
+     */
+    private static final class PhaseStats {
+        private final String name;
+        private final LongAdder sent = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder disconnects = new LongAdder();
+
+        private PhaseStats(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * Один нагрузочный пользователь: соединение, отправитель и читатель.
+     *
+     * <p>Переменные класса:</p>
+     * <ul>
+     *   <li>{@code id} — Номер пользователя.</li>
+     *   <li>{@code username} — Уникальное имя пользователя.</li>
+     *   <li>{@code isActive} — Флаг, что пользователь отправляет сообщения, а не только принимает.</li>
+     *   <li>{@code connection} — Соединение с сервером.</li>
+     *   <li>{@code connectStart} — Начало подключения.</li>
+     *   <li>{@code isJoined} — Флаг, что пользователь вошёл в свою комнату.</li>
+     *   <li>{@code isSending} — Флаг, что пользователь продолжает отправлять сообщения.</li>
+     *   <li>{@code isClosed} — Флаг закрытого соединения.</li>
+     * </ul>
+     */
+    private final class LoadClient {
+        private final int id = nextUserId.getAndIncrement();
+        private final String username = "load" + id;
+        private final boolean isActive = (long) (id % clientCount) * activeClients % clientCount < activeClients;
+        private volatile ClientConnection connection;
+        private long connectStart;
+        private volatile boolean isJoined = false;
+        private volatile boolean isSending = true;
+        private volatile boolean isClosed = false;
+
+        /**
+         * Подключается, регистрирует имя, входит в комнату и запускает приём и отправку.
+         */
+        private void connect() {
+            connectStart = System.nanoTime();
+            ClientConnection opened = new ClientConnection(host, port);
+            if (!opened.isConnected()) {
+                connectFailures.increment();
+                return;
+            }
+            connection = opened;
+            if (isClosed) {
+                opened.close();
+                return;
+            }
+            try {
+                List<Frame> frames = new ArrayList<>(2);
+                frames.add(Frame.of(Opcode.USERNAME, username));
+                if (rooms > 1) {
+                    frames.add(Frame.of(Opcode.JOIN, "load-" + Math.floorMod(username.hashCode(), rooms)));
+                }
+                opened.sendFrames(frames);
+            } catch (IOException e) {
+                connectFailures.increment();
+                opened.close();
+                return;
+            }
+            threads.execute(this::receiveLoop);
+        }
+
+        /**
+         * Принимает кадры сервера и записывает задержку нагрузочных сообщений.
+         */
+        private void receiveLoop() {
+            try {
+                Frame frame;
+                while ((frame = connection.receiveFrame()) != null) {
+                    switch (frame.getOpcode()) {
+                        case TEXT -> recordDelivery(frame.getText());
+                        case ROOM_MESSAGE -> recordDelivery(frame.getFields().get(1));
+                        case ROOM -> onRoom(frame.getText());
+                        case ERROR -> serverErrors.increment();
+                        default -> {
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                if (!isClosed) {
+                    serverErrors.increment();
+                }
+            }
+        }
+
+        /**
+         * Отмечает вход в комнату; после входа в свою комнату пользователь начинает отправлять сообщения.
+         *
+         * @param room Имя комнаты.
+         */
+        private void onRoom(String room) {
+            if (isJoined || rooms > 1 && !room.startsWith("load-")) {
+                return;
+            }
+            isJoined = true;
+            connectLatency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - connectStart));
+            if (isActive && messagesPerSecond > 0) {
+                threads.execute(this::sendLoop);
+            }
+        }
+
+        /**
+         * Отправляет сообщения с постоянной частотой, начиная со случайного сдвига, чтобы пользователи
+         * не писали одновременно.
+         */
+        private void sendLoop() {
+            long interval = (long) (1e9 / messagesPerSecond);
+            long next = System.nanoTime() + ThreadLocalRandom.current().nextLong(interval);
+            while (isSending && !isClosed) {
+                sleepUntil(next);
+                next += interval;
+                long sentAt = System.nanoTime();
+                try {
+                    connection.sendFrame(Frame.of(Opcode.CHAT, message(sentAt)));
+                    PhaseStats phase = phaseAt(sentAt);
+                    if (phase != null) {
+                        phase.sent.increment();
+                    }
+                } catch (IOException e) {
+                    if (!isClosed) {
+                        serverErrors.increment();
+                    }
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Составляет текст сообщения заданного размера с меткой времени отправки.
+         *
+         * @param sentAt Момент отправки.
+         * @return Текст сообщения.
+         */
+        private String message(long sentAt) {
+            StringBuilder text = new StringBuilder(Math.max(messageBytes, 32)).append(MARKER).append(sentAt).append(' ');
+            while (text.length() < messageBytes) {
+                text.append('x');
+            }
+            return text.toString();
+        }
+
+        /**
+         * Записывает задержку доставки, если текст — нагрузочное сообщение вида {@code имя: load <метка> ...}.
+         *
+         * @param text Текст сообщения.
+         */
+        private void recordDelivery(String text) {
+            long receivedAt = System.nanoTime();
+            int start = text.indexOf(": " + MARKER);
+            if (start < 0) {
+                return;
+            }
+            start += 2 + MARKER.length();
+            int end = text.indexOf(' ', start);
+            try {
+                long sentAt = Long.parseLong(end < 0 ? text.substring(start) : text.substring(start, end));
+                PhaseStats phase = phaseAt(sentAt);
+                if (phase != null) {
+                    phase.latency.record(TimeUnit.NANOSECONDS.toMicros(receivedAt - sentAt));
+                }
+            } catch (NumberFormatException e) {
+                // Не нагрузочное сообщение, похожее на него
+            }
+        }
+
+        /**
+         * Отправляет {@link Opcode#EXIT} и закрывает соединение.
+         */
+        private void disconnect() {
+            isClosed = true;
+            ClientConnection current = connection;
+            if (current == null) {
+                return;
+            }
+            try {
+                current.sendFrame(Frame.of(Opcode.EXIT));
+            } catch (IOException e) {
+                // Соединение уже закрыто
+            }
+            current.close();
+        }
+    }
+}
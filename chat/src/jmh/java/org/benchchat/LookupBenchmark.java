@@ -0,0 +1,133 @@
+package org.benchchat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.protocolchat.Role;
+import org.serverchat.ClientHandler;
+import org.serverchat.ClientRegistry;
+import org.serverchat.WireFormat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Поиск пользователя по имени: проверка занятости имени при подключении и команда {@code /kick}.
+ * <p>
+ * {@code findPresent}, {@code findMissing} и {@code registerTaken} измеряют {@link ClientRegistry}
+ * с {@code users} клиентами (имена ищутся в другом регистре, как их набирает пользователь).
+ * {@code connectAndKick} — полный путь на сервере: подключение и регистрация клиента, затем его отключение
+ * командой {@code /kick} от Администратора; в замер входит и запись сервера в лог о входе и выходе.
+ * </p>
+ *
+ * <p>Переменные класса:</p>
+ * <ul>
+ *   <li>{@code users} — Число зарегистрированных клиентов.</li>
+ *   <li>{@code registry} — Реестр клиентов для замеров поиска.</li>
+ *   <li>{@code typedNames} — Имена клиентов в верхнем регистре.</li>
+ *   <li>{@code duplicate} — Клиент с уже занятым именем.</li>
+ *   <li>{@code next} — Индекс следующего искомого имени.</li>
+ *   <li>{@code admin} — Администратор, отправляющий {@code /kick}.</li>
+ *   <li>{@code kickInput} — Команда {@code /kick} в байтах строкового протокола.</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LookupBenchmark {
+
+    private static final String VICTIM = "Нарушитель";
+
+    @Param({"100", "10000"})
+    public int users;
+
+    private ClientRegistry registry;
+    private String[] typedNames;
+    private ClientHandler duplicate;
+    private int next = 0;
+    private ClientHandler admin;
+    private byte[] kickInput;
+
+    /**
+     * Заполняет реестр и подключает Администратора.
+     *
+     * @throws IOException если сервер не принял данные клиента.
+     */
+    @Setup(Level.Trial)
+    public void fillRegistry() throws IOException {
+        registry = new ClientRegistry();
+        typedNames = new String[users];
+        for (int i = 0; i < users; i++) {
+            ClientHandler client = new ClientHandler(new InMemoryTransport());
+            client.username = "Пользователь" + i;
+            registry.register(client);
+            typedNames[i] = client.username.toUpperCase(Locale.ROOT);
+        }
+        duplicate = new ClientHandler(new InMemoryTransport());
+        duplicate.username = typedNames[users / 2];
+
+        admin = BenchmarkClients.connect(Role.ADMIN.getDisplayName(), WireFormat.LINE);
+        kickInput = BenchmarkClients.encode("/kick " + VICTIM, WireFormat.LINE);
+    }
+
+    /**
+     * Отключает Администратора.
+     */
+    @TearDown(Level.Trial)
+    public void disconnectAdmin() {
+        BenchmarkClients.disconnectAll(admin);
+        ClientHandler.superAdminConnected = false;
+    }
+
+    /**
+     * Поиск подключенного пользователя.
+     *
+     * @return Найденный клиент.
+     */
+    @Benchmark
+    public ClientHandler findPresent() {
+        next = next + 1 == users ? 0 : next + 1;
+        return registry.find(typedNames[next]);
+    }
+
+    /**
+     * Поиск отсутствующего пользователя.
+     *
+     * @return {@code null}.
+     */
+    @Benchmark
+    public ClientHandler findMissing() {
+        return registry.find("Отключившийся");
+    }
+
+    /**
+     * Попытка зарегистрировать уже занятое имя.
+     *
+     * @return {@code false}.
+     */
+    @Benchmark
+    public boolean registerTaken() {
+        return registry.register(duplicate);
+    }
+
+    /**
+     * Подключение клиента и его отключение командой {@code /kick}.
+     *
+     * @return {@code false}, если сервер прекратил чтение от Администратора.
+     * @throws IOException если сервер не принял данные клиента.
+     */
+    @Benchmark
+    public boolean connectAndKick() throws IOException {
+        BenchmarkClients.connect(VICTIM, WireFormat.LINE);
+        return admin.handleInput(ByteBuffer.wrap(kickInput));
+    }
+}
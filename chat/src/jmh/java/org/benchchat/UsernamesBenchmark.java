@@ -0,0 +1,93 @@
+package org.benchchat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.protocolchat.Frame;
+import org.serverchat.ClientHandler;
+import org.serverchat.OutboundMessage;
+import org.serverchat.Room;
+import org.serverchat.RoomRegistry;
+import org.serverchat.WireFormat;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Формирование списка пользователей для команды {@code /list}: сбор имён участников комнаты
+ * и кодирование ответа в формате клиента.
+ *
+ * <p>Переменные класса:</p>
+ * <ul>
+ *   <li>{@code roomSize} — Число участников комнаты.</li>
+ *   <li>{@code wireFormat} — Протокол клиента, запросившего список.</li>
+ *   <li>{@code timer} — Таймер уведомлений комнаты.</li>
+ *   <li>{@code room} — Комната с участниками.</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UsernamesBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int roomSize;
+
+    @Param({"LINE", "BINARY"})
+    public WireFormat wireFormat;
+
+    private ScheduledExecutorService timer;
+    private Room room;
+
+    /**
+     * Заполняет комнату участниками.
+     */
+    @Setup(Level.Trial)
+    public void fillRoom() {
+        timer = Executors.newSingleThreadScheduledExecutor();
+        RoomRegistry rooms = new RoomRegistry(timer);
+        for (int i = 0; i < roomSize; i++) {
+            ClientHandler client = new ClientHandler(new InMemoryTransport());
+            client.username = "Пользователь" + i;
+            room = rooms.join(client, RoomRegistry.DEFAULT_ROOM, -1);
+        }
+    }
+
+    /**
+     * Останавливает таймер комнаты.
+     */
+    @TearDown(Level.Trial)
+    public void stopTimer() {
+        timer.shutdownNow();
+    }
+
+    /**
+     * Сбор имён участников комнаты.
+     *
+     * @return Список имён.
+     */
+    @Benchmark
+    public List<String> usernames() {
+        return room.usernames();
+    }
+
+    /**
+     * Сбор имён и кодирование ответа на {@code /list}.
+     *
+     * @return Закодированный ответ.
+     */
+    @Benchmark
+    public ByteBuffer listResponse() {
+        return OutboundMessage.of(Frame.users(room.usernames())).buffer(wireFormat);
+    }
+}
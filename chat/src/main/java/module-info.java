@@ -3,9 +3,11 @@ module org.mainchar {
     exports org.clientchat;
     exports org.serverchat.exceptions;
     exports org.mainchat;
+    exports org.protocolchat;
 
     requires java.base;
     requires java.logging;
+    requires java.management;
     requires org.apache.logging.log4j;
     requires javafx.controls;
     requires javafx.fxml;
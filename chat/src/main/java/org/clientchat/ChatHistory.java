@@ -0,0 +1,126 @@
+package org.clientchat;
+
+import javafx.collections.ObservableListBase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * История строк чата ограниченного размера — кольцевой буфер, который служит списком элементов
+ * для {@link javafx.scene.control.ListView}.
+ * <p>
+ * Список отображается виртуализированно: ячейки создаются только для видимых строк, поэтому новая строка
+ * не вызывает перекладку всего текста, как {@link javafx.scene.control.TextArea#appendText(String)}.
+ * Когда буфер заполнен, каждая новая строка вытесняет самую старую без сдвига массива и без роста памяти.
+ * Размер истории задаётся свойством {@value #SCROLLBACK_PROPERTY} (по умолчанию {@value #DEFAULT_SCROLLBACK}).
+ * Методы вызываются только из потока JavaFX.
+ * </p>
+ *
+ * <p>Переменные класса:</p>
+ * <ul>
+ *   <li>{@code SCROLLBACK_PROPERTY} — Системное свойство для числа хранимых строк.</li>
+ *   <li>{@code DEFAULT_SCROLLBACK} — Число хранимых строк по умолчанию.</li>
+ *   <li>{@code lines} — Кольцевой буфер строк.</li>
+ *   <li>{@code head} — Позиция самой старой строки в буфере.</li>
+ *   <li>{@code size} — Число строк в буфере.</li>
+ * </ul>
+ */
+public class ChatHistory extends ObservableListBase<String> {
+
+    public static final String SCROLLBACK_PROPERTY = "chat.client.scrollback";
+    public static final int DEFAULT_SCROLLBACK = 5000;
+
+    private final String[] lines;
+    private int head = 0;
+    private int size = 0;
+
+    /**
+     * Создаёт историю заданного размера.
+     *
+     * @param capacity Наибольшее число хранимых строк.
+     * @throws IllegalArgumentException если размер меньше 1.
+     */
+    public ChatHistory(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Scrollback must be at least 1 line: " + capacity);
+        }
+        this.lines = new String[capacity];
+    }
+
+    /**
+     * Создаёт историю размера из свойства {@value #SCROLLBACK_PROPERTY}.
+     *
+     * @return История строк чата.
+     */
+    public static ChatHistory fromSystemProperty() {
+        return new ChatHistory(Math.max(1, Integer.getInteger(SCROLLBACK_PROPERTY, DEFAULT_SCROLLBACK)));
+    }
+
+    /**
+     * Добавляет строку в конец истории, вытесняя самую старую, если история заполнена.
+     *
+     * @param line Строка чата.
+     */
+    public void append(String line) {
+        appendAll(List.of(line));
+    }
+
+    /**
+     * Добавляет строки в конец истории одним изменением списка.
+     * Если строк больше, чем вмещает история, сохраняются последние из них.
+     *
+     * @param newLines Строки чата.
+     */
+    public void appendAll(List<String> newLines) {
+        if (newLines.isEmpty()) {
+            return;
+        }
+        List<String> kept = newLines.size() > lines.length
+                ? newLines.subList(newLines.size() - lines.length, newLines.size())
+                : newLines;
+        int evicted = Math.max(0, size + kept.size() - lines.length);
+
+        beginChange();
+        try {
+            if (evicted > 0) {
+                List<String> removed = new ArrayList<>(evicted);
+                for (int i = 0; i < evicted; i++) {
+                    removed.add(lines[head]);
+                    lines[head] = null;
+                    head = (head + 1) % lines.length;
+                }
+                size -= evicted;
+                nextRemove(0, removed);
+            }
+            int from = size;
+            for (String line : kept) {
+                lines[(head + size) % lines.length] = Objects.requireNonNull(line);
+                size++;
+            }
+            nextAdd(from, size);
+        } finally {
+            endChange();
+        }
+    }
+
+    /**
+     * Возвращает наибольшее число хранимых строк.
+     *
+     * @return Размер истории.
+     */
+    public int getCapacity() {
+        return lines.length;
+    }
+
+    @Override
+    public String get(int index) {
+        Objects.checkIndex(index, size);
+        return lines[(head + index) % lines.length];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,93 @@
+package org.clientchat;
+
+import javafx.animation.AnimationTimer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Очередь обновлений окна чата от потока приёма сообщений.
+ * <p>
+ * Поток приёма не ставит задачу в очередь событий JavaFX на каждую строку: строки складываются в очередь,
+ * а таймер {@link AnimationTimer} раз в кадр забирает накопившиеся строки и передаёт их окну одним пакетом.
+ * Из нескольких обновлений количества пользователей за кадр применяется только последнее.
+ * Очередь вмещает не больше строк, чем история окна: если окно не успевает, самые старые строки вытесняются,
+ * как их всё равно вытеснили бы из истории более новые. Поэтому за кадр передаётся не больше этого числа строк,
+ * и при потоке сообщений ни очередь, ни время кадра не растут, и окно продолжает отвечать.
+ * </p>
+ *
+ * <p>Переменные класса:</p>
+ * <ul>
+ *   <li>{@code capacity} — Наибольшее число строк в очереди и в одном пакете.</li>
+ *   <li>{@code lines} — Строки чата, ещё не переданные окну.</li>
+ *   <li>{@code userCount} — Последнее количество пользователей или {@code null}, если оно не менялось.</li>
+ *   <li>{@code batch} — Пакет строк текущего кадра (используется повторно).</li>
+ *   <li>{@code linesSink} — Обработчик пакета строк в потоке JavaFX.</li>
+ *   <li>{@code userCountSink} — Обработчик количества пользователей в потоке JavaFX.</li>
+ * </ul>
+ */
+public class ChatUpdateQueue extends AnimationTimer {
+
+    private final int capacity;
+    private final BlockingQueue<String> lines;
+    private final AtomicReference<String> userCount = new AtomicReference<>();
+    private final List<String> batch = new ArrayList<>();
+    private final Consumer<List<String>> linesSink;
+    private final Consumer<String> userCountSink;
+
+    /**
+     * Создаёт очередь обновлений. Обработка начинается после {@link #start()}.
+     *
+     * @param capacity Наибольшее число строк в очереди (обычно размер истории окна).
+     * @param linesSink Обработчик пакета строк; список действителен только во время вызова.
+     * @param userCountSink Обработчик количества пользователей.
+     */
+    public ChatUpdateQueue(int capacity, Consumer<List<String>> linesSink, Consumer<String> userCountSink) {
+        this.capacity = capacity;
+        this.lines = new ArrayBlockingQueue<>(capacity);
+        this.linesSink = linesSink;
+        this.userCountSink = userCountSink;
+    }
+
+    /**
+     * Добавляет строку чата, вытесняя самую старую, если очередь заполнена. Может вызываться из любого потока.
+     *
+     * @param line Строка чата.
+     */
+    public void postLine(String line) {
+        while (!lines.offer(line)) {
+            lines.poll();
+        }
+    }
+
+    /**
+     * Сообщает новое количество пользователей, заменяя ещё не применённое. Может вызываться из любого потока.
+     *
+     * @param count Количество пользователей.
+     */
+    public void postUserCount(String count) {
+        userCount.set(count);
+    }
+
+    /**
+     * Применяет накопившиеся обновления. Вызывается JavaFX один раз за кадр.
+     *
+     * @param now Время кадра в наносекундах.
+     */
+    @Override
+    public void handle(long now) {
+        String count = userCount.getAndSet(null);
+        if (count != null) {
+            userCountSink.accept(count);
+        }
+        lines.drainTo(batch, capacity);
+        if (!batch.isEmpty()) {
+            linesSink.accept(batch);
+            batch.clear();
+        }
+    }
+}
@@ -10,12 +10,14 @@ import javafx.scene.layout.HBox;
 import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
+import org.protocolchat.Frame;
+import org.protocolchat.Opcode;
+import org.protocolchat.Role;
 
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
-import java.util.concurrent.*;
 
 /**
  * Главный класс приложения клиента чата.
@@ -23,14 +25,17 @@ import java.util.concurrent.*;
  *
  * <p>Переменные класса:</p>
  * <ul>
- *   <li>{@code userListSheduler} — Планировщик для обновления списка пользователей.</li>
  *   <li>{@code connection} — Соединение с сервером.</li>
  *   <li>{@code messageHandler} — Обработчик сообщений от сервера.</li>
+ *   <li>{@code frameDispatcher} — Единственный поток чтения кадров соединения с обработчиками по видам кадров.</li>
  *   <li>{@code primaryStage} — Главная сцена приложения.</li>
  *   <li>{@code uiHandler} — Обработчик пользовательского интерфейса.</li>
- *   <li>{@code userCountLabel} — Метка для отображения количества подключённых пользователей.</li>
- *   <li>{@code messagesArea} — Область для отображения сообщений чата.</li>
+ *   <li>{@code userCountLabel} — Метка для отображения количества пользователей в текущей комнате.</li>
+ *   <li>{@code chatHistory} — История строк чата ограниченного размера.</li>
+ *   <li>{@code messagesList} — Список для отображения сообщений чата.</li>
+ *   <li>{@code chatUpdates} — Строки и количество пользователей от потока приёма, применяемые раз в кадр.</li>
  *   <li>{@code userList} — Список подключённых пользователей.</li>
+ *   <li>{@code presenceVersion} — Версия списка пользователей из подписки (-1, если подписки нет).</li>
  *   <li>{@code isAdminWindowOpen} — Флаг для отслеживания открытия окна администратора.</li>
  *   <li>{@code isWindowClosed} — Флаг для отслеживания закрытия окна.</li>
  *   <li>{@code isApplicationRunning} — Флаг для отслеживания состояния приложения.</li>
@@ -38,14 +43,19 @@ import java.util.concurrent.*;
  */
 public class ClientApp extends Application {
 
-    private ScheduledExecutorService userListSheduler;
     private ClientConnection connection;
     private MessageHandler messageHandler;
+    private FrameDispatcher frameDispatcher;
     private Stage primaryStage;
     private final UIHandler uiHandler = new UIHandler();
     private Label userCountLabel;
-    private TextArea messagesArea;
+    private final ChatHistory chatHistory = ChatHistory.fromSystemProperty();
+    private ListView<String> messagesList;
+    private final ChatUpdateQueue chatUpdates = new ChatUpdateQueue(chatHistory.getCapacity(),
+            this::appendMessagesToChat,
+            userCount -> userCountLabel.setText("Количество пользователей в комнате: " + userCount));
     private final ListView<String> userList = new ListView<>();
+    private volatile long presenceVersion = -1;
     private boolean isAdminWindowOpen = false;
     private volatile boolean isWindowClosed = false;
     private volatile boolean isApplicationRunning = true;
@@ -170,23 +180,24 @@ public class ClientApp extends Application {
      * @param isAdmin Флаг, указывающий, является ли пользователь администратором.
      */
     private void showChatWindow(boolean isAdmin) {
-        messagesArea = uiHandler.createMessagesArea();
+        messagesList = uiHandler.createMessagesList(chatHistory);
         TextField messageField = uiHandler.createMessageField();
         Button sendButton = uiHandler.createSendButton();
 
-        userCountLabel = new Label("Количество пользователей на сервере: 0");
+        userCountLabel = new Label("Количество пользователей в комнате: 0");
+        chatUpdates.start();
 
         sendButton.setOnAction(event -> {
             try {
                 handleSendMessage(messageField);
             } catch (Exception ex) {
-                appendMessageToChat(messagesArea, "Ошибка отправки сообщения: " + ex.getMessage());
+                appendMessageToChat("Ошибка отправки сообщения: " + ex.getMessage());
             }
         });
 
         Button adminButton = isAdmin ? uiHandler.createAdminButton() : null;
 
-        VBox chatLayout = uiHandler.createChatLayout(userCountLabel, messagesArea, messageField, sendButton, adminButton);
+        VBox chatLayout = uiHandler.createChatLayout(userCountLabel, messagesList, messageField, sendButton, adminButton);
 
         if (adminButton != null) {
             adminButton.setOnAction(event -> showAdminWindow());
@@ -237,7 +248,7 @@ public class ClientApp extends Application {
             if (selectedUser != null) {
                 messageHandler.sendMessage("/kick " + selectedUser); // Команда отключения
             } else {
-                appendMessageToChat(messagesArea, "Пожалуйста, выберите пользователя.");
+                appendMessageToChat("Пожалуйста, выберите пользователя.");
             }
         });
 
@@ -247,10 +258,9 @@ public class ClientApp extends Application {
             stopAdminWindowProcesses(); // Останавливаем процессы, связанные с окном администратора
         });
 
-        // Проверяем, если окно администратора открыто, запускаем планировщик
+        // Подписываемся на изменения списка: сервер пришлёт полный список один раз, затем только изменения
         if (isAdminWindowOpen) {
-            userListSheduler = Executors.newSingleThreadScheduledExecutor();
-            userListSheduler.scheduleAtFixedRate(this::updateUserList, 0, 3, TimeUnit.SECONDS);
+            messageHandler.sendMessage("/subscribe");
         }
 
         adminStage.getIcons().add(new Image(Objects.requireNonNull(getClass().getResource("/img/icon3.png")).toExternalForm()));
@@ -279,63 +289,63 @@ public class ClientApp extends Application {
 
     /**
      * Останавливает все процессы, связанные с окном администратора.
-     * Этот метод завершает работу планировщика, который обновляет список пользователей.
+     * Этот метод отменяет подписку на изменения списка пользователей.
      * После завершения процесса выводится сообщение в консоль об успешном завершении.
      */
     private void stopAdminWindowProcesses() {
-        if (userListSheduler != null) {
-            userListSheduler.shutdownNow();
+        presenceVersion = -1;
+        if (isApplicationRunning && connection != null && connection.isConnected()) {
+            messageHandler.sendMessage("/unsubscribe");
         }
         System.out.println("Admin window process terminated successfilly!");
     }
 
     /**
-     * Обновляет список пользователей в окне администратора.
+     * Применяет к списку пользователей окна администратора полный список или изменение из подписки.
+     * Изменение применяется, только если его версия следует сразу за текущей. При пропуске версии
+     * запрашивается новый полный список, а уже учтённые изменения пропускаются.
+     * Вызывается в потоке чтения сообщений, список обновляется в потоке JavaFX.
+     *
+     * @param frame Кадр {@link Opcode#PRESENCE_SNAPSHOT}, {@link Opcode#PRESENCE_JOINED}
+     *              или {@link Opcode#PRESENCE_LEFT}.
+     * @return {@code true}: чтение продолжается.
+     * @throws IOException если список пользователей закодирован неверно.
      */
-    private void updateUserList() {
-        if (!isAdminWindowOpen || !isApplicationRunning || connection == null || !connection.isConnected()) {
-            return; // Не обновляем список, если приложение завершено
+    private boolean handlePresenceFrame(Frame frame) throws IOException {
+        long version = frame.getPresenceVersion();
+
+        if (frame.getOpcode() == Opcode.PRESENCE_SNAPSHOT) {
+            presenceVersion = version;
+            List<String> users = frame.getUsers();
+            Platform.runLater(() -> userList.getItems().setAll(users));
+            return true;
         }
-
-        String selectedUser = userList.getSelectionModel().getSelectedItem();
-
-        Thread userListUpdater = new Thread(() -> {
-            try {
-                String message;
-                messageHandler.sendMessage("/list");
-                while ((message = messageHandler.receiveMessage()) != null) {
-                    if (message.startsWith("/users ")) {
-                        String userData = message.substring(7);
-                        List<String> users = Arrays.asList(userData.split(","));
-                        Platform.runLater(() -> {
-                            userList.getItems().clear();
-                            userList.getItems().addAll(users);
-
-                            if (selectedUser != null && users.contains(selectedUser)) {
-                                userList.getSelectionModel().select(selectedUser);
-                            }
-                        });
-                    } else {
-                        handleIncomingMessage(message);
-                    }
-                }
-            } catch (Exception e) {
-                if (isApplicationRunning) {
-                    Platform.runLater(() -> {
-                        showErrorAlert("Ошибка", "Ошибка обновления списка пользователей!");
-                        handleExit();
-                    });
+        if (presenceVersion < 0 || version <= presenceVersion) {
+            return true; // Подписки нет или изменение уже учтено в полученном списке
+        }
+        if (version != presenceVersion + 1) {
+            presenceVersion = -1;
+            messageHandler.sendMessage("/subscribe");
+            return true;
+        }
+        presenceVersion = version;
+        String username = frame.getPresenceUsername();
+        if (frame.getOpcode() == Opcode.PRESENCE_JOINED) {
+            Platform.runLater(() -> {
+                if (!userList.getItems().contains(username)) {
+                    userList.getItems().add(username);
                 }
-            }
-        });
-        userListUpdater.setDaemon(true);
-        userListUpdater.start();
+            });
+        } else {
+            Platform.runLater(() -> userList.getItems().remove(username));
+        }
+        return true;
     }
 
     /**
      * Обрабатывает отправку сообщения. Проверяет, что сообщение не пустое и что клиент подключен к серверу.
-     * Если все проверки пройдены, отправляет сообщение и добавляет его в чат.
-     * Если подключение отсутствует, выводит соответствующее сообщение в чат.
+     * Если все проверки пройдены, отправляет сообщение и добавляет его в чат. На команду {@code /list}
+     * в чат выводится ответ сервера именно на этот запрос. Если подключение отсутствует, выводит соответствующее сообщение в чат.
      *
      * @param messageField Поле ввода сообщения.
      * @throws IllegalArgumentException Если сообщение пустое.
@@ -346,11 +356,25 @@ public class ClientApp extends Application {
             throw new IllegalArgumentException("Сообщение не может быть пустым!");
         }
         if (connection != null && connection.isConnected()) {
+            if ("/list".equalsIgnoreCase(message.trim()) && frameDispatcher != null) {
+                appendMessageToChat("Вы: " + message);
+                frameDispatcher.requestUserList().whenComplete((users, e) -> chatUpdates.postLine(e == null
+                        ? "Пользователи в комнате (" + users.size() + "): " + String.join(", ", users)
+                        : "Список пользователей не получен: " + e.getMessage()));
+                messageField.clear();
+                return;
+            }
+            boolean isQueued = connection.isReconnecting();
             messageHandler.sendMessage(message);
-            appendMessageToChat(messagesArea, "Вы: " + message);
+            if (isQueued) {
+                appendMessageToChat("Вы: " + message + " (будет отправлено после восстановления соединения)");
+            } else if (!message.startsWith("/msg ")) {
+                // Личное сообщение показывается после подтверждения сервера (/private-to)
+                appendMessageToChat("Вы: " + message);
+            }
             messageField.clear();
         } else {
-            appendMessageToChat(messagesArea, "Вы не подключены к серверу");
+            appendMessageToChat("Вы не подключены к серверу");
         }
     }
 
@@ -362,9 +386,6 @@ public class ClientApp extends Application {
             isApplicationRunning = false;
             isWindowClosed = true;
 
-            if (userListSheduler != null) {
-                userListSheduler.shutdownNow(); // Останавливаем планировщик
-            }
             if (messageHandler != null) {
                 messageHandler.closeConnection(); // Закрытие соединения
             }
@@ -381,85 +402,123 @@ public class ClientApp extends Application {
     }
 
     /**
-     * Добавляет новое сообщение в область чата.
+     * Добавляет новое сообщение в историю чата.
      *
-     * @param messagesArea Область сообщений.
      * @param message Сообщение для добавления.
      */
-    private void appendMessageToChat(TextArea messagesArea, String message) {
-        messagesArea.appendText(message + "\n");
+    private void appendMessageToChat(String message) {
+        appendMessagesToChat(List.of(message));
     }
 
     /**
-     * Запускает поток для прослушивания сообщений от сервера.
+     * Добавляет пакет сообщений в историю чата одним изменением списка. Список прокручивается
+     * к последнему сообщению, если пользователь не выделил строки для копирования.
+     *
+     * @param messages Сообщения для добавления.
+     */
+    private void appendMessagesToChat(List<String> messages) {
+        chatHistory.appendAll(messages);
+        if (messagesList != null && messagesList.getSelectionModel().isEmpty()) {
+            messagesList.scrollTo(chatHistory.size() - 1);
+        }
+    }
+
+    /**
+     * Регистрирует обработчики кадров от сервера и запускает единственный поток чтения соединения.
+     * При разрыве соединение восстанавливается с тем же именем, окно чата и история сообщений сохраняются.
      */
     private void listenForMessages() {
-        Thread messageListener = new Thread(() -> {
-            try {
-                String message;
-                while (!(isWindowClosed)) {
-                    assert messageHandler != null;
-                    message = messageHandler.receiveMessage();
-                    if (message != null) {
-                        if (message.startsWith("/role ")) {
-                            String role = message.split(" ")[1].trim();
-                            Platform.runLater(() -> showChatWindow("Админ1270018040".equalsIgnoreCase(role)));
-                        } else if (message.startsWith("/error ")) {
-                            String errorMessage = message.substring(7);
-                            if ("Разрыв соединения!".equals(errorMessage)) {
-                                Platform.runLater(() -> showErrorAlert("Ошибка", errorMessage));
-                                break;
-                            } else if (errorMessage.startsWith("Имя пользователя")) {
-                                Platform.runLater(() -> showErrorAlert("Ошибка имени", errorMessage));
-                                break;
-                            } else {
-                                Platform.runLater(() -> appendMessageToChat(messagesArea, "Ошибка: " + errorMessage));
-                            }
-                        } else if (message.startsWith("/banned ")) {
-                            String reason = message.substring(8);
-                            Platform.runLater(() -> {
-                                showErrorAlert("Отключение", reason);
-                                messageHandler.closeConnection();
-                            });
-                            break;
-                        } else {
-                            handleIncomingMessage(message);
+        frameDispatcher = new FrameDispatcher(connection)
+                .on(Opcode.ROLE, frame -> {
+                    if (connection.isReconnecting()) {
+                        // Имя зарегистрировано заново: окно чата и история остаются прежними
+                        chatUpdates.postLine("Соединение восстановлено");
+                        if (isAdminWindowOpen) {
+                            messageHandler.sendMessage("/subscribe");
                         }
+                        return true;
                     }
-                }
-            } catch (Exception e) {
-                if (!isWindowClosed && isApplicationRunning) {
+                    boolean isAdmin = frame.getRole() == Role.ADMIN;
+                    Platform.runLater(() -> showChatWindow(isAdmin));
+                    return true;
+                })
+                .on(Opcode.NAME_TAKEN, frame -> {
+                    String errorMessage = frame.getText();
+                    Platform.runLater(() -> showErrorAlert("Ошибка имени", errorMessage));
+                    return false;
+                })
+                .on(Opcode.ERROR, frame -> {
+                    // «Разрыв соединения!» (остановка сервера, переполненная очередь) не завершает работу:
+                    // за ним следует закрытие соединения, после которого клиент переподключается
+                    chatUpdates.postLine("Ошибка: " + frame.getText());
+                    return true;
+                })
+                .on(Opcode.BANNED, frame -> {
+                    String reason = frame.getText();
                     Platform.runLater(() -> {
-                        showErrorAlert("Разрыв соединения!", "Соединение с сервером потеряно!");
-                        handleExit();
+                        showErrorAlert("Отключение", reason);
+                        messageHandler.closeConnection();
                     });
-                } else if (!"Socket closed".equals(e.getMessage())) {
-                    Platform.runLater(() -> appendMessageToChat(messagesArea, "Ошибка при получении сообщения: " + e.getMessage()));
-                }
-            }
-        });
-        messageListener.setDaemon(true);
-        messageListener.start();
+                    return false;
+                })
+                .on(Opcode.COUNT, frame -> {
+                    chatUpdates.postUserCount(String.valueOf(frame.getCount()));
+                    return true;
+                })
+                .on(Opcode.ROOM, frame -> {
+                    String roomName = frame.getText();
+                    Platform.runLater(() -> primaryStage.setTitle("Чат — " + roomName));
+                    chatUpdates.postLine("Вы в комнате " + roomName
+                            + " (/join <комната> — перейти, /leave — вернуться, /msg <пользователь> <текст> — лично)");
+                    return true;
+                })
+                .on(Opcode.PRIVATE, this::handlePrivateFrame)
+                .on(Opcode.PRIVATE_SENT, this::handlePrivateFrame)
+                .on(Opcode.PRESENCE_SNAPSHOT, this::handlePresenceFrame)
+                .on(Opcode.PRESENCE_JOINED, this::handlePresenceFrame)
+                .on(Opcode.PRESENCE_LEFT, this::handlePresenceFrame)
+                .on(Opcode.USERS, frame -> true) // Список без ожидающего запроса /list не показывается
+                .otherwise(frame -> {
+                    chatUpdates.postLine(frame.toLine());
+                    return true;
+                })
+                .onDisconnect(e -> {
+                    if (isWindowClosed || !isApplicationRunning) {
+                        return false;
+                    }
+                    presenceVersion = -1;
+                    chatUpdates.postLine("Соединение с сервером потеряно, переподключение...");
+                    return true;
+                })
+                .onClose(e -> {
+                    if (!isWindowClosed && isApplicationRunning) {
+                        Platform.runLater(() -> {
+                            showErrorAlert("Разрыв соединения!", "Соединение с сервером потеряно!");
+                            handleExit();
+                        });
+                    } else if (!"Socket closed".equals(e.getMessage())) {
+                        chatUpdates.postLine("Ошибка при получении сообщения: " + e.getMessage());
+                    }
+                });
+        frameDispatcher.start();
     }
 
     /**
-     * Обрабатывает входящее сообщение от сервера. Если сообщение содержит информацию о количестве пользователей на сервере,
-     * обновляется метка с количеством пользователей. В противном случае сообщение добавляется в чат.
+     * Добавляет в чат строку личного сообщения.
      *
-     * @param message Сообщение, полученное от сервера.
+     * @param frame Кадр {@link Opcode#PRIVATE} (отправитель и текст) или {@link Opcode#PRIVATE_SENT}
+     *              (получатель и текст).
+     * @return {@code true}: чтение продолжается.
+     * @throws IOException если кадр закодирован неверно.
      */
-    private void handleIncomingMessage(String message) {
-        // Фильтруем сообщения, чтобы исключить команды /role и /users
-        if (message.startsWith("/role ") || message.startsWith("/users ")) {
-            return;
-        }
-
-        if (message.startsWith("Количество пользователей на сервере: ")) {
-            String userCount = message.split(":")[1].trim();
-            Platform.runLater(() -> userCountLabel.setText("Количество пользователей на сервере: " + userCount));
-        } else {
-            Platform.runLater(() -> appendMessageToChat(messagesArea, message));
-        }
+    private boolean handlePrivateFrame(Frame frame) throws IOException {
+        List<String> fields = frame.getFields();
+        String peer = fields.isEmpty() ? "" : fields.get(0);
+        String text = fields.size() > 1 ? fields.get(1) : "";
+        chatUpdates.postLine(frame.getOpcode() == Opcode.PRIVATE_SENT
+                ? "[лично] Вы → " + peer + ": " + text
+                : "[лично] " + peer + ": " + text);
+        return true;
     }
 
     /**
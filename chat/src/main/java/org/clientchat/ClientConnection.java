@@ -2,35 +2,117 @@ package org.clientchat;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.protocolchat.Frame;
+import org.protocolchat.FrameCompression;
+import org.protocolchat.Opcode;
+import org.protocolchat.Protocol;
 
+import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocket;
-import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManagerFactory;
 import java.io.*;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
+import java.net.ProtocolException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Класс для установления защищенного соединения с сервером (через SSL) и отправки/приема сообщений.
+ * Клиент использует бинарный протокол {@link Protocol}: при подключении отправляет {@link Protocol#MAGIC}
+ * и кадр {@link Opcode#HELLO}, а первым кадром от сервера ожидает ответный {@link Opcode#HELLO}.
+ * Если согласована версия со сжатием ({@link Protocol#COMPRESSION_VERSION}), большие кадры (например, вставленные
+ * журналы и стеки вызовов) отправляются сжатыми ({@link FrameCompression}); сжатые кадры сервера распаковываются при чтении.
+ * <p>
+ * SSL-контекст создаётся один раз на процесс и используется всеми соединениями: в его кэше клиентских сессий
+ * хранятся билеты TLS 1.3, поэтому повторное подключение к тому же серверу возобновляет сессию
+ * без полного рукопожатия.
+ * </p>
+ * <p>
+ * После разрыва соединение можно восстановить методом {@link #reconnect()}: попытки подключения повторяются
+ * с экспоненциально растущей паузой со случайным разбросом от нуля до текущего предела (свойства
+ * {@value #RECONNECT_BASE_PROPERTY} и {@value #RECONNECT_MAX_PROPERTY}), поэтому тысячи клиентов после
+ * перезапуска сервера не подключаются в один и тот же момент. Новое соединение заново регистрирует имя
+ * пользователя (если имя ещё занято прежним подключением, регистрация повторяется с той же паузой) и возвращает
+ * клиента в его комнату. Кадры, отправленные во время разрыва, копятся в очереди (не больше
+ * {@value #OUTAGE_QUEUE_CAPACITY}) и уходят на сервер после регистрации, вслед за возвратом в комнату.
+ * </p>
+ * <p>
+ * С версии {@link Protocol#SEQUENCE_VERSION} соединение запоминает номер последнего полученного сообщения комнаты
+ * ({@link Opcode#ROOM_MESSAGE}, {@link Opcode#SEQUENCE}, {@link Opcode#CHAT_ACK}) и при переподключении
+ * регистрируется кадром {@link Opcode#RESUME}: сервер возвращает клиента в комнату и присылает только сообщения,
+ * разосланные после этого номера, без перезагрузки истории. Сообщения в чат уходят с идентификаторами
+ * ({@link Opcode#CHAT_ID}); пока сервер не подтвердил сообщение, оно хранится и после переподключения
+ * отправляется снова с тем же идентификатором, а сервер отбрасывает то, что уже разослал. Идентификаторы
+ * начинаются со случайного числа, чтобы не совпасть с идентификаторами прежнего запуска клиента с тем же именем.
+ * </p>
  *
  * <p>Переменные класса:</p>
  * <ul>
  *   <li>{@code logger} — Логгер для записи действий и ошибок.</li>
+ *   <li>{@code TRUST_STORE} — Ресурс с сертификатом сервера.</li>
+ *   <li>{@code sslContext} — Общий SSL-контекст клиента (создаётся при первом подключении).</li>
  *   <li>{@code host} — Адрес сервера, к которому подключается клиент.</li>
  *   <li>{@code port} — Порт сервера для подключения.</li>
  *   <li>{@code sslSocket} — SSL-сокет для соединения с сервером.</li>
- *   <li>{@code reader} — Поток для чтения данных от сервера.</li>
- *   <li>{@code writer} — Поток для отправки данных на сервер.</li>
+ *   <li>{@code input} — Поток для чтения кадров от сервера.</li>
+ *   <li>{@code output} — Поток для отправки кадров на сервер.</li>
+ *   <li>{@code protocolVersion} — Согласованная версия протокола (0, пока сервер не ответил).</li>
+ *   <li>{@code RECONNECT_BASE_PROPERTY} — Системное свойство для паузы перед первой попыткой переподключения.</li>
+ *   <li>{@code RECONNECT_MAX_PROPERTY} — Системное свойство для наибольшей паузы между попытками.</li>
+ *   <li>{@code OUTAGE_QUEUE_CAPACITY} — Наибольшее число кадров, ожидающих восстановления соединения.</li>
+ *   <li>{@code reconnectBaseMillis}, {@code reconnectMaxMillis} — Пределы паузы между попытками.</li>
+ *   <li>{@code registration} — Кадр регистрации имени для повторной отправки после переподключения.</li>
+ *   <li>{@code currentRoom} — Комната пользователя по последнему кадру {@link Opcode#ROOM} (во время
+ *   восстановления — комната до разрыва).</li>
+ *   <li>{@code outageQueue} — Кадры, отправленные, пока соединение восстанавливается.</li>
+ *   <li>{@code isResuming} — Флаг восстановления: соединение разорвано или сервер ещё не подтвердил имя.</li>
+ *   <li>{@code reconnectAttempt} — Номер попытки с последнего успешного восстановления (для роста паузы).</li>
+ *   <li>{@code isClosed} — Флаг закрытия соединения пользователем (переподключение прекращается).</li>
+ *   <li>{@code resumeRegistration} — Кадр регистрации, отправленный при последнем переподключении.</li>
+ *   <li>{@code lastSequence} — Номер последнего полученного сообщения комнаты или {@code -1}.</li>
+ *   <li>{@code sequenceNode} — Идентификатор узла, выдавшего номера сообщений, или {@code null}.</li>
+ *   <li>{@code nextMessageId} — Следующий идентификатор сообщения в чат.</li>
+ *   <li>{@code unacknowledged} — Сообщения в чат, ещё не подтверждённые сервером, по идентификаторам.</li>
  * </ul>
  */
 public class ClientConnection {
     private static final Logger logger = LogManager.getLogger(ClientConnection.class);
+    private static final String TRUST_STORE = "serverkeystore.jks";
+    private static volatile SSLContext sslContext;
     private final String host;
     private final int port;
     private SSLSocket sslSocket;
-    private BufferedReader reader;
-    private PrintWriter writer;
+    private DataInputStream input;
+    private OutputStream output;
+    private volatile int protocolVersion = 0;
+
+    public static final String RECONNECT_BASE_PROPERTY = "chat.client.reconnectBaseMillis";
+    public static final String RECONNECT_MAX_PROPERTY = "chat.client.reconnectMaxMillis";
+    public static final int OUTAGE_QUEUE_CAPACITY = 1000;
+    private static final long DEFAULT_RECONNECT_BASE_MILLIS = 500;
+    private static final long DEFAULT_RECONNECT_MAX_MILLIS = 30_000;
+
+    private final long reconnectBaseMillis =
+            Math.max(1, Long.getLong(RECONNECT_BASE_PROPERTY, DEFAULT_RECONNECT_BASE_MILLIS));
+    private final long reconnectMaxMillis =
+            Math.max(reconnectBaseMillis, Long.getLong(RECONNECT_MAX_PROPERTY, DEFAULT_RECONNECT_MAX_MILLIS));
+    private Frame registration;
+    private volatile String currentRoom;
+    private final ArrayDeque<Frame> outageQueue = new ArrayDeque<>();
+    private volatile boolean isResuming = false;
+    private int reconnectAttempt = 0;
+    private volatile boolean isClosed = false;
+    private Frame resumeRegistration;
+    private volatile long lastSequence = -1;
+    private volatile String sequenceNode;
+    private long nextMessageId = ThreadLocalRandom.current().nextLong(Long.MAX_VALUE / 2);
+    private final Map<String, Frame> unacknowledged = new LinkedHashMap<>();
 
     /**
      * Конструктор для подключения к серверу по указанному адресу и порту через SSL.
@@ -49,31 +131,68 @@ public class ClientConnection {
     }
 
     /**
-     * Устанавливает защищенное соединение с сервером.
+     * Возвращает общий SSL-контекст клиента, создавая его при первом вызове.
+     * Хранилище доверенных сертификатов читается из ресурсов в память, без временных файлов
+     * и без изменения глобальных свойств {@code javax.net.ssl.*}.
      *
-     * @throws IOException В случае ошибки при подключении.
+     * @return SSL-контекст TLS 1.3, которому известен сертификат сервера.
+     * @throws IOException Если хранилище не найдено или контекст не удалось создать.
      */
-    private void connect() throws IOException, NullPointerException {
-        try (InputStream trustStoreInput = getClass().getClassLoader().getResourceAsStream("serverkeystore.jks")) {
-            if (trustStoreInput == null) {
-                throw new IOException("Не удалось найти serverkeystore.jks в ресурсах.");
+    public static SSLContext getSslContext() throws IOException {
+        SSLContext context = sslContext;
+        if (context == null) {
+            synchronized (ClientConnection.class) {
+                context = sslContext;
+                if (context == null) {
+                    sslContext = context = createSslContext();
+                }
             }
+        }
+        return context;
+    }
 
-            // Создаём временный файл для trustStore
-            Path tempTrustStore = Files.createTempFile("serverkeystore", ".jks");
-            Files.copy(trustStoreInput, tempTrustStore, StandardCopyOption.REPLACE_EXISTING);
+    /**
+     * Создаёт SSL-контекст клиента.
+     *
+     * @return Новый SSL-контекст.
+     * @throws IOException Если хранилище не найдено или контекст не удалось создать.
+     */
+    private static SSLContext createSslContext() throws IOException {
+        try (InputStream trustStoreInput = ClientConnection.class.getClassLoader().getResourceAsStream(TRUST_STORE)) {
+            if (trustStoreInput == null) {
+                throw new IOException("Не удалось найти " + TRUST_STORE + " в ресурсах.");
+            }
+            KeyStore trustStore = KeyStore.getInstance("JKS");
+            trustStore.load(trustStoreInput, "xezzexserverkey".toCharArray());
 
-            // Устанавливаем свойства для хранилища доверенных сертификатов
-            System.setProperty("javax.net.ssl.trustStore", tempTrustStore.toAbsolutePath().toString());
-            System.setProperty("javax.net.ssl.trustStorePassword", "xezzexserverkey");
+            TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            tmf.init(trustStore);
+            SSLContext context = SSLContext.getInstance("TLSv1.3");
+            context.init(null, tmf.getTrustManagers(), null);
+            return context;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Не удалось создать SSL-контекст: " + e.getMessage(), e);
+        }
+    }
 
-            // Создаём SSL-сокет
-            SSLSocketFactory factory = (SSLSocketFactory) SSLSocketFactory.getDefault();
-            sslSocket = (SSLSocket) factory.createSocket(host, port);
+    /**
+     * Устанавливает защищенное соединение с сервером.
+     *
+     * @throws IOException В случае ошибки при подключении.
+     */
+    private void connect() throws IOException, NullPointerException {
+        try {
+            // Сокет создаётся из общего контекста: сессия к тому же серверу возобновляется
+            sslSocket = (SSLSocket) getSslContext().getSocketFactory().createSocket(host, port);
 
             // Создаём потоки ввода и вывода для общения через защищённое соединение
-            reader = new BufferedReader(new InputStreamReader(sslSocket.getInputStream(), StandardCharsets.UTF_8));
-            writer = new PrintWriter(new OutputStreamWriter(sslSocket.getOutputStream(), StandardCharsets.UTF_8), true);
+            input = new DataInputStream(new BufferedInputStream(sslSocket.getInputStream()));
+            output = new BufferedOutputStream(sslSocket.getOutputStream());
+
+            // Выбираем бинарный протокол; ответ сервера проверяется при чтении первого кадра
+            output.write(Protocol.MAGIC);
+            output.write(Frame.hello(Protocol.VERSION).encode());
+            output.flush();
 
              logger.info("Установлено защищенное соединение с сервером {}:{}", host, port);
         } catch (java.net.UnknownHostException e) {
@@ -88,33 +207,321 @@ public class ClientConnection {
     }
 
     /**
-     * Отправляет сообщение на сервер.
+     * Отправляет кадр на сервер.
+     *
+     * @param frame Кадр для отправки.
+     * @throws IOException В случае ошибки при отправке.
+     */
+    public void sendFrame(Frame frame) throws IOException {
+        sendFrames(List.of(frame));
+    }
+
+    /**
+     * Отправляет несколько кадров на сервер одной записью: кадры копируются в буфер,
+     * и буфер сбрасывается в сокет один раз.
+     *
+     * @param frames Кадры для отправки.
+     * @throws IOException В случае ошибки при отправке.
+     */
+    public synchronized void sendFrames(List<Frame> frames) throws IOException {
+        for (Frame frame : frames) {
+            if (frame.getOpcode() == Opcode.USERNAME) {
+                registration = frame;
+            }
+        }
+        if (isResuming) {
+            if (outageQueue.size() + frames.size() > OUTAGE_QUEUE_CAPACITY) {
+                throw new IOException("Соединение восстанавливается, очередь исходящих сообщений заполнена");
+            }
+            outageQueue.addAll(frames);
+            return;
+        }
+        writeFrames(frames);
+    }
+
+    /**
+     * Записывает кадры в сокет и сбрасывает буфер. Вызывается под блокировкой соединения.
      *
-     * @param message Сообщение для отправки.
+     * @param frames Кадры для отправки.
      * @throws IOException В случае ошибки при отправке.
      */
-    public void sendMessage(String message) throws IOException {
-        if (message == null || message.trim().isEmpty()) {
-            throw new IllegalArgumentException("Сообщение не может быть пустым!");
+    private void writeFrames(Collection<Frame> frames) throws IOException {
+        int threshold = protocolVersion >= Protocol.COMPRESSION_VERSION ? FrameCompression.DEFAULT_THRESHOLD : 0;
+        for (Frame frame : frames) {
+            output.write(FrameCompression.compress(toWire(frame), threshold).encode());
+        }
+        output.flush();
+    }
+
+    /**
+     * Приводит кадр к согласованной версии протокола. С версии {@link Protocol#SEQUENCE_VERSION} сообщение в чат
+     * получает идентификатор и хранится до подтверждения сервером; для более старого сервера сообщение
+     * с идентификатором отправляется как обычное. Вызывается под блокировкой соединения.
+     *
+     * @param frame Кадр для отправки.
+     * @return Кадр для записи в сокет.
+     * @throws ProtocolException если кадр закодирован неверно.
+     */
+    private Frame toWire(Frame frame) throws ProtocolException {
+        boolean isSequenced = protocolVersion >= Protocol.SEQUENCE_VERSION;
+        if (frame.getOpcode() == Opcode.CHAT && isSequenced) {
+            String id = Long.toString(nextMessageId++);
+            Frame identified = Frame.fields(Opcode.CHAT_ID, id, frame.getText());
+            if (unacknowledged.size() >= OUTAGE_QUEUE_CAPACITY) {
+                unacknowledged.remove(unacknowledged.keySet().iterator().next());
+            }
+            unacknowledged.put(id, identified);
+            return identified;
         }
-        writer.println(message);
+        if (frame.getOpcode() == Opcode.CHAT_ID && !isSequenced) {
+            // Сервер не подтверждает сообщения: повторять его при следующем переподключении не нужно
+            unacknowledged.remove(frame.getFields().get(0));
+            return Frame.of(Opcode.CHAT, frame.getFields().get(1));
+        }
+        return frame;
     }
 
     /**
-     * Принимает сообщение от сервера.
+     * Принимает кадр от сервера. Первый кадр соединения должен быть ответом на согласование протокола.
+     * После переподключения первый кадр {@link Opcode#ROOM} (сервер присылает его вслед за подтверждением имени)
+     * завершает восстановление: на сервер уходят кадр возврата в прежнюю комнату и накопленные во время разрыва
+     * кадры, а сам кадр возвращается вызывающему. Кадры {@link Opcode#SEQUENCE} и {@link Opcode#CHAT_ACK}
+     * обрабатываются соединением и вызывающему не возвращаются.
      *
-     * @return Сообщение от сервера.
-     * @throws IOException В случае ошибки при получении.
+     * @return Кадр от сервера или {@code null}, если соединение закрыто.
+     * @throws IOException Если сервер нарушил протокол.
      */
-    public String receiveMessage() throws IOException {
+    public Frame receiveFrame() throws IOException {
         try {
-            return reader.readLine();
+            if (protocolVersion == 0 && !readHello()) {
+                return null;
+            }
+            while (true) {
+                Frame frame = Frame.readFrom(input, Protocol.MAX_FRAME_SIZE);
+                if (frame == null) {
+                    return null;
+                }
+                switch (frame.getOpcode()) {
+                    case NAME_TAKEN -> {
+                        if (isResuming && resumeRegistration != null) {
+                            // Прежнее подключение ещё не закрыто сервером: имя освободится, когда сервер заметит разрыв
+                            logger.warn("Имя ещё занято, повторная регистрация: {}", frame.getText());
+                            pauseBeforeAttempt();
+                            synchronized (this) {
+                                writeFrames(List.of(resumeRegistration));
+                            }
+                            continue;
+                        }
+                    }
+                    case ROOM -> {
+                        if (isResuming) {
+                            completeResume(frame.getText());
+                        }
+                        currentRoom = frame.getText();
+                    }
+                    case ROOM_MESSAGE -> advanceSequence(frame.getSequence());
+                    case SEQUENCE -> {
+                        String node = frame.getSequenceNode();
+                        if (!node.equals(sequenceNode)) {
+                            // Номера другого узла кластера с прежними не сравнимы
+                            sequenceNode = node;
+                            lastSequence = -1;
+                        }
+                        advanceSequence(frame.getSequence());
+                        continue;
+                    }
+                    case CHAT_ACK -> {
+                        synchronized (this) {
+                            unacknowledged.remove(frame.getFields().get(0));
+                        }
+                        advanceSequence(frame.getSequence());
+                        continue;
+                    }
+                    default -> {
+                        // Остальные кадры обрабатывает вызывающий
+                    }
+                }
+                return frame;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Переподключение прервано");
+        } catch (ProtocolException e) {
+            throw e;
         } catch (IOException e) {
                 logger.warn("Соединение закрыто");
             }
         return null;
     }
 
+    /**
+     * Читает ответ сервера на согласование протокола.
+     *
+     * @return {@code false}, если соединение закрыто до ответа.
+     * @throws IOException Если сервер не поддерживает бинарный протокол или чтение не удалось.
+     */
+    private boolean readHello() throws IOException {
+        Frame hello = Frame.readFrom(input, Protocol.MAX_FRAME_SIZE);
+        if (hello == null) {
+            return false;
+        }
+        if (hello.getOpcode() != Opcode.HELLO || hello.getVersion() < 1 || hello.getVersion() > Protocol.VERSION) {
+            throw new ProtocolException("Сервер не поддерживает бинарный протокол");
+        }
+        protocolVersion = hello.getVersion();
+        logger.info("Согласована версия протокола {}", protocolVersion);
+        return true;
+    }
+
+    /**
+     * Запоминает номер полученного сообщения комнаты. Пока соединение восстанавливается, номера не учитываются:
+     * до возврата в прежнюю комнату они относятся к другой комнате.
+     *
+     * @param sequence Номер сообщения.
+     */
+    private void advanceSequence(long sequence) {
+        if (!isResuming && sequence > lastSequence) {
+            lastSequence = sequence;
+        }
+    }
+
+    /**
+     * Создаёт кадр регистрации для нового соединения: с версии {@link Protocol#SEQUENCE_VERSION} —
+     * {@link Opcode#RESUME} с комнатой, узлом, выдавшим номера, и номером последнего полученного сообщения,
+     * иначе — прежний кадр имени.
+     * Вызывается под блокировкой соединения после согласования протокола.
+     *
+     * @return Кадр регистрации.
+     */
+    private Frame createResumeRegistration() {
+        String room = currentRoom;
+        String node = sequenceNode;
+        long sequence = lastSequence;
+        if (protocolVersion < Protocol.SEQUENCE_VERSION || room == null || node == null || sequence < 0) {
+            return registration;
+        }
+        return Frame.fields(Opcode.RESUME, registration.getText(), room, node, Long.toString(sequence));
+    }
+
+    /**
+     * Восстанавливает соединение после разрыва. Попытки подключения повторяются с паузой
+     * (см. {@link #backoffMillis(int, long, long)}), пока одна из них не удастся или соединение не будет закрыто.
+     * После подключения и согласования протокола на сервер отправляется кадр регистрации имени
+     * (см. {@link #createResumeRegistration()}); до его подтверждения исходящие кадры копятся в очереди.
+     * Вызывается из потока чтения.
+     *
+     * @return {@code true}, если соединение восстановлено; {@code false}, если восстанавливать нечего
+     *         (имя ещё не отправлялось) или соединение закрыто пользователем.
+     * @throws InterruptedException если ожидание между попытками прервано.
+     */
+    public boolean reconnect() throws InterruptedException {
+        synchronized (this) {
+            if (registration == null || isClosed) {
+                return false;
+            }
+            isResuming = true;
+        }
+        closeSocket();
+        while (!isClosed) {
+            pauseBeforeAttempt();
+            if (isClosed) {
+                break;
+            }
+            protocolVersion = 0;
+            try {
+                connect();
+                if (sslSocket != null && !sslSocket.isClosed() && readHello()) {
+                    synchronized (this) {
+                        resumeRegistration = createResumeRegistration();
+                        writeFrames(List.of(resumeRegistration));
+                    }
+                    logger.info("Соединение восстановлено, повторная регистрация имени");
+                    return true;
+                }
+                closeSocket();
+            } catch (IOException e) {
+                logger.warn("Ошибка при переподключении: {}", e.getMessage());
+                closeSocket();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Проверяет, восстанавливается ли соединение: сокет разорван или сервер ещё не подтвердил имя.
+     *
+     * @return {@code true}, если отправленные сейчас кадры попадут в очередь.
+     */
+    public boolean isReconnecting() {
+        return isResuming;
+    }
+
+    /**
+     * Вычисляет паузу перед попыткой переподключения: случайное значение от нуля до
+     * {@code min(max, base * 2^attempt)} («полный разброс»), чтобы попытки многих клиентов не совпадали.
+     *
+     * @param attempt Номер попытки, начиная с 0.
+     * @param baseMillis Предел паузы для первой попытки.
+     * @param maxMillis Наибольший предел паузы.
+     * @return Пауза в миллисекундах.
+     */
+    public static long backoffMillis(int attempt, long baseMillis, long maxMillis) {
+        long ceiling = attempt >= Long.numberOfLeadingZeros(baseMillis) - 1
+                ? maxMillis
+                : Math.min(maxMillis, baseMillis << attempt);
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * Ждёт перед очередной попыткой переподключения или регистрации.
+     *
+     * @throws InterruptedException если ожидание прервано.
+     */
+    private void pauseBeforeAttempt() throws InterruptedException {
+        long pause = backoffMillis(reconnectAttempt, reconnectBaseMillis, reconnectMaxMillis);
+        reconnectAttempt = Math.min(reconnectAttempt + 1, Integer.MAX_VALUE - 1);
+        logger.info("Повторная попытка через {} мс", pause);
+        Thread.sleep(pause);
+    }
+
+    /**
+     * Завершает восстановление после регистрации имени: возвращает пользователя в комнату, в которой он был
+     * до разрыва (если сервер не вернул его туда сам), снова отправляет неподтверждённые сообщения
+     * и отправляет накопленные кадры (они попадут в ту же комнату).
+     *
+     * @param room Комната, в которую сервер поместил пользователя после регистрации.
+     * @throws IOException В случае ошибки при отправке.
+     */
+    private synchronized void completeResume(String room) throws IOException {
+        List<Frame> frames = new ArrayList<>(unacknowledged.size() + outageQueue.size() + 1);
+        String previousRoom = currentRoom;
+        if (previousRoom != null && !previousRoom.equals(room)) {
+            frames.add(Frame.of(Opcode.JOIN, previousRoom));
+        }
+        frames.addAll(unacknowledged.values());
+        frames.addAll(outageQueue);
+        outageQueue.clear();
+        isResuming = false;
+        reconnectAttempt = 0;
+        if (!frames.isEmpty()) {
+            writeFrames(frames);
+        }
+        logger.info("Сессия восстановлена, отправлено накопленных кадров: {}", frames.size());
+    }
+
+    /**
+     * Закрывает сокет без закрытия соединения: после этого возможно переподключение.
+     */
+    private void closeSocket() {
+        try {
+            if (sslSocket != null) {
+                sslSocket.close();
+            }
+        } catch (IOException e) {
+            logger.warn("Ошибка при закрытии сокета: {}", e.getMessage());
+        }
+    }
+
     /**
      * Проверяет, подключен ли клиент к серверу.
      *
@@ -128,12 +535,13 @@ public class ClientConnection {
      * Закрывает соединение с сервером.
      */
     public void close() {
+        isClosed = true;
         try {
             if (sslSocket != null) {
                 sslSocket.close();
             }
-            if (reader != null) {
-                reader.close();
+            if (input != null) {
+                input.close();
             }
         } catch (IOException e) {
             logger.error("Ошибка при закрытии соединения: ", e);
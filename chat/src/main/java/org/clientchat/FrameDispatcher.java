@@ -0,0 +1,255 @@
+package org.clientchat;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.protocolchat.Frame;
+import org.protocolchat.Opcode;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Единственный поток чтения кадров от сервера для одного {@link ClientConnection}.
+ * <p>
+ * Поток читает кадры по одному и передаёт каждый обработчику, зарегистрированному для его кода операции
+ * ({@link Opcode#ROLE}, {@link Opcode#ERROR}, {@link Opcode#BANNED}, {@link Opcode#COUNT} и т.д.); кадры без
+ * обработчика получает обработчик по умолчанию. Ответы {@link Opcode#USERS} сопоставляются с запросами
+ * {@link #requestUserList()}: сервер отвечает на {@link Opcode#LIST} по порядку, поэтому каждый ответ завершает
+ * самый старый ожидающий запрос. Никто, кроме этого потока, из соединения не читает, и запросы списка
+ * не создают новых потоков.
+ * </p>
+ * <p>
+ * При разрыве соединения поток спрашивает обработчик {@link #onDisconnect(Predicate)}, нужно ли восстанавливать
+ * соединение, и если нужно — восстанавливает его ({@link ClientConnection#reconnect()}) и продолжает чтение.
+ * Запросы списка, отправленные в разорванное соединение, завершаются ошибкой.
+ * </p>
+ *
+ * <p>Переменные класса:</p>
+ * <ul>
+ *   <li>{@code logger} — Логгер для записи действий и ошибок.</li>
+ *   <li>{@code connection} — Соединение, из которого читаются кадры.</li>
+ *   <li>{@code handlers} — Обработчики по кодам операций (заполняются до запуска).</li>
+ *   <li>{@code pendingUserLists} — Запросы списка пользователей, ожидающие ответа, в порядке отправки.</li>
+ *   <li>{@code defaultHandler} — Обработчик кадров без собственного обработчика.</li>
+ *   <li>{@code disconnectHandler} — Обработчик разрыва, решающий, восстанавливать ли соединение.</li>
+ *   <li>{@code closeHandler} — Обработчик окончательного закрытия соединения.</li>
+ *   <li>{@code reader} — Поток чтения или {@code null}, если он ещё не запущен.</li>
+ * </ul>
+ */
+public class FrameDispatcher {
+    private static final Logger logger = LogManager.getLogger(FrameDispatcher.class);
+    private final ClientConnection connection;
+    private final Map<Opcode, FrameHandler> handlers = new EnumMap<>(Opcode.class);
+    private final ConcurrentLinkedQueue<CompletableFuture<List<String>>> pendingUserLists =
+            new ConcurrentLinkedQueue<>();
+    private FrameHandler defaultHandler = frame -> true;
+    private Predicate<IOException> disconnectHandler = e -> false;
+    private Consumer<IOException> closeHandler = e -> { };
+    private Thread reader;
+
+    /**
+     * Создаёт диспетчер кадров соединения. Чтение начинается после {@link #start()}.
+     *
+     * @param connection Соединение с сервером.
+     */
+    public FrameDispatcher(ClientConnection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Регистрирует обработчик кадров с заданным кодом операции.
+     *
+     * @param opcode Код операции.
+     * @param handler Обработчик кадров.
+     * @return Этот диспетчер.
+     * @throws IllegalStateException если чтение уже запущено.
+     */
+    public synchronized FrameDispatcher on(Opcode opcode, FrameHandler handler) {
+        checkNotStarted();
+        handlers.put(opcode, handler);
+        return this;
+    }
+
+    /**
+     * Регистрирует обработчик кадров, для кода операции которых нет собственного обработчика.
+     *
+     * @param handler Обработчик кадров.
+     * @return Этот диспетчер.
+     * @throws IllegalStateException если чтение уже запущено.
+     */
+    public synchronized FrameDispatcher otherwise(FrameHandler handler) {
+        checkNotStarted();
+        defaultHandler = handler;
+        return this;
+    }
+
+    /**
+     * Регистрирует обработчик разрыва соединения. Он вызывается в потоке чтения, если сервер закрыл соединение
+     * или нарушил протокол, и решает, восстанавливать ли соединение.
+     *
+     * @param handler Обработчик, получающий причину разрыва; {@code true} — переподключиться и продолжить чтение.
+     * @return Этот диспетчер.
+     * @throws IllegalStateException если чтение уже запущено.
+     */
+    public synchronized FrameDispatcher onDisconnect(Predicate<IOException> handler) {
+        checkNotStarted();
+        disconnectHandler = handler;
+        return this;
+    }
+
+    /**
+     * Регистрирует обработчик окончательного закрытия соединения. Он вызывается в потоке чтения, если соединение
+     * разорвано и не восстановлено, но не когда чтение остановил обработчик кадра.
+     *
+     * @param handler Обработчик, получающий причину разрыва.
+     * @return Этот диспетчер.
+     * @throws IllegalStateException если чтение уже запущено.
+     */
+    public synchronized FrameDispatcher onClose(Consumer<IOException> handler) {
+        checkNotStarted();
+        closeHandler = handler;
+        return this;
+    }
+
+    /**
+     * Запускает поток чтения.
+     *
+     * @throws IllegalStateException если чтение уже запущено.
+     */
+    public synchronized void start() {
+        checkNotStarted();
+        reader = new Thread(this::readFrames, "client-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Запрашивает у сервера список пользователей текущей комнаты.
+     *
+     * @return Список, который завершится ответом сервера на этот запрос или ошибкой, если соединение разорвано.
+     */
+    public CompletableFuture<List<String>> requestUserList() {
+        CompletableFuture<List<String>> reply = new CompletableFuture<>();
+        pendingUserLists.add(reply);
+        try {
+            connection.sendFrame(Frame.of(Opcode.LIST));
+        } catch (IOException e) {
+            pendingUserLists.remove(reply);
+            reply.completeExceptionally(e);
+        }
+        return reply;
+    }
+
+    /**
+     * Проверяет, что чтение ещё не запущено.
+     *
+     * @throws IllegalStateException если чтение уже запущено.
+     */
+    private void checkNotStarted() {
+        if (reader != null) {
+            throw new IllegalStateException("Frame dispatcher is already started");
+        }
+    }
+
+    /**
+     * Читает и раздаёт кадры, пока обработчики не остановили чтение, восстанавливая соединение после разрывов,
+     * если это разрешает обработчик разрыва.
+     */
+    private void readFrames() {
+        IOException failure = null;
+        try {
+            while ((failure = readUntilClosed()) != null) {
+                failPendingUserLists(failure);
+                if (!disconnectHandler.test(failure) || !connection.reconnect()) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = new InterruptedIOException("Переподключение прервано");
+        } finally {
+            failPendingUserLists(failure != null ? failure : new IOException("Чтение остановлено"));
+        }
+        if (failure != null) {
+            closeHandler.accept(failure);
+        }
+    }
+
+    /**
+     * Читает и раздаёт кадры текущего соединения.
+     *
+     * @return Причина разрыва или {@code null}, если чтение остановил обработчик кадра.
+     */
+    private IOException readUntilClosed() {
+        try {
+            Frame frame;
+            while ((frame = connection.receiveFrame()) != null) {
+                if (!dispatch(frame)) {
+                    return null;
+                }
+            }
+            return new IOException("Соединение закрыто сервером");
+        } catch (IOException e) {
+            return e;
+        } catch (RuntimeException e) {
+            return new IOException("Ошибка обработки кадра: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Завершает ошибкой запросы списка, ожидающие ответа.
+     *
+     * @param cause Причина ошибки.
+     */
+    private void failPendingUserLists(IOException cause) {
+        CompletableFuture<List<String>> pending;
+        while ((pending = pendingUserLists.poll()) != null) {
+            pending.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * Передаёт кадр ответу на запрос списка или обработчику его кода операции.
+     *
+     * @param frame Кадр от сервера.
+     * @return {@code false}, если чтение нужно прекратить.
+     * @throws IOException если кадр закодирован неверно.
+     */
+    private boolean dispatch(Frame frame) throws IOException {
+        if (frame.getOpcode() == Opcode.USERS) {
+            CompletableFuture<List<String>> pending = pendingUserLists.poll();
+            if (pending != null) {
+                pending.complete(frame.getUsers());
+                return true;
+            }
+        }
+        FrameHandler handler = handlers.getOrDefault(frame.getOpcode(), defaultHandler);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Кадр получен: {}", frame.getOpcode());
+        }
+        return handler.handle(frame);
+    }
+
+    /**
+     * Обработчик кадров одного вида. Вызывается в потоке чтения.
+     */
+    @FunctionalInterface
+    public interface FrameHandler {
+
+        /**
+         * Обрабатывает кадр.
+         *
+         * @param frame Кадр от сервера.
+         * @return {@code false}, если чтение нужно прекратить.
+         * @throws IOException если кадр закодирован неверно.
+         */
+        boolean handle(Frame frame) throws IOException;
+    }
+}
@@ -2,22 +2,27 @@ package org.clientchat;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.protocolchat.Frame;
+import org.protocolchat.Opcode;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 
 /**
  * Класс обрабатывает отправку и получение сообщений от клиента.
+ * Строки интерфейса переводятся в кадры бинарного протокола. Кадры от сервера читает и раздаёт
+ * {@link FrameDispatcher}.
  *
  * <p>Переменные класса:</p>
  * <ul>
  *   <li>{@code logger} — Логгер для записи действий и ошибок.</li>
  *   <li>{@code connection} — Объект для взаимодействия с сервером через защищённое соединение.</li>
+ *   <li>{@code isUsernameSent} — Флаг, что имя пользователя уже отправлено (первое сообщение — имя).</li>
  * </ul>
  */
 public class MessageHandler {
     private static final Logger logger = LogManager.getLogger(MessageHandler.class);
     private final ClientConnection connection;
+    private boolean isUsernameSent = false;
 
     /**
      * Конструктор для создания обработчика сообщений.
@@ -35,9 +40,8 @@ public class MessageHandler {
      */
     public void sendMessage(String message) {
         try {
-            byte[] messageBytes = message.getBytes(StandardCharsets.UTF_8);
-            connection.sendMessage(new String(messageBytes, StandardCharsets.UTF_8));
-            logger.info("Сообщение отправлено: {}", message);
+            connection.sendFrame(toFrame(message));
+            logger.debug("Сообщение отправлено: {}", message);
         } catch (IllegalArgumentException  e) {
             logger.error("Ошибка имени пользователя: {}", e.getMessage());
         } catch (IOException e) {
@@ -46,24 +50,20 @@ public class MessageHandler {
     }
 
     /**
-     * Принимает сообщение от сервера.
+     * Переводит строку интерфейса в кадр: первая строка — имя пользователя, остальные — сообщения и команды.
      *
-     * @return Сообщение от сервера.
+     * @param message Строка для отправки.
+     * @return Кадр для отправки.
      */
-    public String receiveMessage() {
-        try {
-            String message = connection.receiveMessage();
-            message = new String(message.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
-            logger.info("Сообщение получено: {}", message);
-            return message;
-        } catch (IOException e) {
-            if ("Socket closed".equals(e.getMessage())) {
-                logger.warn("Соединение закрыто, прием сообщений прекращен");
-            } else {
-                logger.error("Ошибка при получении сообщения: ", e);
-            }
-            return null;
+    private synchronized Frame toFrame(String message) {
+        if (message == null || message.trim().isEmpty()) {
+            throw new IllegalArgumentException("Сообщение не может быть пустым!");
+        }
+        if (!isUsernameSent) {
+            isUsernameSent = true;
+            return Frame.of(Opcode.USERNAME, message);
         }
+        return Frame.fromLine(message);
     }
 
     /**
@@ -3,26 +3,70 @@ package org.clientchat;
 import javafx.scene.control.*;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
+import javafx.scene.input.Clipboard;
+import javafx.scene.input.ClipboardContent;
+import javafx.scene.input.KeyCode;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Класс для создания элементов пользовательского интерфейса.
  */
 public class UIHandler {
 
+    private static final double MESSAGE_CELL_HEIGHT = 24;
+
     /**
-     * Метод для создания области сообщений.
+     * Метод для создания списка сообщений.
+     * Список виртуализирован: ячейки создаются только для видимых строк истории. Строки можно выделять
+     * (в том числе несколько) и копировать сочетанием Ctrl+C или из контекстного меню.
      *
-     * @return Объект TextArea для отображения сообщений.
+     * @param history История строк чата.
+     * @return Объект ListView для отображения сообщений.
      */
-    public TextArea createMessagesArea() {
-        TextArea messagesArea = new TextArea();
-        messagesArea.setEditable(false);
-        messagesArea.setPrefWidth(500);
-        messagesArea.setPrefHeight(400);
-        return messagesArea;
+    public ListView<String> createMessagesList(ChatHistory history) {
+        ListView<String> messagesList = new ListView<>(history);
+        messagesList.setPrefWidth(500);
+        messagesList.setPrefHeight(400);
+        // Одинаковая высота строк: прокрутка не измеряет каждую ячейку
+        messagesList.setFixedCellSize(MESSAGE_CELL_HEIGHT);
+        messagesList.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+
+        MenuItem copyItem = new MenuItem("Копировать");
+        copyItem.setOnAction(event -> copySelectedMessages(messagesList));
+        messagesList.setContextMenu(new ContextMenu(copyItem));
+        messagesList.setOnKeyPressed(event -> {
+            if (event.isShortcutDown() && event.getCode() == KeyCode.C) {
+                copySelectedMessages(messagesList);
+            } else if (event.getCode() == KeyCode.ESCAPE) {
+                messagesList.getSelectionModel().clearSelection();
+            }
+        });
+        return messagesList;
+    }
+
+    /**
+     * Копирует выделенные строки списка сообщений в буфер обмена в порядке их следования в чате.
+     *
+     * @param messagesList Список сообщений.
+     */
+    private void copySelectedMessages(ListView<String> messagesList) {
+        List<Integer> indices = new ArrayList<>(messagesList.getSelectionModel().getSelectedIndices());
+        if (indices.isEmpty()) {
+            return;
+        }
+        Collections.sort(indices);
+        StringBuilder text = new StringBuilder();
+        for (int index : indices) {
+            text.append(messagesList.getItems().get(index)).append('\n');
+        }
+        ClipboardContent content = new ClipboardContent();
+        content.putString(text.toString());
+        Clipboard.getSystemClipboard().setContent(content);
     }
 
     /**
@@ -68,11 +112,11 @@ public class UIHandler {
      *
      * @param nameField поле ввода имени пользователя.
      * @param namePrompt подсказка для имени пользователя.
-     * @param messagesArea область сообщений.
+     * @param messagesList список сообщений.
      * @param onEnter действие, выполняемое при нажатии кнопки.
      * @return кнопка "Войти".
      */
-    public Button createEnterButton(TextField nameField, Label namePrompt, TextArea messagesArea, Runnable onEnter) {
+    public Button createEnterButton(TextField nameField, Label namePrompt, ListView<String> messagesList, Runnable onEnter) {
         Button enterButton = new Button("Войти");
         enterButton.setOnAction(event -> onEnter.run());
         return enterButton;
@@ -127,14 +171,14 @@ public class UIHandler {
      * Здесь добавляется метка с количеством пользователей сверху.
      *
      * @param userCountLabel метка для отображения количества пользователей.
-     * @param messagesArea область для отображения сообщений.
+     * @param messagesList список для отображения сообщений.
      * @param messageField поле ввода сообщения.
      * @param sendButton кнопка для отправки сообщений.
      * @param adminButton кнопка администратора.
      * @return компоновка элементов чата в виде {@link VBox}.
      */
-    public VBox createChatLayout(Label userCountLabel, TextArea messagesArea, TextField messageField, Button sendButton, Button adminButton) {
-        VBox layout = new VBox(12, userCountLabel, messagesArea, messageField);
+    public VBox createChatLayout(Label userCountLabel, ListView<String> messagesList, TextField messageField, Button sendButton, Button adminButton) {
+        VBox layout = new VBox(12, userCountLabel, messagesList, messageField);
         HBox buttonLayout = createButtonLayout(sendButton, adminButton);
         layout.getChildren().add(buttonLayout);
         layout.setPadding(new javafx.geometry.Insets(20));
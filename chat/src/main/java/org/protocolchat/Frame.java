@@ -0,0 +1,531 @@
+package org.protocolchat;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Неизменяемый кадр бинарного протокола: код операции и типизированная полезная нагрузка.
+ * <p>
+ * Кадр также умеет представлять себя строкой старого строкового протокола ({@link #toLine()}) и разбирать
+ * команды из такой строки ({@link #fromLine(String)}), поэтому сервер обрабатывает оба протокола одинаково.
+ * </p>
+ *
+ * <p>Переменные класса:</p>
+ * <ul>
+ *   <li>{@code opcode} — Код операции.</li>
+ *   <li>{@code payload} — Полезная нагрузка; массив никогда не изменяется.</li>
+ * </ul>
+ */
+public final class Frame {
+
+    private static final byte[] EMPTY = new byte[0];
+    private static final String COUNT_PREFIX = "Количество пользователей на сервере: ";
+
+    private final Opcode opcode;
+    private final byte[] payload;
+
+    private Frame(Opcode opcode, byte[] payload) {
+        if (payload.length > Protocol.MAX_FRAME_SIZE) {
+            throw new IllegalArgumentException("Frame payload too large: " + payload.length);
+        }
+        this.opcode = opcode;
+        this.payload = payload;
+    }
+
+    /**
+     * Создаёт кадр из готовой полезной нагрузки без проверки.
+     *
+     * @param opcode Код операции.
+     * @param payload Полезная нагрузка; массив нельзя изменять после вызова.
+     * @return Кадр.
+     */
+    static Frame raw(Opcode opcode, byte[] payload) {
+        return new Frame(opcode, payload);
+    }
+
+    /**
+     * Создаёт кадр без полезной нагрузки.
+     *
+     * @param opcode Код операции.
+     * @return Кадр.
+     */
+    public static Frame of(Opcode opcode) {
+        return new Frame(opcode, EMPTY);
+    }
+
+    /**
+     * Создаёт кадр с текстовой полезной нагрузкой.
+     *
+     * @param opcode Код операции.
+     * @param text Текст.
+     * @return Кадр.
+     */
+    public static Frame of(Opcode opcode, String text) {
+        return new Frame(opcode, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Создаёт кадр согласования версии протокола.
+     *
+     * @param version Версия протокола.
+     * @return Кадр {@link Opcode#HELLO}.
+     */
+    public static Frame hello(int version) {
+        return new Frame(Opcode.HELLO, new byte[]{(byte) version});
+    }
+
+    /**
+     * Создаёт кадр с количеством пользователей на сервере.
+     *
+     * @param count Количество пользователей.
+     * @return Кадр {@link Opcode#COUNT}.
+     */
+    public static Frame count(int count) {
+        return new Frame(Opcode.COUNT, ByteBuffer.allocate(4).putInt(count).array());
+    }
+
+    /**
+     * Создаёт кадр с номером последнего сообщения комнаты на момент входа клиента.
+     *
+     * @param sequence Номер сообщения.
+     * @param node Идентификатор узла, выдающего номера.
+     * @return Кадр {@link Opcode#SEQUENCE}.
+     */
+    public static Frame sequence(long sequence, String node) {
+        byte[] nodeBytes = node.getBytes(StandardCharsets.UTF_8);
+        return new Frame(Opcode.SEQUENCE, ByteBuffer.allocate(8 + nodeBytes.length)
+                .putLong(sequence)
+                .put(nodeBytes)
+                .array());
+    }
+
+    /**
+     * Создаёт кадр с ролью пользователя.
+     *
+     * @param role Роль.
+     * @return Кадр {@link Opcode#ROLE}.
+     */
+    public static Frame role(Role role) {
+        return new Frame(Opcode.ROLE, new byte[]{(byte) role.ordinal()});
+    }
+
+    /**
+     * Создаёт кадр со списком пользователей.
+     *
+     * @param usernames Имена пользователей.
+     * @return Кадр {@link Opcode#USERS}.
+     */
+    public static Frame users(List<String> usernames) {
+        return new Frame(Opcode.USERS, encodeUsers(usernames, 0).array());
+    }
+
+    /**
+     * Создаёт кадр с полным списком пользователей для подписчика на изменения.
+     *
+     * @param version Версия списка: все изменения до неё включительно уже учтены.
+     * @param usernames Имена пользователей.
+     * @return Кадр {@link Opcode#PRESENCE_SNAPSHOT}.
+     */
+    public static Frame presenceSnapshot(long version, List<String> usernames) {
+        ByteBuffer buffer = encodeUsers(usernames, 8);
+        buffer.putLong(0, version);
+        return new Frame(Opcode.PRESENCE_SNAPSHOT, buffer.array());
+    }
+
+    /**
+     * Создаёт кадр с изменением списка пользователей.
+     *
+     * @param opcode {@link Opcode#PRESENCE_JOINED} или {@link Opcode#PRESENCE_LEFT}.
+     * @param version Версия списка после изменения.
+     * @param username Имя пользователя.
+     * @return Кадр изменения.
+     */
+    public static Frame presenceChange(Opcode opcode, long version, String username) {
+        byte[] name = username.getBytes(StandardCharsets.UTF_8);
+        return new Frame(opcode, ByteBuffer.allocate(8 + name.length).putLong(version).put(name).array());
+    }
+
+    /**
+     * Создаёт кадр, полезная нагрузка которого — список строк (личные сообщения и кадры между узлами кластера).
+     *
+     * @param opcode Код операции.
+     * @param fields Строки полезной нагрузки.
+     * @return Кадр.
+     */
+    public static Frame fields(Opcode opcode, String... fields) {
+        return new Frame(opcode, encodeUsers(List.of(fields), 0).array());
+    }
+
+    /**
+     * Кодирует список имён: количество (4 байта), затем для каждого имени длина (4 байта) и UTF-8.
+     *
+     * @param usernames Имена пользователей.
+     * @param offset Число байтов, которое нужно оставить перед списком.
+     * @return Буфер с закодированным списком.
+     */
+    private static ByteBuffer encodeUsers(List<String> usernames, int offset) {
+        List<byte[]> encoded = new ArrayList<>(usernames.size());
+        int size = offset + 4;
+        for (String username : usernames) {
+            byte[] bytes = username.getBytes(StandardCharsets.UTF_8);
+            encoded.add(bytes);
+            size += 4 + bytes.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size).position(offset).putInt(encoded.size());
+        for (byte[] bytes : encoded) {
+            buffer.putInt(bytes.length).put(bytes);
+        }
+        return buffer;
+    }
+
+    /**
+     * Создаёт кадр из полученных данных, проверяя полезную нагрузку типизированных операций.
+     *
+     * @param code Код операции из заголовка.
+     * @param payload Полезная нагрузка.
+     * @return Кадр.
+     * @throws ProtocolException если код неизвестен или полезная нагрузка не соответствует операции.
+     */
+    public static Frame decode(int code, byte[] payload) throws ProtocolException {
+        return decode(code, payload, Protocol.MAX_FRAME_SIZE);
+    }
+
+    /**
+     * Создаёт кадр из полученных данных, проверяя полезную нагрузку типизированных операций.
+     * Сжатый кадр ({@link Opcode#COMPRESSED}) распаковывается, и возвращается исходный кадр.
+     *
+     * @param code Код операции из заголовка.
+     * @param payload Полезная нагрузка.
+     * @param maxFrameSize Максимальный допустимый размер полезной нагрузки после распаковки.
+     * @return Кадр.
+     * @throws ProtocolException если код неизвестен или полезная нагрузка не соответствует операции.
+     */
+    public static Frame decode(int code, byte[] payload, int maxFrameSize) throws ProtocolException {
+        if (code == Opcode.COMPRESSED.getCode()) {
+            return FrameCompression.decompress(payload, maxFrameSize);
+        }
+        Frame frame = new Frame(Opcode.fromCode(code), payload);
+        switch (frame.opcode) {
+            case HELLO -> requireLength(frame, 1);
+            case ROLE -> {
+                requireLength(frame, 1);
+                frame.getRole();
+            }
+            case COUNT -> requireLength(frame, 4);
+            case USERS -> frame.getUsers();
+            case PRESENCE_SNAPSHOT -> {
+                requireMinLength(frame, 8);
+                frame.getUsers();
+            }
+            case PRESENCE_JOINED, PRESENCE_LEFT -> requireMinLength(frame, 8);
+            case LIST, QUEUES, EXIT, PRESENCE_SUBSCRIBE, PRESENCE_UNSUBSCRIBE, LEAVE -> requireLength(frame, 0);
+            case PEER_HELLO, PEER_KICK -> requireFields(frame, 1);
+            case DIRECT, PRIVATE, PRIVATE_SENT, PEER_JOINED, PEER_LEFT, PEER_KICKED, PEER_ROOM_MESSAGE, PEER_CLAIM,
+                 PEER_CLAIM_RESULT -> requireFields(frame, 2);
+            case PEER_DIRECT -> requireFields(frame, 3);
+            case CHAT_ID -> requireFields(frame, 2);
+            case ROOM_MESSAGE, CHAT_ACK -> {
+                requireFields(frame, 2);
+                frame.getSequence();
+            }
+            case RESUME -> {
+                requireFields(frame, 4);
+                frame.getSequence();
+            }
+            case SEQUENCE -> requireMinLength(frame, 8);
+            default -> {
+                // Текстовая полезная нагрузка
+            }
+        }
+        return frame;
+    }
+
+    private static void requireLength(Frame frame, int length) throws ProtocolException {
+        if (frame.payload.length != length) {
+            throw new ProtocolException("Invalid " + frame.opcode + " payload length: " + frame.payload.length);
+        }
+    }
+
+    private static void requireFields(Frame frame, int count) throws ProtocolException {
+        if (frame.getFields().size() != count) {
+            throw new ProtocolException("Invalid " + frame.opcode + " field count");
+        }
+    }
+
+    private static void requireMinLength(Frame frame, int length) throws ProtocolException {
+        if (frame.payload.length < length) {
+            throw new ProtocolException("Invalid " + frame.opcode + " payload length: " + frame.payload.length);
+        }
+    }
+
+    /**
+     * Читает один кадр из потока (блокирующее чтение).
+     *
+     * @param in Поток ввода.
+     * @param maxFrameSize Максимальный допустимый размер полезной нагрузки.
+     * @return Кадр или {@code null}, если поток закончился до начала кадра.
+     * @throws IOException при ошибке чтения или нарушении протокола.
+     */
+    public static Frame readFrom(DataInputStream in, int maxFrameSize) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (length < 0 || length > maxFrameSize) {
+            throw new ProtocolException("Invalid frame length: " + length);
+        }
+        int code = in.readUnsignedByte();
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        return decode(code, payload, maxFrameSize);
+    }
+
+    /**
+     * Возвращает код операции.
+     *
+     * @return Код операции.
+     */
+    public Opcode getOpcode() {
+        return opcode;
+    }
+
+    /**
+     * Возвращает текстовую полезную нагрузку.
+     *
+     * @return Текст в UTF-8.
+     */
+    public String getText() {
+        return new String(payload, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Возвращает версию протокола из кадра {@link Opcode#HELLO}.
+     *
+     * @return Версия протокола.
+     */
+    public int getVersion() {
+        return payload[0] & 0xFF;
+    }
+
+    /**
+     * Возвращает количество пользователей из кадра {@link Opcode#COUNT}.
+     *
+     * @return Количество пользователей.
+     */
+    public int getCount() {
+        return ByteBuffer.wrap(payload).getInt();
+    }
+
+    /**
+     * Возвращает роль из кадра {@link Opcode#ROLE}.
+     *
+     * @return Роль пользователя.
+     * @throws ProtocolException если код роли неизвестен.
+     */
+    public Role getRole() throws ProtocolException {
+        return Role.fromCode(payload[0] & 0xFF);
+    }
+
+    /**
+     * Возвращает версию списка пользователей из кадров {@link Opcode#PRESENCE_SNAPSHOT},
+     * {@link Opcode#PRESENCE_JOINED} и {@link Opcode#PRESENCE_LEFT}.
+     *
+     * @return Версия списка.
+     */
+    public long getPresenceVersion() {
+        return ByteBuffer.wrap(payload).getLong();
+    }
+
+    /**
+     * Возвращает номер сообщения комнаты из кадров {@link Opcode#SEQUENCE}, {@link Opcode#ROOM_MESSAGE},
+     * {@link Opcode#CHAT_ACK} и {@link Opcode#RESUME}.
+     *
+     * @return Номер сообщения.
+     * @throws ProtocolException если номер закодирован неверно.
+     */
+    public long getSequence() throws ProtocolException {
+        if (opcode == Opcode.SEQUENCE) {
+            return ByteBuffer.wrap(payload).getLong();
+        }
+        List<String> fields = getFields();
+        String sequence = fields.get(opcode == Opcode.ROOM_MESSAGE ? 0 : fields.size() - 1);
+        try {
+            return Long.parseLong(sequence);
+        } catch (NumberFormatException e) {
+            throw new ProtocolException("Invalid " + opcode + " sequence: " + sequence);
+        }
+    }
+
+    /**
+     * Возвращает идентификатор узла, выдавшего номер, из кадра {@link Opcode#SEQUENCE}.
+     *
+     * @return Идентификатор узла.
+     */
+    public String getSequenceNode() {
+        return new String(payload, 8, payload.length - 8, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Возвращает имя пользователя из кадров {@link Opcode#PRESENCE_JOINED} и {@link Opcode#PRESENCE_LEFT}.
+     *
+     * @return Имя пользователя.
+     */
+    public String getPresenceUsername() {
+        return new String(payload, 8, payload.length - 8, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Возвращает список пользователей из кадров {@link Opcode#USERS} и {@link Opcode#PRESENCE_SNAPSHOT}.
+     *
+     * @return Имена пользователей.
+     * @throws ProtocolException если список закодирован неверно.
+     */
+    public List<String> getUsers() throws ProtocolException {
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        if (opcode == Opcode.PRESENCE_SNAPSHOT) {
+            buffer.position(8);
+        }
+        try {
+            int count = buffer.getInt();
+            if (count < 0 || count > payload.length / 4) {
+                throw new ProtocolException("Invalid user count: " + count);
+            }
+            List<String> usernames = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int length = buffer.getInt();
+                if (length < 0 || length > buffer.remaining()) {
+                    throw new ProtocolException("Invalid username length: " + length);
+                }
+                usernames.add(new String(payload, buffer.position(), length, StandardCharsets.UTF_8));
+                buffer.position(buffer.position() + length);
+            }
+            return usernames;
+        } catch (BufferUnderflowException e) {
+            throw new ProtocolException("Truncated user list");
+        }
+    }
+
+    /**
+     * Возвращает строки полезной нагрузки кадра личного сообщения или кадра между узлами кластера.
+     *
+     * @return Строки полезной нагрузки.
+     * @throws ProtocolException если список закодирован неверно.
+     */
+    public List<String> getFields() throws ProtocolException {
+        return getUsers();
+    }
+
+    /**
+     * Возвращает полезную нагрузку без копирования.
+     *
+     * @return Полезная нагрузка; изменять массив нельзя.
+     */
+    byte[] payload() {
+        return payload;
+    }
+
+    /**
+     * Возвращает размер кадра вместе с заголовком.
+     *
+     * @return Число байтов в закодированном кадре.
+     */
+    public int encodedLength() {
+        return Protocol.HEADER_SIZE + payload.length;
+    }
+
+    /**
+     * Кодирует кадр: заголовок и полезная нагрузка.
+     *
+     * @return Закодированный кадр.
+     */
+    public byte[] encode() {
+        return ByteBuffer.allocate(encodedLength())
+                .putInt(payload.length)
+                .put((byte) opcode.getCode())
+                .put(payload)
+                .array();
+    }
+
+    /**
+     * Представляет кадр строкой старого строкового протокола.
+     *
+     * @return Строка без перевода строки.
+     * @throws IllegalStateException для кадров {@link Opcode#HELLO}, {@link Opcode#COMPRESSED}, {@link Opcode#RESUME} и кадров между узлами кластера, у которых нет строкового представления.
+     */
+    public String toLine() {
+        try {
+            return switch (opcode) {
+                case HELLO, PEER_HELLO, PEER_JOINED, PEER_LEFT, PEER_KICKED, PEER_ROOM_MESSAGE, PEER_CLAIM,
+                     PEER_CLAIM_RESULT, PEER_KICK, PEER_DIRECT, COMPRESSED, RESUME ->
+                        throw new IllegalStateException(opcode + " has no line representation");
+                case USERNAME, CHAT, TEXT -> getText();
+                case CHAT_ID, ROOM_MESSAGE -> getFields().get(1);
+                case CHAT_ACK -> "/ack " + String.join(" ", getFields());
+                case SEQUENCE -> "/sequence " + getSequence();
+                case KICK -> "/kick " + getText();
+                case LIST -> "/list";
+                case QUEUES -> "/queues";
+                case EXIT -> "exit";
+                case PRESENCE_SUBSCRIBE -> "/subscribe";
+                case PRESENCE_UNSUBSCRIBE -> "/unsubscribe";
+                case JOIN -> "/join " + getText();
+                case LEAVE -> "/leave";
+                case ERROR, NAME_TAKEN -> "/error " + getText();
+                case ROLE -> "/role " + getRole().getDisplayName();
+                case USERS -> "/users " + String.join(",", getUsers());
+                case COUNT -> COUNT_PREFIX + getCount();
+                case BANNED -> "/banned " + getText();
+                case QUEUE_DEPTHS -> "/queues " + getText();
+                case PRESENCE_SNAPSHOT -> "/presence " + getPresenceVersion() + " " + String.join(",", getUsers());
+                case PRESENCE_JOINED -> "/joined " + getPresenceVersion() + " " + getPresenceUsername();
+                case PRESENCE_LEFT -> "/left " + getPresenceVersion() + " " + getPresenceUsername();
+                case ROOM -> "/room " + getText();
+                case DIRECT -> "/msg " + String.join(" ", getFields());
+                case PRIVATE -> "/private " + String.join(" ", getFields());
+                case PRIVATE_SENT -> "/private-to " + String.join(" ", getFields());
+            };
+        } catch (ProtocolException e) {
+            // Кадры проверяются при создании и разборе
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Разбирает строку клиента старого протокола (кроме первой строки с именем) в кадр.
+     *
+     * @param line Строка от клиента.
+     * @return Кадр команды или {@link Opcode#CHAT} для обычного сообщения.
+     */
+    public static Frame fromLine(String line) {
+        if ("exit".equalsIgnoreCase(line)) {
+            return of(Opcode.EXIT);
+        } else if (line.startsWith("/kick ")) {
+            return of(Opcode.KICK, line.substring(6).trim());
+        } else if ("/queues".equalsIgnoreCase(line)) {
+            return of(Opcode.QUEUES);
+        } else if ("/list".equalsIgnoreCase(line)) {
+            return of(Opcode.LIST);
+        } else if ("/subscribe".equalsIgnoreCase(line)) {
+            return of(Opcode.PRESENCE_SUBSCRIBE);
+        } else if ("/unsubscribe".equalsIgnoreCase(line)) {
+            return of(Opcode.PRESENCE_UNSUBSCRIBE);
+        } else if (line.startsWith("/join ")) {
+            return of(Opcode.JOIN, line.substring(6).trim());
+        } else if ("/leave".equalsIgnoreCase(line)) {
+            return of(Opcode.LEAVE);
+        } else if (line.startsWith("/msg ")) {
+            String[] parts = line.substring(5).trim().split(" ", 2);
+            return fields(Opcode.DIRECT, parts[0], parts.length > 1 ? parts[1] : "");
+        }
+        return of(Opcode.CHAT, line);
+    }
+}
@@ -0,0 +1,141 @@
+package org.protocolchat;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Сжатие кадров бинарного протокола.
+ * <p>
+ * Стороны, согласовавшие версию не ниже {@link Protocol#COMPRESSION_VERSION}, могут передавать вместо кадра
+ * не меньше порога кадр {@link Opcode#COMPRESSED}: код исходной операции (1 байт), длина исходной полезной
+ * нагрузки (4 байта) и полезная нагрузка, сжатая deflate без заголовка. Каждый кадр сжимается независимо
+ * с общим словарём, составленным из частых фрагментов чата (уведомления сервера, строки журналов и стека вызовов),
+ * а не с состоянием потока соединения: поэтому сервер сжимает сообщение рассылки один раз, и все получатели
+ * получают одни и те же байты. Кадр, который не стал меньше, передаётся как есть.
+ * </p>
+ * <p>
+ * Объекты {@link Deflater} и {@link Inflater} держат память вне кучи, поэтому они переиспользуются через пулы,
+ * а не создаются на каждый кадр или поток (виртуальных потоков может быть по одному на клиента).
+ * </p>
+ *
+ * <p>Переменные класса:</p>
+ * <ul>
+ *   <li>{@code DEFAULT_THRESHOLD} — Размер полезной нагрузки, начиная с которого кадр сжимается.</li>
+ *   <li>{@code HEADER_SIZE} — Размер заголовка полезной нагрузки сжатого кадра.</li>
+ *   <li>{@code DICTIONARY} — Общий словарь сжатия; самые частые фрагменты стоят в конце.</li>
+ *   <li>{@code DEFLATERS} — Пул объектов сжатия.</li>
+ *   <li>{@code INFLATERS} — Пул объектов распаковки.</li>
+ * </ul>
+ */
+public final class FrameCompression {
+
+    public static final int DEFAULT_THRESHOLD = 512;
+    private static final int HEADER_SIZE = 5;
+    private static final byte[] DICTIONARY = String.join("",
+            "java.lang.NullPointerException: ", "java.lang.IllegalStateException: ",
+            "java.lang.IllegalArgumentException: ", "java.io.IOException: ", "Exception in thread \"main\" ",
+            "\tat java.base/java.lang.Thread.run(Thread.java:", "\tat java.base/java.util.concurrent.",
+            "\tat org.springframework.", "\tat org.apache.", "\tat jdk.internal.", "... more\n",
+            "Caused by: ", "Exception: ", "Error: ", "null", "true", "false",
+            " DEBUG ", " TRACE ", " WARN ", " ERROR ", " INFO ", "[main] ", "Thread-",
+            "https://", "http://", "localhost", "127.0.0.1", ".java:", "\n\tat ",
+            "Пользователь ", " был отключён Администратором", "Отключились: ", "Подключились: ",
+            " отключился!", " подключился!", "Количество пользователей на сервере: ")
+            .getBytes(StandardCharsets.UTF_8);
+    private static final Queue<Deflater> DEFLATERS = new ConcurrentLinkedQueue<>();
+    private static final Queue<Inflater> INFLATERS = new ConcurrentLinkedQueue<>();
+
+    private FrameCompression() {
+    }
+
+    /**
+     * Сжимает кадр, если его полезная нагрузка не меньше порога и сжатие уменьшает её.
+     *
+     * @param frame Кадр.
+     * @param threshold Размер полезной нагрузки, начиная с которого кадр сжимается ({@code 0} — не сжимать).
+     * @return Кадр {@link Opcode#COMPRESSED} или исходный кадр.
+     */
+    public static Frame compress(Frame frame, int threshold) {
+        byte[] payload = frame.payload();
+        if (threshold <= 0 || payload.length < threshold || frame.getOpcode() == Opcode.COMPRESSED) {
+            return frame;
+        }
+        Deflater deflater = DEFLATERS.poll();
+        if (deflater == null) {
+            deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        }
+        try {
+            deflater.setDictionary(DICTIONARY);
+            deflater.setInput(payload);
+            deflater.finish();
+            // Сжатый кадр должен быть меньше исходного вместе со своим заголовком
+            byte[] compressed = new byte[payload.length];
+            ByteBuffer.wrap(compressed).put((byte) frame.getOpcode().getCode()).putInt(payload.length);
+            int length = HEADER_SIZE;
+            while (!deflater.finished() && length < compressed.length) {
+                length += deflater.deflate(compressed, length, compressed.length - length);
+            }
+            if (!deflater.finished()) {
+                return frame;
+            }
+            return Frame.raw(Opcode.COMPRESSED, Arrays.copyOf(compressed, length));
+        } finally {
+            deflater.reset();
+            DEFLATERS.offer(deflater);
+        }
+    }
+
+    /**
+     * Распаковывает кадр {@link Opcode#COMPRESSED}.
+     *
+     * @param payload Полезная нагрузка сжатого кадра.
+     * @param maxFrameSize Максимальный допустимый размер распакованной полезной нагрузки.
+     * @return Исходный кадр.
+     * @throws ProtocolException если кадр повреждён или распакованный кадр больше допустимого.
+     */
+    static Frame decompress(byte[] payload, int maxFrameSize) throws ProtocolException {
+        if (payload.length < HEADER_SIZE) {
+            throw new ProtocolException("Invalid COMPRESSED payload length: " + payload.length);
+        }
+        ByteBuffer header = ByteBuffer.wrap(payload, 0, HEADER_SIZE);
+        int code = header.get() & 0xFF;
+        int length = header.getInt();
+        if (code == Opcode.COMPRESSED.getCode() || length < 0 || length > maxFrameSize) {
+            throw new ProtocolException("Invalid COMPRESSED frame: opcode " + code + ", length " + length);
+        }
+        Inflater inflater = INFLATERS.poll();
+        if (inflater == null) {
+            inflater = new Inflater(true);
+        }
+        try {
+            inflater.setDictionary(DICTIONARY);
+            inflater.setInput(payload, HEADER_SIZE, payload.length - HEADER_SIZE);
+            byte[] original = new byte[length];
+            int inflated = 0;
+            while (inflated < length) {
+                int count = inflater.inflate(original, inflated, length - inflated);
+                if (count == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                inflated += count;
+            }
+            // Сжатые данные должны закончиться ровно на объявленной длине
+            if (inflated != length || !inflater.finished() && inflater.inflate(new byte[1]) != 0 || !inflater.finished()) {
+                throw new ProtocolException("Corrupted COMPRESSED frame");
+            }
+            return Frame.decode(code, original, maxFrameSize);
+        } catch (DataFormatException e) {
+            throw new ProtocolException("Corrupted COMPRESSED frame: " + e.getMessage());
+        } finally {
+            inflater.reset();
+            INFLATERS.offer(inflater);
+        }
+    }
+}
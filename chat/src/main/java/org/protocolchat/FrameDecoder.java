@@ -0,0 +1,88 @@
+package org.protocolchat;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.function.Predicate;
+
+/**
+ * Разбирает поток байтов на кадры бинарного протокола.
+ * Данные могут приходить любыми частями: незавершённый заголовок или полезная нагрузка накапливаются между вызовами.
+ *
+ * <p>Переменные класса:</p>
+ * <ul>
+ *   <li>{@code maxFrameSize} — Максимальный допустимый размер полезной нагрузки.</li>
+ *   <li>{@code header} — Накопленные байты заголовка текущего кадра.</li>
+ *   <li>{@code payload} — Полезная нагрузка текущего кадра или {@code null}, пока заголовок не прочитан.</li>
+ *   <li>{@code code} — Код операции текущего кадра.</li>
+ * </ul>
+ */
+public class FrameDecoder {
+
+    private final int maxFrameSize;
+    private final ByteBuffer header = ByteBuffer.allocate(Protocol.HEADER_SIZE);
+    private ByteBuffer payload;
+    private int code;
+
+    /**
+     * Создаёт декодер с ограничением на размер кадра.
+     *
+     * @param maxFrameSize Максимальный допустимый размер полезной нагрузки в байтах.
+     */
+    public FrameDecoder(int maxFrameSize) {
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    /**
+     * Читает байты из буфера и передаёт каждый завершённый кадр обработчику.
+     *
+     * @param input Буфер с данными в режиме чтения.
+     * @param frameConsumer Обработчик кадров; если он вернул {@code false}, разбор прекращается.
+     * @return {@code false}, если обработчик попросил прекратить чтение.
+     * @throws IOException если кадр превышает допустимый размер или закодирован неверно.
+     */
+    public boolean decode(ByteBuffer input, Predicate<Frame> frameConsumer) throws IOException {
+        while (input.hasRemaining()) {
+            if (payload == null) {
+                transfer(input, header);
+                if (header.hasRemaining()) {
+                    return true;
+                }
+                header.flip();
+                int length = header.getInt();
+                code = header.get() & 0xFF;
+                header.clear();
+                if (length < 0 || length > maxFrameSize) {
+                    throw new ProtocolException("Invalid frame length: " + length);
+                }
+                payload = ByteBuffer.allocate(length);
+            }
+            transfer(input, payload);
+            if (payload.hasRemaining()) {
+                return true;
+            }
+            Frame frame = Frame.decode(code, payload.array(), maxFrameSize);
+            payload = null;
+            if (!frameConsumer.test(frame)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Копирует из источника столько байтов, сколько помещается в приёмник.
+     *
+     * @param source Источник в режиме чтения.
+     * @param target Приёмник в режиме записи.
+     */
+    private static void transfer(ByteBuffer source, ByteBuffer target) {
+        int count = Math.min(source.remaining(), target.remaining());
+        if (count == 0) {
+            return;
+        }
+        ByteBuffer slice = source.slice(source.position(), count);
+        target.put(slice);
+        source.position(source.position() + count);
+    }
+}
@@ -0,0 +1,179 @@
+package org.protocolchat;
+
+import java.net.ProtocolException;
+
+/**
+ * Коды операций бинарного протокола.
+ * Коды до {@code 0x20} отправляет клиент, начиная с {@code 0x20} — сервер; {@link #HELLO} используется в обе стороны.
+ * Коды начиная с {@code 0x40} передаются только между узлами кластера. Полезная нагрузка кадров личных сообщений
+ * и кадров между узлами — список строк, закодированный как в {@link #USERS}.
+ */
+public enum Opcode {
+
+    /** Согласование версии протокола, полезная нагрузка — номер версии (1 байт). */
+    HELLO(0x01),
+
+    /** Имя пользователя (UTF-8). */
+    USERNAME(0x02),
+
+    /** Сообщение в чат (UTF-8). */
+    CHAT(0x03),
+
+    /** Отключить пользователя, полезная нагрузка — имя (UTF-8). */
+    KICK(0x04),
+
+    /** Запрос списка пользователей. */
+    LIST(0x05),
+
+    /** Запрос глубины исходящих очередей. */
+    QUEUES(0x06),
+
+    /** Выход из чата. */
+    EXIT(0x07),
+
+    /** Подписка на изменения списка пользователей. */
+    PRESENCE_SUBSCRIBE(0x08),
+
+    /** Отмена подписки на изменения списка пользователей. */
+    PRESENCE_UNSUBSCRIBE(0x09),
+
+    /** Перейти в комнату, полезная нагрузка — имя комнаты (UTF-8). */
+    JOIN(0x0A),
+
+    /** Выйти из комнаты в комнату по умолчанию. */
+    LEAVE(0x0B),
+
+    /** Личное сообщение пользователю: получатель, текст. */
+    DIRECT(0x0C),
+
+    /** Сообщение в чат с идентификатором, назначенным клиентом (с версии {@link Protocol#SEQUENCE_VERSION}): идентификатор, текст. */
+    CHAT_ID(0x0D),
+
+    /**
+     * Регистрация имени при восстановлении сессии (с версии {@link Protocol#SEQUENCE_VERSION}): имя, комната,
+     * идентификатор узла, выдавшего номера, номер последнего полученного сообщения комнаты.
+     */
+    RESUME(0x0E),
+
+    /** Сообщение чата или уведомление сервера (UTF-8). */
+    TEXT(0x20),
+
+    /** Ошибка (UTF-8). */
+    ERROR(0x21),
+
+    /** Роль пользователя (1 байт, {@link Role}). */
+    ROLE(0x22),
+
+    /** Список пользователей: количество (4 байта), затем для каждого имени длина (4 байта) и UTF-8. */
+    USERS(0x23),
+
+    /** Количество пользователей в комнате клиента (4 байта). */
+    COUNT(0x24),
+
+    /** Пользователь отключён администратором, полезная нагрузка — причина (UTF-8). */
+    BANNED(0x25),
+
+    /** Глубина исходящих очередей (UTF-8). */
+    QUEUE_DEPTHS(0x26),
+
+    /** Полный список пользователей при подписке: версия (8 байт), затем список как в {@link #USERS}. */
+    PRESENCE_SNAPSHOT(0x27),
+
+    /** Пользователь подключился: версия (8 байт), затем имя (UTF-8). */
+    PRESENCE_JOINED(0x28),
+
+    /** Пользователь отключился: версия (8 байт), затем имя (UTF-8). */
+    PRESENCE_LEFT(0x29),
+
+    /** Текущая комната клиента, полезная нагрузка — имя комнаты (UTF-8). */
+    ROOM(0x2A),
+
+    /** Личное сообщение клиенту: отправитель, текст. */
+    PRIVATE(0x2B),
+
+    /** Подтверждение доставки личного сообщения отправителю: получатель, текст. */
+    PRIVATE_SENT(0x2C),
+
+    /** Сообщение комнаты с порядковым номером (с версии {@link Protocol#SEQUENCE_VERSION}): номер, текст. */
+    ROOM_MESSAGE(0x2D),
+
+    /** Подтверждение сообщения {@link #CHAT_ID} отправителю: идентификатор, номер сообщения в комнате. */
+    CHAT_ACK(0x2E),
+
+    /**
+     * Номер последнего сообщения, разосланного до входа клиента в комнату (8 байт),
+     * затем идентификатор узла, выдающего номера (UTF-8).
+     */
+    SEQUENCE(0x2F),
+
+    /** Сжатый кадр (в обе стороны, с версии {@link Protocol#COMPRESSION_VERSION}), см. {@link FrameCompression}. */
+    COMPRESSED(0x30),
+
+    /** Имя пользователя уже занято, полезная нагрузка — текст ошибки (UTF-8). */
+    NAME_TAKEN(0x31),
+
+    /** Приветствие узла кластера: идентификатор узла. */
+    PEER_HELLO(0x40),
+
+    /** Пользователь узла вошёл в комнату: комната, имя. */
+    PEER_JOINED(0x41),
+
+    /** Пользователь узла вышел из комнаты: комната, имя. */
+    PEER_LEFT(0x42),
+
+    /** Пользователь узла отключён администратором: комната, имя. */
+    PEER_KICKED(0x43),
+
+    /** Сообщение для участников комнаты на других узлах: комната, текст. */
+    PEER_ROOM_MESSAGE(0x44),
+
+    /** Запрос имени пользователя у остальных узлов: номер запроса, имя. */
+    PEER_CLAIM(0x45),
+
+    /** Ответ на запрос имени: номер запроса, {@code "1"} — имя свободно, {@code "0"} — занято. */
+    PEER_CLAIM_RESULT(0x46),
+
+    /** Команда администратора отключить пользователя этого узла: имя. */
+    PEER_KICK(0x47),
+
+    /** Личное сообщение пользователю этого узла: отправитель, получатель, текст. */
+    PEER_DIRECT(0x48);
+
+    private static final Opcode[] BY_CODE = new Opcode[256];
+
+    static {
+        for (Opcode opcode : values()) {
+            BY_CODE[opcode.code] = opcode;
+        }
+    }
+
+    private final int code;
+
+    Opcode(int code) {
+        this.code = code;
+    }
+
+    /**
+     * Возвращает числовой код операции.
+     *
+     * @return Код операции (0–255).
+     */
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * Определяет операцию по числовому коду.
+     *
+     * @param code Код операции из заголовка кадра.
+     * @return Операция.
+     * @throws ProtocolException если код неизвестен.
+     */
+    public static Opcode fromCode(int code) throws ProtocolException {
+        Opcode opcode = code >= 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+        if (opcode == null) {
+            throw new ProtocolException("Unknown opcode: " + code);
+        }
+        return opcode;
+    }
+}
@@ -0,0 +1,44 @@
+package org.protocolchat;
+
+/**
+ * Константы бинарного протокола чата.
+ * <p>
+ * Клиент, поддерживающий бинарный протокол, первым байтом соединения отправляет {@link #MAGIC}, затем кадр
+ * {@link Opcode#HELLO} со своей версией. Сервер отвечает кадром {@link Opcode#HELLO} с выбранной версией.
+ * Строковые клиенты сразу отправляют имя пользователя: текст никогда не начинается с нулевого байта,
+ * поэтому оба протокола работают на одном порту.
+ * </p>
+ * <p>
+ * Формат кадра: длина полезной нагрузки (4 байта, big-endian), код операции (1 байт), полезная нагрузка.
+ * Начиная с версии {@link #COMPRESSION_VERSION} стороны могут сжимать большие кадры ({@link FrameCompression}).
+ * Начиная с версии {@link #SEQUENCE_VERSION} сообщения комнат приходят с порядковым номером сервера
+ * ({@link Opcode#ROOM_MESSAGE}), клиент помечает свои сообщения идентификаторами ({@link Opcode#CHAT_ID})
+ * и после переподключения получает только пропущенные сообщения ({@link Opcode#RESUME}).
+ * </p>
+ *
+ * <p>Переменные класса:</p>
+ * <ul>
+ *   <li>{@code MAGIC} — Первый байт соединения бинарного клиента.</li>
+ *   <li>{@code VERSION} — Текущая версия протокола.</li>
+ *   <li>{@code COMPRESSION_VERSION} — Версия, начиная с которой поддерживаются сжатые кадры.</li>
+ *   <li>{@code SEQUENCE_VERSION} — Версия, начиная с которой сообщения комнат нумеруются и сессию можно восстановить
+ *   без пропусков.</li>
+ *   <li>{@code HEADER_SIZE} — Размер заголовка кадра в байтах.</li>
+ *   <li>{@code MAX_FRAME_SIZE} — Максимальный размер полезной нагрузки кадра в байтах.</li>
+ *   <li>{@code MAX_CLIENT_FRAME_SIZE} — Максимальный размер кадра, который сервер принимает от клиента
+ *   (совпадает с ограничением на длину строки в строковом протоколе).</li>
+ * </ul>
+ */
+public final class Protocol {
+
+    public static final int MAGIC = 0x00;
+    public static final int VERSION = 3;
+    public static final int COMPRESSION_VERSION = 2;
+    public static final int SEQUENCE_VERSION = 3;
+    public static final int HEADER_SIZE = 5;
+    public static final int MAX_FRAME_SIZE = 1024 * 1024;
+    public static final int MAX_CLIENT_FRAME_SIZE = 64 * 1024;
+
+    private Protocol() {
+    }
+}
@@ -0,0 +1,45 @@
+package org.protocolchat;
+
+import java.net.ProtocolException;
+
+/**
+ * Роль пользователя, передаваемая в кадре {@link Opcode#ROLE}.
+ */
+public enum Role {
+
+    /** Обычный пользователь. */
+    USER("Пользователь"),
+
+    /** Администратор. */
+    ADMIN("Админ1270018040");
+
+    private final String displayName;
+
+    Role(String displayName) {
+        this.displayName = displayName;
+    }
+
+    /**
+     * Возвращает название роли в строковом протоколе ({@code /role <название>}).
+     *
+     * @return Название роли.
+     */
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * Определяет роль по коду из кадра.
+     *
+     * @param code Код роли.
+     * @return Роль.
+     * @throws ProtocolException если код неизвестен.
+     */
+    public static Role fromCode(int code) throws ProtocolException {
+        Role[] roles = values();
+        if (code < 0 || code >= roles.length) {
+            throw new ProtocolException("Unknown role: " + code);
+        }
+        return roles[code];
+    }
+}
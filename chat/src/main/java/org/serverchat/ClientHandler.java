@@ -1,41 +1,106 @@
 package org.serverchat;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.protocolchat.Frame;
+import org.protocolchat.Opcode;
+import org.protocolchat.Protocol;
+import org.protocolchat.Role;
+
 import javax.net.ssl.SSLSocket;
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.io.InputStream;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
 /**
  * Класс, обрабатывающий клиента на сервере.
  * Он управляет подключениями, регистрацией имен пользователей, отправкой сообщений и выполнением команд администратора.
+ * Данные от клиента разбираются {@link InboundDecoder} в кадры, поэтому строковые и бинарные клиенты
+ * обрабатываются одним и тем же кодом. После регистрации клиент находится в одной из комнат ({@link Room}):
+ * сообщения, список и количество пользователей, подписка на присутствие относятся к текущей комнате.
+ * В кластере ({@link ClusterNode}) имя пользователя занимается во всех узлах, вход и выход из комнаты
+ * и сообщения комнаты передаются остальным узлам, а команда /kick находит пользователя на любом узле.
+ * Сообщения комнат сохраняются в журнал ({@link MessageJournal}). Личное сообщение ({@code /msg}) доставляется
+ * только получателю: он находится по имени в реестре клиентов (или у узла кластера, к которому подключен),
+ * без обхода комнаты. Клиенты с протоколом {@link Protocol#SEQUENCE_VERSION} получают сообщения комнаты с номерами
+ * ({@link Room#deliver(String, String, String, ClientHandler)}), подтверждение каждого своего сообщения
+ * ({@link Opcode#CHAT_ACK}), а после переподключения ({@link Opcode#RESUME}) — только пропущенные сообщения;
+ * повторно отправленное сообщение с тем же идентификатором клиента не рассылается второй раз.
  *
  * <p>Переменные класса:</p>
  * <ul>
- *   <li>{@code clientSocket} — SSL-сокет, связанный с клиентом.</li>
- *   <li>{@code outputWriter} — Поток для отправки данных клиенту.</li>
- *   <li>{@code inputReader} — Поток для чтения данных от клиента.</li>
+ *   <li>{@code clientSocket} — SSL-сокет, связанный с клиентом (только в блокирующем режиме).</li>
+ *   <li>{@code transport} — Транспорт для отправки данных клиенту.</li>
+ *   <li>{@code inputStream} — Поток для чтения данных от клиента (только в блокирующем режиме).</li>
+ *   <li>{@code decoder} — Разбор входящих данных клиента в кадры.</li>
  *   <li>{@code username} — Имя пользователя клиента.</li>
+ *   <li>{@code isRegistered} — Флаг, что имя пользователя занято во всём кластере и регистрация завершена.</li>
+ *   <li>{@code isKicked} — Флаг, что клиента отключил администратор.</li>
  *   <li>{@code isClosed} — Флаг для отслеживания закрытия соединения.</li>
+ *   <li>{@code writerExecutor} — Исполнитель для писателя исходящей очереди (только в блокирующем режиме).</li>
+ *   <li>{@code isEvicted} — Флаг, что клиент уже отключается как не успевающий получать сообщения.</li>
+ *   <li>{@code room} — Текущая комната клиента ({@code null} до регистрации имени).</li>
+ *   <li>{@code isPresenceSubscribed} — Флаг подписки на присутствие (сохраняется при смене комнаты).</li>
+ *   <li>{@code resumeRoom} — Комната, в которую клиент возвращается после регистрации ({@code null} — комната
+ *   по умолчанию).</li>
+ *   <li>{@code resumeAfter} — Номер последнего сообщения, полученного клиентом до разрыва, или {@code NO_RESUME}.</li>
+ *   <li>{@code NO_RESUME} — Значение {@code resumeAfter}, при котором пропущенные сообщения не отправляются.</li>
+ *   <li>{@code READ_BUFFER_SIZE} — Размер буфера чтения в блокирующем режиме.</li>
  *   <li>{@code SUPERADMIN_NAME} — Имя супер-администратора.</li>
  *   <li>{@code superAdminConnected} — Флаг, указывающий на подключение супер-администратора.</li>
- *   <li>{@code connectedClients} — Список всех подключенных клиентов.</li>
+ *   <li>{@code connectedClients} — Реестр всех подключенных клиентов (без глобальной блокировки).</li>
+ *   <li>{@code EVICTION_TIMEOUT_SECONDS} — Время на отправку уведомления перед принудительным разрывом.</li>
+ *   <li>{@code clientTimer} — Планировщик принудительного разрыва соединений с медленными клиентами и сводок присутствия.</li>
+ *   <li>{@code rooms} — Реестр комнат.</li>
+ *   <li>{@code cluster} — Узел кластера (без соединений, если сервер работает один).</li>
+ *   <li>{@code journal} — Журнал сообщений комнат (выключен, пока сервер его не подключит).</li>
+ *   <li>{@code logger} — Логгер для записи действий и ошибок.</li>
  * </ul>
  */
 public class ClientHandler implements Runnable {
 
+    private static final Logger logger = LogManager.getLogger(ClientHandler.class);
+
     public SSLSocket clientSocket;
-    public PrintWriter outputWriter;
-    public BufferedReader inputReader;
-    public String username;
+    public ClientTransport transport;
+    public InputStream inputStream;
+    private final InboundDecoder decoder = new InboundDecoder();
+    public volatile String username;
+    private volatile boolean isRegistered = false;
+    private volatile boolean isKicked = false;
     public volatile boolean isClosed = false;
+    private final Executor writerExecutor;
+    private final AtomicBoolean isEvicted = new AtomicBoolean(false);
+    private volatile Room room;
+    private volatile boolean isPresenceSubscribed = false;
+    private volatile String resumeRoom;
+    private volatile long resumeAfter = NO_RESUME;
 
-    private static final String SUPERADMIN_NAME = "Админ1270018040";
-    public static boolean superAdminConnected = false; // Флаг подключения администратора
-    private static final List<ClientHandler> connectedClients = Collections.synchronizedList(new ArrayList<>());
+    private static final long NO_RESUME = -1;
+
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
+    private static final String SUPERADMIN_NAME = Role.ADMIN.getDisplayName();
+    public static volatile boolean superAdminConnected = false; // Флаг подключения администратора
+    private static final ClientRegistry connectedClients = new ClientRegistry();
+    private static final long EVICTION_TIMEOUT_SECONDS = 5;
+    private static final ScheduledExecutorService clientTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "client-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final RoomRegistry rooms = new RoomRegistry(clientTimer);
+    private static volatile ClusterNode cluster = ClusterNode.standalone();
+    private static volatile MessageJournal journal = MessageJournal.disabled();
 
     /**
      * Конструктор для создания обработчика клиента.
@@ -43,25 +108,47 @@ public class ClientHandler implements Runnable {
      * @param clientSocket Сокет клиента для обмена данными.
      */
     public ClientHandler(SSLSocket clientSocket) {
+        this(clientSocket, SocketTransport.PLATFORM_WRITERS);
+    }
+
+    /**
+     * Конструктор для создания обработчика клиента с указанным исполнителем для писателя.
+     *
+     * @param clientSocket Сокет клиента для обмена данными.
+     * @param writerExecutor Исполнитель, в котором исходящая очередь записывается в сокет.
+     */
+    public ClientHandler(SSLSocket clientSocket, Executor writerExecutor) {
         this.clientSocket = clientSocket;
+        this.writerExecutor = writerExecutor;
+    }
+
+    /**
+     * Конструктор для создания обработчика клиента поверх готового транспорта.
+     * Используется неблокирующим сервером: данные от клиента передаются в {@link #handleInput(ByteBuffer)}.
+     *
+     * @param transport Транспорт для отправки данных клиенту.
+     */
+    public ClientHandler(ClientTransport transport) {
+        this.transport = transport;
+        this.writerExecutor = null;
     }
 
     /**
      * Основной метод для обработки подключений клиента.
-     * Выполняет установку потоков, регистрацию пользователя, и обработку сообщений от клиента.
+     * Выполняет установку потоков и обработку данных от клиента (согласование протокола, регистрацию и сообщения).
      */
     @Override
     public void run() {
         try {
             setupClientStreams();
-            verifyAndRegisterUsername();
-            processClientMessages();
+            processClientInput();
         } catch (IOException e) {
             if (!isClosed) {
-                System.err.println("Error processing client: " + e.getMessage());
+                logger.error("Error processing client: {}", e.getMessage());
             }
         } finally {
             cleanupClientResources();
+            ServerMetrics.recordClosed();
         }
     }
 
@@ -71,143 +158,510 @@ public class ClientHandler implements Runnable {
      * @throws IOException если возникла ошибка при установке потоков.
      */
     public void setupClientStreams() throws IOException {
-        inputReader = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-        outputWriter = new PrintWriter(clientSocket.getOutputStream(), true);
+        // Рукопожатие выполняется явно, а не при первом чтении, чтобы измерить его длительность
+        long handshakeStart = System.nanoTime();
+        clientSocket.startHandshake();
+        ServerMetrics.recordHandshake(System.nanoTime() - handshakeStart);
+        inputStream = clientSocket.getInputStream();
+        transport = new SocketTransport(clientSocket, writerExecutor);
     }
 
     /**
-     * Проверяет имя пользователя и регистрирует его.
+     * Читает данные от клиента и обрабатывает их, пока клиент не отключится.
      *
-     * @throws IOException если возникла ошибка при чтении данных.
+     * @throws IOException если возникла ошибка при чтении данных или клиент нарушил протокол.
      */
-    public void verifyAndRegisterUsername() throws IOException {
-        username = inputReader.readLine(); // Читаем имя пользователя
-
-        if (username == null) {
-            throw new IOException("Username not provided");
+    private void processClientInput() throws IOException {
+        byte[] chunk = new byte[READ_BUFFER_SIZE];
+        int read;
+        while ((read = inputStream.read(chunk)) != -1) {
+            if (!handleInput(ByteBuffer.wrap(chunk, 0, read))) {
+                break;
+            }
         }
+    }
 
-        synchronized (connectedClients) {
-            // Проверяем, занято ли имя
-            if (isUsernameTaken(username)) {
-                outputWriter.println("/error Имя пользователя '" + username + "' уже занято!");
-                return; // Завершаем метод, но не закрываем соединение
+    /**
+     * Обрабатывает очередную порцию данных от клиента.
+     *
+     * @param input Буфер с данными в режиме чтения.
+     * @return {@code false}, если дальнейшее чтение от клиента нужно прекратить.
+     * @throws IOException если клиент нарушил протокол.
+     */
+    public boolean handleInput(ByteBuffer input) throws IOException {
+        return !isClosed && decoder.decode(input, this::handleFrame);
+    }
+
+    /**
+     * Обрабатывает один кадр от клиента.
+     *
+     * @param frame Кадр от клиента.
+     * @return {@code false}, если дальнейшее чтение от клиента нужно прекратить.
+     */
+    private boolean handleFrame(Frame frame) {
+        if (isClosed) {
+            return false;
+        }
+        ServerMetrics.recordMessageIn();
+        switch (frame.getOpcode()) {
+            case HELLO -> negotiateProtocol(frame.getVersion());
+            case USERNAME -> {
+                if (username == null) {
+                    registerUsername(frame.getText());
+                } else {
+                    sendError("Имя пользователя уже задано");
+                }
             }
+            case RESUME -> {
+                if (username == null) {
+                    resumeSession(frame);
+                } else {
+                    sendError("Имя пользователя уже задано");
+                }
+            }
+            default -> {
+                return processClientMessage(frame);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Согласует версию бинарного протокола: отвечает клиенту кадром {@link Opcode#HELLO}
+     * с наибольшей версией, которую поддерживают обе стороны. С версии {@link Protocol#COMPRESSION_VERSION}
+     * клиенту отправляются сжатые кадры, если сжатие не выключено свойством
+     * {@value WireFormat#COMPRESSION_THRESHOLD_PROPERTY}, а с версии {@link Protocol#SEQUENCE_VERSION} —
+     * ещё и сообщения комнат с номерами.
+     *
+     * @param clientVersion Версия, предложенная клиентом.
+     */
+    private void negotiateProtocol(int clientVersion) {
+        if (transport.getWireFormat() != WireFormat.LINE) {
+            sendError("Протокол уже согласован");
+            return;
+        }
+        transport.setWireFormat(WireFormat.BINARY);
+        if (clientVersion < 1) {
+            sendError("Неподдерживаемая версия протокола: " + clientVersion);
+            cleanupClientResources();
+            return;
+        }
+        int serverVersion = WireFormat.COMPRESSION_THRESHOLD > 0 ? Protocol.VERSION : Protocol.COMPRESSION_VERSION - 1;
+        int version = Math.min(clientVersion, serverVersion);
+        if (version >= Protocol.SEQUENCE_VERSION) {
+            // Ответ HELLO меньше любого порога, поэтому клиент получит его несжатым
+            transport.setWireFormat(WireFormat.SEQUENCED);
+        } else if (version >= Protocol.COMPRESSION_VERSION) {
+            transport.setWireFormat(WireFormat.COMPRESSED);
+        }
+        sendMessage(OutboundMessage.of(Frame.hello(version)));
+    }
 
-            if (SUPERADMIN_NAME.equalsIgnoreCase(username)) {
-                handleSuperAdminConnection();
+    /**
+     * Восстанавливает сессию после переподключения: регистрирует имя, как {@link Opcode#USERNAME}, но после
+     * регистрации возвращает клиента в его комнату и отправляет сообщения, разосланные в ней после последнего
+     * полученного клиентом.
+     *
+     * Номера, выданные другим узлом кластера, с номерами этого узла не сравнимы: такой клиент возвращается
+     * в комнату без пропущенных сообщений и получает уведомление о возможном пропуске.
+     *
+     * @param frame Кадр {@link Opcode#RESUME}: имя, комната, узел, выдавший номера, номер последнего
+     *              полученного сообщения.
+     */
+    private void resumeSession(Frame frame) {
+        try {
+            List<String> fields = frame.getFields();
+            resumeRoom = fields.get(1);
+            if (cluster.getNodeId().equals(fields.get(2))) {
+                resumeAfter = frame.getSequence();
             } else {
-                outputWriter.println("/role Пользователь");
+                logger.info("Session of {} resumed from node {}, missed messages are not replayed",
+                        fields.get(0), fields.get(2));
+                resumeAfter = NO_RESUME;
             }
+            registerUsername(fields.get(0));
+        } catch (ProtocolException e) {
+            sendError("Неверный формат кадра восстановления сессии");
+        }
+    }
+
+    /**
+     * Регистрирует имя пользователя и переводит клиента в комнату по умолчанию.
+     * В кластере имя сначала запрашивается у остальных узлов, и регистрация завершается после их ответа.
+     *
+     * @param name Имя пользователя.
+     */
+    private void registerUsername(String name) {
+        username = name;
+
+        // Проверка имени и добавление выполняются атомарно в реестре, без общей блокировки
+        if (!connectedClients.register(this)) {
+            username = null;
+            sendNameTaken(name);
+            return; // Завершаем метод, но не закрываем соединение
+        }
+        if (cluster.isTakenRemotely(name)) {
+            rejectUsername(name);
+            return;
+        }
+
+        cluster.claim(name)
+                .thenAccept(isGranted -> completeRegistration(name, isGranted))
+                .exceptionally(e -> {
+                    logger.error("Error registering {}: {}", name, e.getMessage());
+                    return null;
+                });
+    }
+
+    /**
+     * Завершает регистрацию после ответа узлов кластера.
+     *
+     * @param name Имя пользователя.
+     * @param isGranted {@code true}, если имя свободно во всём кластере.
+     */
+    private void completeRegistration(String name, boolean isGranted) {
+        if (isClosed) {
+            return;
+        }
+        if (!isGranted) {
+            rejectUsername(name);
+            return;
+        }
+        isRegistered = true;
+        if (ClientRegistry.sameUsername(SUPERADMIN_NAME, username)) {
+            sendMessage(handleSuperAdminConnection());
+        } else {
+            sendMessage(OutboundMessage.of(Frame.role(Role.USER)));
+        }
+        String target = resumeRoom;
+        long after = resumeAfter;
+        resumeRoom = null;
+        resumeAfter = NO_RESUME;
+        if (target == null || !RoomRegistry.isValidName(target)) {
+            enterRoom(RoomRegistry.DEFAULT_ROOM, NO_RESUME);
+            return;
+        }
+        enterRoom(target, after);
+        if (after == NO_RESUME && !isClosed) {
+            // Номера сессии выдал другой узел: пропущенные сообщения найти нельзя
+            sendMessage(Room.MISSED_NOTICE);
+        }
+    }
 
-            // Добавляем клиента в список подключенных
-            connectedClients.add(this);
+    /**
+     * Освобождает имя, занятое другим пользователем кластера, и сообщает об этом клиенту.
+     *
+     * @param name Имя пользователя.
+     */
+    private void rejectUsername(String name) {
+        if (connectedClients.remove(this)) {
+            username = null;
         }
+        sendNameTaken(name);
+    }
 
-        // Уведомляем других о подключении
-        broadcastMessage(username + " подключился!");
-        updateClientCount();
-        printConnectedClients();
+    /**
+     * Сообщает клиенту, что имя занято, кадром {@link Opcode#NAME_TAKEN}
+     * (строковые клиенты получают его как обычную ошибку {@code /error}).
+     *
+     * @param name Имя пользователя.
+     */
+    private void sendNameTaken(String name) {
+        sendMessage(OutboundMessage.of(Frame.of(Opcode.NAME_TAKEN, "Имя пользователя '" + name + "' уже занято!")));
     }
 
     /**
-     * Обрабатывает подключение суперадмина.
+     * Добавляет клиента в комнату и уведомляет её участников о входе.
+     * Кадр {@link Opcode#ROOM} (и пропущенные сообщения при восстановлении сессии) ставит в очередь сама комната.
+     *
+     * @param name Имя комнаты.
+     * @param after Номер последнего сообщения комнаты, полученного клиентом до разрыва, или {@code NO_RESUME}.
      */
-    private void handleSuperAdminConnection() {
-        if (superAdminConnected) {
-            outputWriter.println("/error Администратор уже подключен");
+    private void enterRoom(String name, long after) {
+        Room target = rooms.join(this, name, after);
+        if (target == null) {
+            // Прежнее соединение с тем же именем ещё в комнате: клиент переподключится, когда оно выйдет
+            logger.warn("{} is still a member of room {} from a previous connection: disconnecting", username, name);
+            sendError("Предыдущее подключение ещё не вышло из комнаты " + name + ", подключитесь заново");
+            cleanupClientResources();
             return;
         }
-        superAdminConnected = true;
-        outputWriter.println("/role Админ1270018040");
+        room = target;
+        if (connectedClients.find(username) != this) {
+            // Клиента успели отключить до того, как он стал участником комнаты: его отключение не видело комнату
+            exitRoom(target);
+            return;
+        }
+        target.getPresence().joined(username);
+        cluster.publishJoined(target.getName(), username);
+        if (target.getMembers().find(username) != this) {
+            // Клиента отключили между входом и публикацией: его выход мог опередить вход
+            target.getPresence().left(username);
+            cluster.publishLeft(target.getName(), username, isKicked);
+        }
+
+        // Уведомляем участников комнаты о входе (в большой комнате — сводкой за окно)
+        target.getNotices().joined(username);
+        if (isPresenceSubscribed) {
+            target.getPresence().subscribe(this);
+        }
     }
 
     /**
-     * Проверяет, занято ли имя пользователя.
-     * Использование функционала StreamAPI.
+     * Удаляет клиента из комнаты и публикует его выход подписчикам присутствия и остальным узлам кластера.
+     * Повторный вызов для той же комнаты ничего не делает.
      *
-     * @param username Имя пользователя.
-     * @return true, если имя занято; иначе false.
+     * @param current Комната клиента.
+     * @return {@code true}, если клиент был участником комнаты.
      */
-    private boolean isUsernameTaken(String username) {
-        synchronized (connectedClients) {
-            return connectedClients.stream().anyMatch(client -> client.username.equalsIgnoreCase(username));
+    private boolean exitRoom(Room current) {
+        current.getPresence().unsubscribe(this);
+        if (!rooms.leave(this, current)) {
+            return false;
         }
+        current.getPresence().left(username);
+        cluster.publishLeft(current.getName(), username, isKicked);
+        return true;
     }
 
     /**
-     * Обрабатывает сообщения от клиента.
+     * Переводит клиента в другую комнату.
      *
-     * @throws IOException если возникла ошибка при чтении данных.
+     * @param name Имя комнаты.
      */
-    private void processClientMessages() throws IOException {
-        String message;
-        while ((message = inputReader.readLine()) != null) {
-            if (!isClosed) {
-                if ("exit".equalsIgnoreCase(message)) {
-                    cleanupClientResources();
-                    break;
-                } else if (message.startsWith("/kick ")) {
-                    if (SUPERADMIN_NAME.equalsIgnoreCase(username)) {
-                        handleKickCommand(message.substring(6).trim());
-                    } else {
-                        outputWriter.println("/error Команда доступна только Администратору");
-                    }
-                } else if ("/list".equalsIgnoreCase(message)) {
-                    if (!Server.isServerRunning()) {
-                        outputWriter.println("/error Сервер завершает работу, список пользователей недоступен");
-                    } else {
-                        synchronized (connectedClients) {
-                            outputWriter.println("/users " + String.join(",", getConnectedUsernames()));
-                        }
-                    }
+    private void switchRoom(String name) {
+        Room current = room;
+        if (current == null) {
+            sendError("Сначала укажите имя пользователя");
+        } else if (!RoomRegistry.isValidName(name)) {
+            sendError("Недопустимое имя комнаты: до " + RoomRegistry.MAX_NAME_LENGTH + " символов без пробелов");
+        } else if (ClientRegistry.sameUsername(current.getName(), name)) {
+            sendError("Вы уже в комнате " + current.getName());
+        } else if (exitRoom(current)) {
+            current.getNotices().left(username);
+            enterRoom(name, NO_RESUME);
+        }
+    }
+
+    /**
+     * Обрабатывает подключение суперадмина.
+     *
+     * @return Ответ, который нужно отправить клиенту.
+     */
+    private OutboundMessage handleSuperAdminConnection() {
+        if (superAdminConnected) {
+            return OutboundMessage.of(Frame.of(Opcode.ERROR, "Администратор уже подключен"));
+        }
+        superAdminConnected = true;
+        return OutboundMessage.of(Frame.role(Role.ADMIN));
+    }
+
+    /**
+     * Обрабатывает одно сообщение или команду от клиента.
+     *
+     * @param frame Кадр от клиента.
+     * @return {@code false}, если дальнейшее чтение от клиента нужно прекратить.
+     */
+    private boolean processClientMessage(Frame frame) {
+        if (isClosed) {
+            return false;
+        }
+        switch (frame.getOpcode()) {
+            case EXIT -> {
+                cleanupClientResources();
+                return false;
+            }
+            case KICK -> {
+                if (ClientRegistry.sameUsername(SUPERADMIN_NAME, username)) {
+                    handleKickCommand(frame.getText());
                 } else {
-                    if (!isClosed) {
-                        broadcastMessage(username + ": " + message, this);
-                    }
+                    sendError("Команда доступна только Администратору");
                 }
-            } else {
-                break;
             }
+            case QUEUES -> {
+                if (ClientRegistry.sameUsername(SUPERADMIN_NAME, username)) {
+                    String flushes = String.format(Locale.ROOT, " | сообщений на сброс: %.2f",
+                            FlushStats.getAverageMessagesPerFlush());
+                    sendMessage(OutboundMessage.of(Frame.of(Opcode.QUEUE_DEPTHS, describeQueueDepths() + flushes)));
+                } else {
+                    sendError("Команда доступна только Администратору");
+                }
+            }
+            case LIST -> {
+                if (!Server.isServerRunning()) {
+                    sendError("Сервер завершает работу, список пользователей недоступен");
+                } else {
+                    sendMessage(OutboundMessage.of(Frame.users(getConnectedUsernames())));
+                }
+            }
+            case PRESENCE_SUBSCRIBE -> {
+                Room current = room;
+                if (current == null) {
+                    sendError("Сначала укажите имя пользователя");
+                } else {
+                    isPresenceSubscribed = true;
+                    current.getPresence().subscribe(this);
+                }
+            }
+            case PRESENCE_UNSUBSCRIBE -> {
+                isPresenceSubscribed = false;
+                Room current = room;
+                if (current != null) {
+                    current.getPresence().unsubscribe(this);
+                }
+            }
+            case JOIN -> switchRoom(frame.getText().trim());
+            case LEAVE -> {
+                Room current = room;
+                if (current != null && rooms.isDefault(current)) {
+                    sendError("Вы уже в комнате " + current.getName());
+                } else {
+                    switchRoom(RoomRegistry.DEFAULT_ROOM);
+                }
+            }
+            case DIRECT -> {
+                try {
+                    List<String> fields = frame.getFields();
+                    sendDirectMessage(fields.get(0), fields.get(1));
+                } catch (ProtocolException e) {
+                    sendError("Неверный формат личного сообщения");
+                }
+            }
+            case CHAT -> {
+                if (username == null) {
+                    sendError("Сначала укажите имя пользователя");
+                } else {
+                    broadcastMessage(username + ": " + frame.getText(), this, null);
+                }
+            }
+            case CHAT_ID -> {
+                try {
+                    List<String> fields = frame.getFields();
+                    sendChatMessage(fields.get(0), fields.get(1));
+                } catch (ProtocolException e) {
+                    sendError("Неверный формат сообщения");
+                }
+            }
+            default -> sendError("Неизвестная команда");
+        }
+        return true;
+    }
+
+    /**
+     * Рассылает сообщение с идентификатором, назначенным клиентом, и подтверждает его отправителю.
+     * Сообщение, которое уже есть в окне повтора комнаты (клиент отправил его повторно после переподключения,
+     * не получив подтверждения), не рассылается второй раз: отправитель получает подтверждение с прежним номером.
+     *
+     * @param clientId Идентификатор сообщения.
+     * @param text Текст сообщения.
+     */
+    private void sendChatMessage(String clientId, String text) {
+        Room current = room;
+        if (username == null) {
+            sendError("Сначала укажите имя пользователя");
+            return;
+        }
+        if (current == null) {
+            return;
+        }
+        long sequence = current.findSequence(username, clientId);
+        if (sequence < 0) {
+            // Подтверждение ставит в очередь рассылка комнаты
+            broadcastMessage(username + ": " + text, this, clientId);
+            return;
+        }
+        logger.debug("Duplicate message {} from {} dropped", clientId, username);
+        sendMessage(OutboundMessage.of(Frame.fields(Opcode.CHAT_ACK, clientId, Long.toString(sequence))));
+    }
+
+    /**
+     * Обрабатывает команду /msg: отправляет личное сообщение и подтверждает отправителю доставку.
+     *
+     * @param target Имя получателя.
+     * @param text Текст сообщения.
+     */
+    private void sendDirectMessage(String target, String text) {
+        if (!isRegistered) {
+            sendError("Сначала укажите имя пользователя");
+            return;
+        }
+        if (target.isEmpty() || text.isBlank()) {
+            sendError("Формат личного сообщения: /msg <пользователь> <сообщение>");
+            return;
+        }
+        String recipient = deliverDirect(username, target, text);
+        if (recipient == null) {
+            recipient = cluster.relayDirectMessage(username, target, text);
+        }
+        if (recipient == null) {
+            sendError("Пользователь " + target + " не найден!");
+        } else {
+            sendMessage(OutboundMessage.of(Frame.fields(Opcode.PRIVATE_SENT, recipient, text)));
+        }
+    }
+
+    /**
+     * Доставляет личное сообщение пользователю этого узла.
+     *
+     * @param sender Имя отправителя.
+     * @param target Имя получателя.
+     * @param text Текст сообщения.
+     * @return Имя получателя в том виде, в каком он зарегистрирован, или {@code null}, если его нет на этом узле.
+     */
+    static String deliverDirect(String sender, String target, String text) {
+        ClientHandler recipient = connectedClients.find(target);
+        if (recipient == null || !recipient.isRegistered) {
+            return null;
         }
+        recipient.sendMessage(OutboundMessage.of(Frame.fields(Opcode.PRIVATE, sender, text)));
+        return recipient.username;
     }
 
     /**
      * Обрабатывает команду /kick для отключения пользователя.
-     * Использование функционала StreamAPI.
+     * Пользователь другого узла кластера отключается его узлом.
      *
      * @param targetUsername имя пользователя, которого нужно отключить
      */
     private void handleKickCommand(String targetUsername) {
-        if (username.equalsIgnoreCase(targetUsername)) {
-            outputWriter.println("Нельзя заблокировать самого себя!");
+        if (ClientRegistry.sameUsername(username, targetUsername)) {
+            sendMessage("Нельзя заблокировать самого себя!");
             return;
         }
 
-        synchronized (connectedClients) {
-            ClientHandler targetClient = connectedClients.stream()
-                    .filter(client -> client.username.equalsIgnoreCase(targetUsername))
-                    .findFirst()
-                    .orElse(null);
+        if (!kickLocal(targetUsername) && !cluster.kickRemote(targetUsername)) {
+            sendError("Пользователь " + targetUsername + " не найден!");
+        }
+    }
 
-            if (targetClient != null) {
-                targetClient.sendBanNotification();
-                targetClient.cleanupClientResources(false);
-                broadcastMessage("Пользователь " + targetUsername + " был отключён Администратором");
-                updateClientCount();
-                printConnectedClients();
-            } else {
-                outputWriter.println("/error Пользователь " + targetUsername + " не найден!");
-            }
+    /**
+     * Отключает пользователя этого узла по команде администратора.
+     * Сокет отключаемого клиента закрывается без удержания каких-либо общих блокировок.
+     *
+     * @param targetUsername Имя пользователя.
+     * @return {@code false}, если пользователь не подключен к этому узлу.
+     */
+    static boolean kickLocal(String targetUsername) {
+        ClientHandler targetClient = connectedClients.find(targetUsername);
+        if (targetClient == null) {
+            return false;
+        }
+        Room targetRoom = targetClient.room;
+        targetClient.isKicked = true;
+        ServerMetrics.recordKick();
+        targetClient.sendBanNotification();
+        targetClient.cleanupClientResources(false);
+        if (targetRoom != null) {
+            targetRoom.getNotices().kicked(targetClient.username);
         }
+        return true;
     }
 
     /**
      * Отправляет уведомления о бане.
      */
     private void sendBanNotification() {
-        String message = "/banned " + "Вы были отключены Администратором!";
-        outputWriter.println(message);
+        sendMessage(OutboundMessage.of(Frame.of(Opcode.BANNED, "Вы были отключены Администратором!")));
     }
 
     /**
@@ -224,74 +678,140 @@ public class ClientHandler implements Runnable {
      */
     public void cleanupClientResources(boolean notifyBroadcast) {
         if (isClosed) return;
-        if (username == null) return;
 
         try {
-            synchronized (connectedClients) {
-                connectedClients.remove(this);
-                if (SUPERADMIN_NAME.equalsIgnoreCase(username)) {
-                    superAdminConnected = false;
-                }
+            boolean wasRegistered = connectedClients.remove(this);
+            Room current = room;
+            boolean wasMember = current != null && exitRoom(current);
+            if (wasRegistered && ClientRegistry.sameUsername(SUPERADMIN_NAME, username)) {
+                superAdminConnected = false;
             }
-            if (notifyBroadcast) {
-                updateClientCount();
-                broadcastMessage(username + " отключился!");
-                printConnectedClients();
+            if (notifyBroadcast && wasMember) {
+                current.getNotices().left(username);
             }
             isClosed = true;
         } catch (Exception e) {
-            System.err.println("Error while cleaning client: " + e.getMessage());
+            logger.error("Error while cleaning client: {}", e.getMessage());
         } finally {
             try {
-                if (inputReader != null) {
-                    inputReader.close();
-                }
-                if (outputWriter != null) {
-                    outputWriter.close();
-                }
-                if (clientSocket != null && !clientSocket.isClosed()) {
-                    clientSocket.close();
+                // Сокетом владеет транспорт: он закроет его после отправки очереди, что также
+                // прервёт блокирующее чтение в потоке клиента
+                if (transport != null) {
+                    transport.close();
                 }
             } catch (IOException e) {
                 if (!"Socket closed".equals(e.getMessage())) {
-                    System.err.println("Error closing connection: " + e.getMessage());
+                    logger.error("Error closing connection: {}", e.getMessage());
                 }
             }
         }
     }
 
     /**
-     * Получение списка всех подключенных клиентов.
+     * Получение снимка всех подключенных клиентов.
      *
-     * @return Список всех подключенных клиентов.
+     * @return Неизменяемый список подключенных клиентов на момент вызова.
      */
     public static List<ClientHandler> getConnectedClients() {
-        return connectedClients;
+        return connectedClients.asList();
     }
 
     /**
-     * Отправка сообщения всем клиентам.
+     * Поиск клиента этого узла по имени пользователя.
+     *
+     * @param username Имя пользователя.
+     * @return Клиент или {@code null}.
+     */
+    static ClientHandler findClient(String username) {
+        return connectedClients.find(username);
+    }
+
+    /**
+     * Возвращает реестр комнат.
+     *
+     * @return Реестр комнат.
+     */
+    static RoomRegistry getRooms() {
+        return rooms;
+    }
+
+    /**
+     * Возвращает идентификатор узла, номера сообщений которого получают клиенты.
+     *
+     * @return Идентификатор узла кластера.
+     */
+    static String getNodeId() {
+        return cluster.getNodeId();
+    }
+
+    /**
+     * Подключает обработчики клиентов к узлу кластера.
+     *
+     * @param node Узел кластера.
+     */
+    static void setCluster(ClusterNode node) {
+        cluster = node;
+    }
+
+    /**
+     * Подключает обработчики клиентов к журналу сообщений.
+     *
+     * @param messageJournal Журнал сообщений.
+     */
+    static void setJournal(MessageJournal messageJournal) {
+        journal = messageJournal;
+    }
+
+    /**
+     * Сохраняет сообщение комнаты в журнал и рассылает его участникам комнаты на этом узле.
+     *
+     * @param room Комната.
+     * @param message Текст сообщения.
+     * @param sender Отправитель на этом узле, которому не нужно отправлять сообщение, или {@code null}.
+     * @param clientId Идентификатор, назначенный отправителем, или {@code null}.
+     */
+    static void deliverToRoom(Room room, String message, ClientHandler sender, String clientId) {
+        journal.append(room.getName(), message);
+        room.deliver(message, sender == null ? null : sender.username, clientId, sender);
+    }
+
+    /**
+     * Проверяет, занято ли имя клиента во всём кластере.
+     *
+     * @return {@code true}, если регистрация имени завершена.
+     */
+    boolean isRegistered() {
+        return isRegistered;
+    }
+
+    /**
+     * Отправка сообщения всем участникам комнаты клиента.
      *
      * @param message Сообщение для отправки.
      */
     public void broadcastMessage(String message) {
         if (!isClosed) {
-            broadcastMessage(message, null);
+            broadcastMessage(message, null, null);
         }
     }
 
     /**
-     * Отправка сообщения всем клиентам, кроме указанного.
-     * Использование функционала StreamAPI.
+     * Отправка сообщения всем участникам комнаты клиента, кроме указанного.
+     * Сообщение получает номер под короткой блокировкой комнаты и рассылается в порядке номеров
+     * ({@link Room#deliver(String, String, String, ClientHandler)}), поэтому все участники получают сообщения
+     * в одном порядке. Сообщение кодируется один раз для каждого протокола, и все получатели ставят в очередь
+     * одни и те же байты.
+     * Участникам на других узлах кластера сообщение доставляют их узлы.
      *
      * @param message Сообщение для отправки.
-     * @param excludedClient Клиент, которому не нужно отправлять сообщение.
+     * @param sender Клиент, которому не нужно отправлять сообщение, или {@code null}.
+     * @param clientId Идентификатор, назначенный отправителем, или {@code null}.
      */
-    private void broadcastMessage(String message, ClientHandler excludedClient) {
-        synchronized (connectedClients) {
-            connectedClients.stream()
-                    .filter(client -> client != excludedClient && !client.isClosed )
-                    .forEach(client -> client.outputWriter.println(message));
+    private void broadcastMessage(String message, ClientHandler sender, String clientId) {
+        Room current = room;
+        if (current != null) {
+            deliverToRoom(current, message, sender, clientId);
+            cluster.relayRoomMessage(current.getName(), message);
         }
     }
 
@@ -301,41 +821,90 @@ public class ClientHandler implements Runnable {
      * @param message Сообщение для отправки.
      */
     public void sendMessage(String message) {
-        if (clientSocket.isClosed() || outputWriter == null) {
-            return; // Поток закрыт
+        sendMessage(OutboundMessage.of(message));
+    }
+
+    /**
+     * Отправка сообщения об ошибке текущему клиенту.
+     *
+     * @param message Текст ошибки.
+     */
+    private void sendError(String message) {
+        sendMessage(OutboundMessage.of(Frame.of(Opcode.ERROR, message)));
+    }
+
+    /**
+     * Отправка уже закодированного сообщения текущему клиенту.
+     *
+     * @param message Закодированное сообщение.
+     */
+    public void sendMessage(OutboundMessage message) {
+        if (!offerMessage(message)) {
+            disconnectSlowConsumer();
         }
-        outputWriter.println(message);
     }
 
     /**
-     * Обновление информации о количестве пользователей на сервере.
+     * Ставит сообщение в очередь клиента, не отключая его при переполнении.
+     * Используется там, где отключение нужно выполнить позже, вне удерживаемой блокировки.
+     *
+     * @param message Закодированное сообщение.
+     * @return {@code false}, если очередь переполнена и клиента нужно отключить
+     * методом {@link #disconnectSlowConsumer()}.
+     */
+    boolean offerMessage(OutboundMessage message) {
+        if (transport == null || transport.isClosed()) {
+            return true; // Поток закрыт
+        }
+        return transport.send(message);
+    }
+
+    /**
+     * Возвращает глубину очереди исходящих сообщений клиента.
+     *
+     * @return Число сообщений, ожидающих отправки.
      */
-    private void updateClientCount() {
-        String userCountMessage = "Количество пользователей на сервере: " + connectedClients.size();
-        broadcastMessage(userCountMessage);
-        System.out.println(userCountMessage);
+    public int getOutboundQueueDepth() {
+        return transport == null ? 0 : transport.getOutboundQueue().depth();
     }
 
     /**
-     * Печать списка подключенных пользователей в консоль.
+     * Отключает клиента, очередь которого переполнилась (политика {@code DISCONNECT}).
+     * Очередь заменяется уведомлением {@code /error}; если клиент не примет его за отведённое время,
+     * соединение разрывается принудительно.
      */
-    private void printConnectedClients() {
-        synchronized (connectedClients) {
-            System.out.println("List of connected users: " + String.join(", ", getConnectedUsernames()));
+    void disconnectSlowConsumer() {
+        if (!isEvicted.compareAndSet(false, true)) {
+            return;
         }
+        logger.warn("Client {} is not reading, outbound queue is full: disconnecting", username);
+        transport.getOutboundQueue().replaceAllWith(OutboundMessage.of(Frame.of(Opcode.ERROR, "Разрыв соединения!")));
+        cleanupClientResources();
+        clientTimer.schedule(transport::abort, EVICTION_TIMEOUT_SECONDS, TimeUnit.SECONDS);
     }
 
     /**
-     * Получение списка имен всех подключенных пользователей.
+     * Формирует описание глубины исходящих очередей всех клиентов, начиная с самых отстающих.
      * Использование функционала StreamAPI.
      *
+     * @return Строка вида {@code имя=глубина/отброшено,...}.
+     */
+    private String describeQueueDepths() {
+        return Arrays.stream(connectedClients.snapshot())
+                .filter(client -> client.transport != null)
+                .sorted((a, b) -> Integer.compare(b.getOutboundQueueDepth(), a.getOutboundQueueDepth()))
+                .map(client -> client.username + "=" + client.getOutboundQueueDepth()
+                        + "/" + client.transport.getOutboundQueue().getDroppedCount())
+                .collect(Collectors.joining(","));
+    }
+
+    /**
+     * Получение списка имен пользователей в комнате клиента.
+     *
      * @return Список имен пользователей.
      */
     private List<String> getConnectedUsernames() {
-        synchronized (connectedClients) {
-            return connectedClients.stream()
-                    .map(client -> client.username)
-                    .toList();
-        }
+        Room current = room;
+        return current == null ? List.of() : current.usernames();
     }
 }
\ No newline at end of file
@@ -0,0 +1,163 @@
+package org.serverchat;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Реестр подключенных клиентов без глобальной блокировки.
+ * <p>
+ * Клиенты хранятся в неизменяемом массиве, который заменяется целиком при каждом подключении или отключении
+ * (копирование при записи через {@code compareAndSet}). Рассылка работает по снимку массива,
+ * поэтому обход никогда не блокирует регистрацию, а запись в сокеты не выполняется под общей блокировкой.
+ * </p>
+ * <p>
+ * Для поиска по имени используется индекс {@code usernameIndex}: ключ — имя, приведённое функцией
+ * {@link #normalize(String)}. Регистрация выполняется атомарной операцией {@code putIfAbsent},
+ * поэтому проверка имени и добавление клиента не требуют обхода списка.
+ * </p>
+ *
+ * <p>Переменные класса:</p>
+ * <ul>
+ *   <li>{@code clients} — Текущий снимок подключенных клиентов.</li>
+ *   <li>{@code usernameIndex} — Индекс «нормализованное имя → клиент».</li>
+ * </ul>
+ */
+public class ClientRegistry {
+
+    private static final ClientHandler[] EMPTY = new ClientHandler[0];
+
+    private final AtomicReference<ClientHandler[]> clients = new AtomicReference<>(EMPTY);
+    private final ConcurrentMap<String, ClientHandler> usernameIndex = new ConcurrentHashMap<>();
+
+    /**
+     * Приводит имя пользователя к ключу для сравнения без учёта регистра.
+     * <p>
+     * Имя нормализуется в форму NFC (чтобы «й», набранная как «и» + бреве, совпадала с готовой буквой),
+     * затем переводится в верхний и нижний регистр с {@link Locale#ROOT}. Результат не зависит от локали
+     * JVM (например, турецкой) и одинаково работает для латиницы и кириллицы.
+     * </p>
+     *
+     * @param username Имя пользователя.
+     * @return Ключ для индекса имён.
+     */
+    public static String normalize(String username) {
+        String composed = Normalizer.normalize(username, Normalizer.Form.NFC);
+        return composed.toUpperCase(Locale.ROOT).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Проверяет, совпадают ли имена пользователей без учёта регистра.
+     *
+     * @param first Первое имя.
+     * @param second Второе имя.
+     * @return {@code true}, если имена совпадают после нормализации.
+     */
+    public static boolean sameUsername(String first, String second) {
+        return first != null && second != null && normalize(first).equals(normalize(second));
+    }
+
+    /**
+     * Атомарно добавляет клиента, если его имя ещё не занято (без учёта регистра).
+     *
+     * @param client Клиент с заполненным именем пользователя.
+     * @return {@code true}, если клиент добавлен; {@code false}, если имя уже занято.
+     */
+    public boolean register(ClientHandler client) {
+        if (usernameIndex.putIfAbsent(normalize(client.username), client) != null) {
+            return false;
+        }
+        while (true) {
+            ClientHandler[] current = clients.get();
+            ClientHandler[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = client;
+            if (clients.compareAndSet(current, updated)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Удаляет клиента из реестра.
+     *
+     * @param client Клиент для удаления.
+     * @return {@code true}, если клиент был в реестре.
+     */
+    public boolean remove(ClientHandler client) {
+        if (client.username != null) {
+            usernameIndex.remove(normalize(client.username), client);
+        }
+        while (true) {
+            ClientHandler[] current = clients.get();
+            int index = -1;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] == client) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index < 0) {
+                return false;
+            }
+            ClientHandler[] updated = new ClientHandler[current.length - 1];
+            System.arraycopy(current, 0, updated, 0, index);
+            System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+            if (clients.compareAndSet(current, updated)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Ищет клиента по имени пользователя без учёта регистра.
+     *
+     * @param username Имя пользователя.
+     * @return Найденный клиент или {@code null}.
+     */
+    public ClientHandler find(String username) {
+        return usernameIndex.get(normalize(username));
+    }
+
+    /**
+     * Возвращает текущий снимок клиентов. Массив нельзя изменять.
+     *
+     * @return Снимок подключенных клиентов.
+     */
+    public ClientHandler[] snapshot() {
+        return clients.get();
+    }
+
+    /**
+     * Возвращает снимок клиентов в виде неизменяемого списка.
+     *
+     * @return Список подключенных клиентов.
+     */
+    public List<ClientHandler> asList() {
+        return List.of(clients.get());
+    }
+
+    /**
+     * Возвращает число подключенных клиентов.
+     *
+     * @return Количество клиентов.
+     */
+    public int size() {
+        return clients.get().length;
+    }
+
+    /**
+     * Возвращает имена всех подключенных пользователей.
+     * Использование функционала StreamAPI.
+     *
+     * @return Список имён пользователей.
+     */
+    public List<String> usernames() {
+        return Arrays.stream(clients.get())
+                .map(client -> client.username)
+                .toList();
+    }
+}
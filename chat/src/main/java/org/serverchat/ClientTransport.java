@@ -0,0 +1,69 @@
+package org.serverchat;
+
+import java.io.IOException;
+
+/**
+ * Транспорт, через который {@link ClientHandler} отправляет данные клиенту.
+ * Позволяет использовать одну и ту же логику обработки клиента
+ * как с блокирующими SSL-сокетами, так и с неблокирующими каналами на {@code SSLEngine}.
+ */
+public interface ClientTransport {
+
+    /**
+     * Ставит сообщение в очередь исходящих сообщений клиента. Метод не блокируется на записи в сокет.
+     *
+     * @param message Закодированное сообщение (может быть общим для всех получателей рассылки).
+     * @return {@code false}, если очередь переполнена и по политике клиента нужно отключить.
+     */
+    boolean send(OutboundMessage message);
+
+    /**
+     * Возвращает очередь исходящих сообщений клиента.
+     *
+     * @return Очередь исходящих сообщений.
+     */
+    OutboundQueue getOutboundQueue();
+
+    /**
+     * Устанавливает формат, в котором сообщения кодируются для клиента.
+     * Вызывается при согласовании протокола, до отправки клиенту каких-либо сообщений.
+     *
+     * @param wireFormat Формат клиента.
+     */
+    void setWireFormat(WireFormat wireFormat);
+
+    /**
+     * Возвращает формат, в котором сообщения кодируются для клиента.
+     *
+     * @return Формат клиента (по умолчанию {@link WireFormat#LINE}).
+     */
+    WireFormat getWireFormat();
+
+    /**
+     * Проверяет, закрыт ли транспорт.
+     *
+     * @return {@code true}, если соединение закрыто.
+     */
+    boolean isClosed();
+
+    /**
+     * Возвращает адрес удалённой стороны для вывода в консоль.
+     *
+     * @return Адрес клиента.
+     */
+    String getRemoteAddress();
+
+    /**
+     * Закрывает соединение с клиентом после отправки уже поставленных в очередь сообщений.
+     * Повторный вызов ничего не делает.
+     *
+     * @throws IOException При ошибке закрытия соединения.
+     */
+    void close() throws IOException;
+
+    /**
+     * Немедленно разрывает соединение, не дожидаясь отправки очереди.
+     * Используется, если клиент не принимает данные и мягкое закрытие не завершилось.
+     */
+    void abort();
+}
@@ -0,0 +1,601 @@
+package org.serverchat;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.protocolchat.Frame;
+import org.protocolchat.Opcode;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Узел кластера серверов чата.
+ * <p>
+ * Узлы соединяются каждый с каждым по TLS со взаимной проверкой сертификата ({@link PeerLink}) и обмениваются
+ * событиями: вход и выход пользователей из комнат, сообщения комнат и команды администратора. Каждый узел хранит
+ * участников комнат с других узлов в своих {@link Room}, поэтому количество и список пользователей комнаты,
+ * подписка на присутствие и уведомления одинаковы на всех узлах, а сообщение комнаты передаётся каждому узлу
+ * один раз и рассылается им только своим клиентам.
+ * </p>
+ * <p>
+ * Имя пользователя занимается запросом {@link Opcode#PEER_CLAIM} ко всем узлам. Узел отказывает, если имя занято
+ * у него или обещано другому узлу; при встречных запросах выигрывает узел с меньшим идентификатором. Согласившийся
+ * узел резервирует имя за запросившим, пока тот не сообщит о входе пользователя. Недоступный узел не блокирует
+ * регистрацию: если он не ответил за {@value #CLAIM_TIMEOUT_MILLIS} мс, его ответ считается согласием.
+ * </p>
+ * <p>
+ * Кластер включается свойством {@value #PORT_PROPERTY} (порт для соединений между узлами); адреса остальных узлов
+ * задаются свойством {@value #PEERS_PROPERTY} ({@code host:port,host:port}), идентификатор узла — свойством
+ * {@value #NODE_ID_PROPERTY} (по умолчанию {@code host:port}). Без этих свойств сервер работает один,
+ * и все операции узла выполняются сразу.
+ * </p>
+ *
+ * <p>Переменные класса:</p>
+ * <ul>
+ *   <li>{@code PORT_PROPERTY} — Системное свойство для порта соединений между узлами.</li>
+ *   <li>{@code PEERS_PROPERTY} — Системное свойство для адресов остальных узлов.</li>
+ *   <li>{@code NODE_ID_PROPERTY} — Системное свойство для идентификатора узла.</li>
+ *   <li>{@code CLAIM_TIMEOUT_MILLIS} — Время ожидания ответов на запрос имени.</li>
+ *   <li>{@code RESERVATION_MILLIS} — Время, на которое имя резервируется за запросившим узлом.</li>
+ *   <li>{@code RECONNECT_DELAY_MILLIS} — Пауза перед повторным подключением к узлу.</li>
+ *   <li>{@code nodeId} — Идентификатор этого узла.</li>
+ *   <li>{@code sslContext} — SSL-контекст соединений между узлами ({@code null}, если кластер выключен).</li>
+ *   <li>{@code listenAddress} — Адрес для входящих соединений от узлов.</li>
+ *   <li>{@code peers} — Адреса узлов, к которым этот узел подключается сам.</li>
+ *   <li>{@code links} — Активные соединения по идентификатору узла.</li>
+ *   <li>{@code remoteUsers} — Пользователи других узлов по нормализованному имени.</li>
+ *   <li>{@code localUsers} — Пользователи этого узла по нормализованному имени (для передачи новым узлам).</li>
+ *   <li>{@code reservations} — Имена, обещанные другим узлам.</li>
+ *   <li>{@code claims} — Незавершённые запросы имён этого узла.</li>
+ *   <li>{@code claimCounter} — Счётчик номеров запросов имён.</li>
+ *   <li>{@code lock} — Блокировка, упорядочивающая события этого узла, передачу списка пользователей и выдачу имён.</li>
+ *   <li>{@code serverSocket} — Серверный сокет для соединений от узлов.</li>
+ *   <li>{@code isRunning} — Флаг работы узла.</li>
+ *   <li>{@code logger} — Логгер для записи действий и ошибок.</li>
+ * </ul>
+ */
+public class ClusterNode {
+
+    private static final Logger logger = LogManager.getLogger(ClusterNode.class);
+
+    public static final String PORT_PROPERTY = "chat.cluster.port";
+    public static final String PEERS_PROPERTY = "chat.cluster.peers";
+    public static final String NODE_ID_PROPERTY = "chat.cluster.nodeId";
+    private static final long CLAIM_TIMEOUT_MILLIS = 2000;
+    private static final long RESERVATION_MILLIS = 2 * CLAIM_TIMEOUT_MILLIS;
+    private static final long RECONNECT_DELAY_MILLIS = 1000;
+
+    private final String nodeId;
+    private final SSLContext sslContext;
+    private final InetSocketAddress listenAddress;
+    private final List<InetSocketAddress> peers;
+    private final ConcurrentMap<String, PeerLink> links = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Membership> remoteUsers = new ConcurrentHashMap<>();
+    private final Map<String, Membership> localUsers = new HashMap<>();
+    private final Map<String, Reservation> reservations = new HashMap<>();
+    private final ConcurrentMap<String, Claim> claims = new ConcurrentHashMap<>();
+    private final AtomicLong claimCounter = new AtomicLong();
+    private final Object lock = new Object();
+    private SSLServerSocket serverSocket;
+    private volatile boolean isRunning = false;
+
+    /**
+     * Создаёт узел.
+     *
+     * @param nodeId Идентификатор узла, уникальный в кластере.
+     * @param sslContext SSL-контекст соединений между узлами или {@code null}, если кластер выключен.
+     * @param listenAddress Адрес для входящих соединений от узлов.
+     * @param peers Адреса узлов, к которым нужно подключиться.
+     */
+    public ClusterNode(String nodeId, SSLContext sslContext, InetSocketAddress listenAddress,
+                       List<InetSocketAddress> peers) {
+        this.nodeId = nodeId;
+        this.sslContext = sslContext;
+        this.listenAddress = listenAddress;
+        this.peers = List.copyOf(peers);
+    }
+
+    /**
+     * Создаёт узел, который работает без кластера.
+     *
+     * @return Узел без соединений.
+     */
+    public static ClusterNode standalone() {
+        return new ClusterNode("standalone", null, null, List.of());
+    }
+
+    /**
+     * Создаёт узел по системным свойствам {@value #PORT_PROPERTY}, {@value #PEERS_PROPERTY}
+     * и {@value #NODE_ID_PROPERTY}.
+     *
+     * @param host Адрес, на котором узел принимает соединения.
+     * @param sslContext SSL-контекст соединений между узлами.
+     * @return Узел кластера или узел без кластера, если порт не задан.
+     */
+    public static ClusterNode fromSystemProperties(String host, SSLContext sslContext) {
+        Integer port = Integer.getInteger(PORT_PROPERTY);
+        if (port == null) {
+            return standalone();
+        }
+        List<InetSocketAddress> peers = new ArrayList<>();
+        for (String peer : System.getProperty(PEERS_PROPERTY, "").split(",")) {
+            String address = peer.trim();
+            int separator = address.lastIndexOf(':');
+            if (separator > 0) {
+                peers.add(InetSocketAddress.createUnresolved(address.substring(0, separator),
+                        Integer.parseInt(address.substring(separator + 1))));
+            } else if (!address.isEmpty()) {
+                throw new IllegalArgumentException("Invalid cluster peer address: " + address);
+            }
+        }
+        String nodeId = System.getProperty(NODE_ID_PROPERTY, host + ":" + port);
+        return new ClusterNode(nodeId, sslContext, new InetSocketAddress(host, port), peers);
+    }
+
+    /**
+     * Проверяет, включён ли кластер.
+     *
+     * @return {@code true}, если узел соединяется с другими узлами.
+     */
+    public boolean isEnabled() {
+        return sslContext != null;
+    }
+
+    /**
+     * Возвращает идентификатор узла.
+     *
+     * @return Идентификатор узла.
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Открывает порт для соединений от узлов и запускает подключение к остальным узлам.
+     *
+     * @throws IOException если не удалось открыть порт.
+     */
+    public void start() throws IOException {
+        if (!isEnabled()) {
+            return;
+        }
+        serverSocket = (SSLServerSocket) sslContext.getServerSocketFactory()
+                .createServerSocket(listenAddress.getPort(), 50, listenAddress.getAddress());
+        serverSocket.setNeedClientAuth(true);
+        isRunning = true;
+        Thread.ofPlatform().daemon().name("cluster-acceptor").start(this::acceptLoop);
+        for (InetSocketAddress peer : peers) {
+            Thread.ofPlatform().daemon().name("cluster-dialer-" + peer).start(() -> dialLoop(peer));
+        }
+        logger.info("Cluster node {} is listening on port {}, peers: {}",
+                nodeId, listenAddress.getPort(), System.getProperty(PEERS_PROPERTY, ""));
+    }
+
+    /**
+     * Останавливает узел и закрывает соединения с остальными узлами.
+     */
+    public void stop() {
+        isRunning = false;
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            logger.error("Error closing cluster socket: {}", e.getMessage());
+        }
+        links.values().forEach(PeerLink::close);
+    }
+
+    /**
+     * Принимает соединения от других узлов.
+     */
+    private void acceptLoop() {
+        while (isRunning) {
+            try {
+                SSLSocket socket = (SSLSocket) serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Thread.ofPlatform().daemon().name("cluster-link").start(() -> new PeerLink(this, socket, false).serve());
+            } catch (IOException e) {
+                if (isRunning) {
+                    logger.error("Error accepting cluster link: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Поддерживает соединение с узлом: подключается и переподключается после разрыва.
+     * Пока с узлом есть другое соединение (установленное им самим), новое не открывается.
+     * Адрес, по которому ответил этот же узел, больше не используется.
+     *
+     * @param peer Адрес узла.
+     */
+    private void dialLoop(InetSocketAddress peer) {
+        String peerId = null;
+        while (isRunning) {
+            if (peerId == null || !links.containsKey(peerId)) {
+                try (SSLSocket socket = (SSLSocket) sslContext.getSocketFactory()
+                        .createSocket(peer.getHostString(), peer.getPort())) {
+                    socket.setTcpNoDelay(true);
+                    PeerLink link = new PeerLink(this, socket, true);
+                    link.serve();
+                    peerId = link.getRemoteId();
+                } catch (IOException e) {
+                    // Узел ещё не запущен или недоступен: повторим позже
+                }
+                if (nodeId.equals(peerId)) {
+                    // Адрес этого же узла: общий список узлов можно передавать всем узлам без изменений
+                    return;
+                }
+            }
+            try {
+                Thread.sleep(RECONNECT_DELAY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Регистрирует соединение после приветствия и передаёт узлу список пользователей этого узла.
+     * Из двух встречных соединений между парой узлов обе стороны оставляют то, которое установил узел
+     * с меньшим идентификатором; повторное соединение от того же узла заменяет старое.
+     *
+     * @param link Соединение.
+     * @return {@code false}, если соединение лишнее и его нужно закрыть.
+     */
+    boolean onLinkUp(PeerLink link) {
+        String remoteId = link.getRemoteId();
+        if (nodeId.equals(remoteId)) {
+            logger.warn("Cluster link rejected: node {} has the same id as this node", remoteId);
+            return false;
+        }
+        synchronized (lock) {
+            PeerLink existing = links.get(remoteId);
+            if (existing != null && existing.getDialerId().compareTo(link.getDialerId()) < 0) {
+                return false;
+            }
+            links.put(remoteId, link);
+            if (existing != null) {
+                existing.close();
+            }
+            for (Membership membership : localUsers.values()) {
+                link.send(Frame.fields(Opcode.PEER_JOINED, membership.room(), membership.username()));
+            }
+        }
+        logger.info("Cluster link to {} is up", remoteId);
+        return true;
+    }
+
+    /**
+     * Обрабатывает разрыв соединения: пользователи узла удаляются из комнат, а его ответы на запросы имён
+     * считаются согласием.
+     *
+     * @param link Закрытое соединение.
+     */
+    void onLinkDown(PeerLink link) {
+        String remoteId = link.getRemoteId();
+        if (remoteId == null || !links.remove(remoteId, link)) {
+            return;
+        }
+        logger.info("Cluster link to {} is down", remoteId);
+        for (Membership membership : remoteUsers.values()) {
+            if (membership.nodeId().equals(remoteId)
+                    && remoteUsers.remove(ClientRegistry.normalize(membership.username()), membership)) {
+                applyRemoteLeave(membership, false);
+            }
+        }
+        claims.forEach((requestId, claim) -> claim.granted(remoteId));
+    }
+
+    /**
+     * Обрабатывает кадр от другого узла.
+     *
+     * @param link Соединение, по которому пришёл кадр.
+     * @param frame Кадр.
+     * @throws ProtocolException если узел прислал кадр, который не передаётся между узлами.
+     */
+    void onFrame(PeerLink link, Frame frame) throws ProtocolException {
+        String remoteId = link.getRemoteId();
+        List<String> fields = frame.getFields();
+        switch (frame.getOpcode()) {
+            case PEER_JOINED -> applyRemoteJoin(new Membership(remoteId, fields.get(1), fields.get(0)));
+            case PEER_LEFT, PEER_KICKED -> {
+                Membership membership = new Membership(remoteId, fields.get(1), fields.get(0));
+                if (remoteUsers.remove(ClientRegistry.normalize(membership.username()), membership)) {
+                    applyRemoteLeave(membership, frame.getOpcode() == Opcode.PEER_KICKED);
+                }
+            }
+            case PEER_ROOM_MESSAGE -> {
+                Room room = ClientHandler.getRooms().find(fields.get(0));
+                if (room != null) {
+                    ClientHandler.deliverToRoom(room, fields.get(1), null, null);
+                }
+            }
+            case PEER_CLAIM -> link.send(Frame.fields(Opcode.PEER_CLAIM_RESULT, fields.get(0),
+                    canGrant(remoteId, fields.get(1)) ? "1" : "0"));
+            case PEER_CLAIM_RESULT -> {
+                Claim claim = claims.get(fields.get(0));
+                if (claim != null && "1".equals(fields.get(1))) {
+                    claim.granted(remoteId);
+                } else if (claim != null) {
+                    claim.result.complete(false);
+                }
+            }
+            case PEER_KICK -> ClientHandler.kickLocal(fields.get(0));
+            case PEER_DIRECT -> ClientHandler.deliverDirect(fields.get(0), fields.get(1), fields.get(2));
+            default -> throw new ProtocolException("Unexpected cluster frame: " + frame.getOpcode());
+        }
+    }
+
+    /**
+     * Добавляет пользователя другого узла в комнату и уведомляет участников комнаты на этом узле.
+     * Повтор уже известного входа (при передаче списка после переподключения) пропускается.
+     *
+     * @param membership Пользователь, его узел и комната.
+     */
+    private void applyRemoteJoin(Membership membership) {
+        String key = ClientRegistry.normalize(membership.username());
+        Membership previous = remoteUsers.put(key, membership);
+        if (membership.equals(previous)) {
+            return;
+        }
+        synchronized (lock) {
+            reservations.remove(key);
+        }
+        if (previous != null) {
+            applyRemoteLeave(previous, false);
+        }
+        Room room = ClientHandler.getRooms().joinRemote(membership.username(), membership.room());
+        room.getPresence().joined(membership.username());
+        room.getNotices().joined(membership.username());
+    }
+
+    /**
+     * Удаляет пользователя другого узла из комнаты и уведомляет участников комнаты на этом узле.
+     *
+     * @param membership Пользователь, его узел и комната.
+     * @param isKicked {@code true}, если пользователя отключил администратор.
+     */
+    private void applyRemoteLeave(Membership membership, boolean isKicked) {
+        Room room = ClientHandler.getRooms().leaveRemote(membership.username(), membership.room());
+        if (room == null) {
+            return;
+        }
+        room.getPresence().left(membership.username());
+        if (isKicked) {
+            room.getNotices().kicked(membership.username());
+        } else {
+            room.getNotices().left(membership.username());
+        }
+    }
+
+    /**
+     * Решает, можно ли отдать имя другому узлу, и резервирует его за этим узлом.
+     *
+     * @param requester Идентификатор запросившего узла.
+     * @param username Имя пользователя.
+     * @return {@code true}, если имя свободно.
+     */
+    private boolean canGrant(String requester, String username) {
+        String key = ClientRegistry.normalize(username);
+        synchronized (lock) {
+            Membership owner = remoteUsers.get(key);
+            if (owner != null && !owner.nodeId().equals(requester)) {
+                return false;
+            }
+            Reservation reservation = activeReservation(key);
+            if (reservation != null && !reservation.nodeId().equals(requester)) {
+                return false;
+            }
+            ClientHandler local = ClientHandler.findClient(username);
+            // Имя уже у клиента этого узла или он ждёт ответа на встречный запрос с большим приоритетом
+            if (local != null && (local.isRegistered() || nodeId.compareTo(requester) < 0)) {
+                return false;
+            }
+            reservations.put(key, new Reservation(requester, System.nanoTime()
+                    + TimeUnit.MILLISECONDS.toNanos(RESERVATION_MILLIS)));
+            return true;
+        }
+    }
+
+    /**
+     * Возвращает действующую резервацию имени, удаляя просроченную.
+     * Вызывается под блокировкой {@code lock}.
+     *
+     * @param key Нормализованное имя.
+     * @return Резервация или {@code null}.
+     */
+    private Reservation activeReservation(String key) {
+        Reservation reservation = reservations.get(key);
+        if (reservation != null && reservation.expiresAt() - System.nanoTime() <= 0) {
+            reservations.remove(key);
+            return null;
+        }
+        return reservation;
+    }
+
+    /**
+     * Проверяет, занято ли имя пользователем другого узла или обещано другому узлу.
+     *
+     * @param username Имя пользователя.
+     * @return {@code true}, если имя занято в кластере.
+     */
+    public boolean isTakenRemotely(String username) {
+        if (!isEnabled()) {
+            return false;
+        }
+        String key = ClientRegistry.normalize(username);
+        synchronized (lock) {
+            return remoteUsers.containsKey(key) || activeReservation(key) != null;
+        }
+    }
+
+    /**
+     * Запрашивает имя у всех узлов, с которыми есть соединение.
+     *
+     * @param username Имя пользователя, уже добавленное в реестр этого узла.
+     * @return Результат: {@code true}, если ни один узел не отказал.
+     */
+    public CompletableFuture<Boolean> claim(String username) {
+        if (links.isEmpty()) {
+            return CompletableFuture.completedFuture(true);
+        }
+        String requestId = nodeId + "#" + claimCounter.incrementAndGet();
+        Claim claim = new Claim(ConcurrentHashMap.newKeySet());
+        claim.awaiting.addAll(links.keySet());
+        claims.put(requestId, claim);
+        links.values().forEach(link -> link.send(Frame.fields(Opcode.PEER_CLAIM, requestId, username)));
+        return claim.result
+                .completeOnTimeout(true, CLAIM_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+                .whenComplete((isGranted, error) -> claims.remove(requestId));
+    }
+
+    /**
+     * Сообщает остальным узлам о входе пользователя этого узла в комнату.
+     *
+     * @param room Имя комнаты.
+     * @param username Имя пользователя.
+     */
+    public void publishJoined(String room, String username) {
+        if (!isEnabled()) {
+            return;
+        }
+        synchronized (lock) {
+            localUsers.put(ClientRegistry.normalize(username), new Membership(nodeId, username, room));
+            sendAll(Frame.fields(Opcode.PEER_JOINED, room, username));
+        }
+    }
+
+    /**
+     * Сообщает остальным узлам о выходе пользователя этого узла из комнаты.
+     *
+     * @param room Имя комнаты.
+     * @param username Имя пользователя.
+     * @param isKicked {@code true}, если пользователя отключил администратор.
+     */
+    public void publishLeft(String room, String username, boolean isKicked) {
+        if (!isEnabled()) {
+            return;
+        }
+        synchronized (lock) {
+            localUsers.remove(ClientRegistry.normalize(username), new Membership(nodeId, username, room));
+            sendAll(Frame.fields(isKicked ? Opcode.PEER_KICKED : Opcode.PEER_LEFT, room, username));
+        }
+    }
+
+    /**
+     * Передаёт сообщение комнаты остальным узлам для их участников комнаты.
+     *
+     * @param room Имя комнаты.
+     * @param text Текст сообщения.
+     */
+    public void relayRoomMessage(String room, String text) {
+        if (!links.isEmpty()) {
+            sendAll(Frame.fields(Opcode.PEER_ROOM_MESSAGE, room, text));
+        }
+    }
+
+    /**
+     * Передаёт команду отключения пользователя узлу, к которому он подключен.
+     *
+     * @param username Имя пользователя.
+     * @return {@code false}, если пользователь не найден на других узлах.
+     */
+    public boolean kickRemote(String username) {
+        Membership membership = remoteUsers.get(ClientRegistry.normalize(username));
+        PeerLink link = membership == null ? null : links.get(membership.nodeId());
+        if (link == null) {
+            return false;
+        }
+        link.send(Frame.fields(Opcode.PEER_KICK, membership.username()));
+        return true;
+    }
+
+    /**
+     * Передаёт личное сообщение узлу, к которому подключен получатель.
+     *
+     * @param sender Имя отправителя.
+     * @param target Имя получателя.
+     * @param text Текст сообщения.
+     * @return Имя получателя в том виде, в каком он зарегистрирован, или {@code null}, если он не найден на других узлах.
+     */
+    public String relayDirectMessage(String sender, String target, String text) {
+        Membership membership = remoteUsers.get(ClientRegistry.normalize(target));
+        PeerLink link = membership == null ? null : links.get(membership.nodeId());
+        if (link == null) {
+            return null;
+        }
+        link.send(Frame.fields(Opcode.PEER_DIRECT, sender, membership.username(), text));
+        return membership.username();
+    }
+
+    /**
+     * Ставит кадр в очереди всех соединений.
+     *
+     * @param frame Кадр.
+     */
+    private void sendAll(Frame frame) {
+        for (PeerLink link : links.values()) {
+            link.send(frame);
+        }
+    }
+
+    /**
+     * Пользователь в комнате на узле кластера.
+     *
+     * @param nodeId Идентификатор узла.
+     * @param username Имя пользователя.
+     * @param room Имя комнаты.
+     */
+    private record Membership(String nodeId, String username, String room) {
+    }
+
+    /**
+     * Имя, обещанное другому узлу.
+     *
+     * @param nodeId Идентификатор узла.
+     * @param expiresAt Время окончания резервации по {@link System#nanoTime()}.
+     */
+    private record Reservation(String nodeId, long expiresAt) {
+    }
+
+    /**
+     * Незавершённый запрос имени.
+     *
+     * @param awaiting Узлы, от которых ещё нет ответа.
+     * @param result Результат запроса.
+     */
+    private record Claim(Set<String> awaiting, CompletableFuture<Boolean> result) {
+
+        Claim(Set<String> awaiting) {
+            this(awaiting, new CompletableFuture<>());
+        }
+
+        /**
+         * Учитывает согласие узла; когда согласились все, запрос завершается успешно.
+         *
+         * @param nodeId Идентификатор узла.
+         */
+        void granted(String nodeId) {
+            if (awaiting.remove(nodeId) && awaiting.isEmpty()) {
+                result.complete(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package org.serverchat;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Цикл событий неблокирующего сервера.
+ * Каждый цикл владеет своим {@link Selector} и обслуживает часть соединений в одном потоке.
+ * Задачи из других потоков (регистрация каналов, отправка сообщений) передаются через {@link #execute(Runnable)}.
+ *
+ * <p>Переменные класса:</p>
+ * <ul>
+ *   <li>{@code selector} — Селектор для ожидания событий готовности каналов.</li>
+ *   <li>{@code tasks} — Очередь задач, которые нужно выполнить в потоке цикла.</li>
+ *   <li>{@code thread} — Поток, в котором работает цикл.</li>
+ *   <li>{@code isRunning} — Флаг работы цикла.</li>
+ *   <li>{@code logger} — Логгер для записи действий и ошибок.</li>
+ * </ul>
+ */
+public final class EventLoop implements Runnable {
+
+    private static final Logger logger = LogManager.getLogger(EventLoop.class);
+
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private volatile boolean isRunning = true;
+
+    /**
+     * Создаёт цикл событий и поток для него (поток запускается методом {@link #start()}).
+     *
+     * @param name Имя потока цикла.
+     * @throws IOException если не удалось открыть селектор.
+     */
+    public EventLoop(String name) throws IOException {
+        this.selector = Selector.open();
+        this.thread = new Thread(this, name);
+    }
+
+    /**
+     * Запускает поток цикла событий.
+     */
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Ставит задачу в очередь потока цикла.
+     * Задача всегда выполняется асинхронно, даже если вызов сделан из потока цикла,
+     * чтобы не допустить повторного входа в обработку событий канала.
+     *
+     * @param task Задача для выполнения.
+     */
+    public void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * Регистрирует принятый канал в цикле и создаёт для него транспорт.
+     *
+     * @param channel Канал клиента.
+     * @param transport Транспорт, который будет обрабатывать события канала.
+     */
+    public void register(SocketChannel channel, NioTransport transport) {
+        execute(() -> {
+            try {
+                channel.configureBlocking(false);
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ, transport);
+                transport.attach(key);
+            } catch (IOException e) {
+                logger.error("Error registering client channel: {}", e.getMessage());
+                transport.closeNow();
+            }
+        });
+    }
+
+    /**
+     * Основной цикл: ожидает события, выполняет поставленные задачи и передаёт события транспортам.
+     * Непредвиденное исключение при обработке события закрывает соединение, в котором оно возникло.
+     */
+    @Override
+    public void run() {
+        while (isRunning) {
+            try {
+                selector.select();
+                runTasks();
+                for (SelectionKey key : selector.selectedKeys()) {
+                    NioTransport transport = (NioTransport) key.attachment();
+                    try {
+                        if (key.isValid() && key.isReadable()) {
+                            transport.onReadable();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            transport.onWritable();
+                        }
+                    } catch (CancelledKeyException e) {
+                        transport.closeNow();
+                    } catch (RuntimeException e) {
+                        // Ошибка обработчика закрывает только его соединение, а не весь цикл с остальными клиентами
+                        logger.error("Client connection handler failed", e);
+                        transport.closeNow();
+                    }
+                }
+                selector.selectedKeys().clear();
+            } catch (ClosedSelectorException e) {
+                break;
+            } catch (IOException e) {
+                if (isRunning) {
+                    logger.error("Event loop error: {}", e.getMessage());
+                }
+            }
+        }
+        runTasks();
+    }
+
+    /**
+     * Выполняет все накопленные задачи.
+     */
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                logger.error("Event loop task failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Останавливает цикл событий и закрывает все его соединения.
+     */
+    public void shutdown() {
+        execute(() -> {
+            isRunning = false;
+            for (SelectionKey key : selector.keys()) {
+                ((NioTransport) key.attachment()).closeNow();
+            }
+        });
+        try {
+            thread.join(5000);
+            selector.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            logger.error("Error closing selector: {}", e.getMessage());
+        }
+    }
+}
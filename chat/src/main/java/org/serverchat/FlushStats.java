@@ -0,0 +1,101 @@
+package org.serverchat;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Настройка и статистика объединения записей клиентам.
+ * <p>
+ * Писатель транспорта не сбрасывает данные после каждого сообщения: он записывает в буфер всё, что есть в очереди,
+ * и сбрасывает буфер одной TLS-записью, как только очередь опустела, не дожидаясь новых сообщений.
+ * Если сообщения продолжают поступать и очередь не пустеет, блокирующий писатель сбрасывает буфер не реже
+ * бюджета задержки (свойство {@value #BUDGET_PROPERTY}, по умолчанию {@value #DEFAULT_BUDGET_MICROS} мкс;
+ * при нулевом бюджете — только когда очередь опустела). Неблокирующий транспорт отправляет очередь
+ * на каждом проходе цикла событий.
+ * </p>
+ *
+ * <p>Переменные класса:</p>
+ * <ul>
+ *   <li>{@code BUDGET_PROPERTY} — Системное свойство для бюджета задержки сброса в микросекундах.</li>
+ *   <li>{@code BUDGET_NANOS} — Бюджет задержки сброса в наносекундах.</li>
+ *   <li>{@code flushes} — Количество сбросов данных в сокет.</li>
+ *   <li>{@code messages} — Количество сообщений, отправленных этими сбросами.</li>
+ *   <li>{@code bytes} — Количество байтов, отправленных этими сбросами.</li>
+ * </ul>
+ */
+public final class FlushStats {
+
+    public static final String BUDGET_PROPERTY = "chat.server.flushBudgetMicros";
+    public static final long DEFAULT_BUDGET_MICROS = 1000;
+    public static final long BUDGET_NANOS = TimeUnit.MICROSECONDS.toNanos(
+            Math.max(0, Long.getLong(BUDGET_PROPERTY, DEFAULT_BUDGET_MICROS)));
+
+    private static final LongAdder flushes = new LongAdder();
+    private static final LongAdder messages = new LongAdder();
+    private static final LongAdder bytes = new LongAdder();
+
+    private FlushStats() {
+    }
+
+    /**
+     * Учитывает один сброс данных в сокет.
+     *
+     * @param messageCount Количество сообщений, отправленных сбросом.
+     * @param byteCount Количество байтов, отправленных сбросом.
+     */
+    public static void recordFlush(int messageCount, long byteCount) {
+        if (messageCount > 0) {
+            flushes.increment();
+            messages.add(messageCount);
+            bytes.add(byteCount);
+        }
+    }
+
+    /**
+     * Возвращает количество сбросов данных в сокет.
+     *
+     * @return Число сбросов.
+     */
+    public static long getFlushCount() {
+        return flushes.sum();
+    }
+
+    /**
+     * Возвращает количество сообщений, отправленных клиентам.
+     *
+     * @return Число сообщений.
+     */
+    public static long getMessageCount() {
+        return messages.sum();
+    }
+
+    /**
+     * Возвращает количество байтов, отправленных клиентам (до шифрования TLS).
+     *
+     * @return Число байтов.
+     */
+    public static long getByteCount() {
+        return bytes.sum();
+    }
+
+    /**
+     * Возвращает среднее число сообщений (строк или кадров), отправленных одним сбросом.
+     * Без объединения каждое сообщение было бы отдельной TLS-записью, то есть значение было бы равно 1.
+     *
+     * @return Среднее число сообщений на сброс или 0, если сбросов ещё не было.
+     */
+    public static double getAverageMessagesPerFlush() {
+        long flushCount = flushes.sum();
+        return flushCount == 0 ? 0 : (double) messages.sum() / flushCount;
+    }
+
+    /**
+     * Возвращает средний объём одного сброса.
+     *
+     * @return Среднее число байтов на сброс или 0, если сбросов ещё не было.
+     */
+    public static double getAverageBytesPerFlush() {
+        long flushCount = flushes.sum();
+        return flushCount == 0 ? 0 : (double) bytes.sum() / flushCount;
+    }
+}
@@ -0,0 +1,88 @@
+package org.serverchat;
+
+import org.protocolchat.Frame;
+import org.protocolchat.FrameDecoder;
+import org.protocolchat.Opcode;
+import org.protocolchat.Protocol;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.function.Predicate;
+
+/**
+ * Разбирает входящие данные клиента в кадры независимо от протокола.
+ * <p>
+ * Протокол определяется по первому байту: {@link Protocol#MAGIC} означает бинарный клиент, любой другой байт —
+ * строковый. Строки старого протокола переводятся в кадры: первая строка — {@link Opcode#USERNAME},
+ * остальные разбираются {@link Frame#fromLine(String)}. Один и тот же декодер используется
+ * блокирующим и неблокирующим сервером.
+ * </p>
+ *
+ * <p>Переменные класса:</p>
+ * <ul>
+ *   <li>{@code wireFormat} — Протокол клиента или {@code null}, пока не получен первый байт.</li>
+ *   <li>{@code lineDecoder} — Разбор строкового протокола.</li>
+ *   <li>{@code frameDecoder} — Разбор бинарного протокола.</li>
+ *   <li>{@code isFirstFrame} — Флаг, что следующий кадр или строка — первые в соединении.</li>
+ *   <li>{@code isHelloMissing} — Флаг, что бинарный клиент начал не с {@link Opcode#HELLO}.</li>
+ * </ul>
+ */
+public class InboundDecoder {
+
+    private WireFormat wireFormat;
+    private final LineDecoder lineDecoder = new LineDecoder();
+    private final FrameDecoder frameDecoder = new FrameDecoder(Protocol.MAX_CLIENT_FRAME_SIZE);
+    private boolean isFirstFrame = true;
+    private boolean isHelloMissing = false;
+
+    /**
+     * Читает байты из буфера и передаёт каждый полученный кадр обработчику.
+     *
+     * @param input Буфер с данными в режиме чтения.
+     * @param frameConsumer Обработчик кадров; если он вернул {@code false}, разбор прекращается.
+     * @return {@code false}, если обработчик попросил прекратить чтение.
+     * @throws IOException при нарушении протокола или слишком длинной строке.
+     */
+    public boolean decode(ByteBuffer input, Predicate<Frame> frameConsumer) throws IOException {
+        if (wireFormat == null) {
+            if (!input.hasRemaining()) {
+                return true;
+            }
+            if (input.get(input.position()) == Protocol.MAGIC) {
+                input.get();
+                wireFormat = WireFormat.BINARY;
+            } else {
+                wireFormat = WireFormat.LINE;
+            }
+        }
+        if (wireFormat == WireFormat.BINARY) {
+            boolean keepReading = frameDecoder.decode(input, frame -> {
+                if (isFirstFrame && frame.getOpcode() != Opcode.HELLO) {
+                    isHelloMissing = true;
+                    return false;
+                }
+                isFirstFrame = false;
+                return frameConsumer.test(frame);
+            });
+            if (isHelloMissing) {
+                throw new ProtocolException("Binary client must start with HELLO");
+            }
+            return keepReading;
+        }
+        return lineDecoder.decode(input, line -> {
+            Frame frame = isFirstFrame ? Frame.of(Opcode.USERNAME, line) : Frame.fromLine(line);
+            isFirstFrame = false;
+            return frameConsumer.test(frame);
+        });
+    }
+
+    /**
+     * Возвращает протокол клиента.
+     *
+     * @return Протокол или {@code null}, если от клиента ещё ничего не получено.
+     */
+    public WireFormat getWireFormat() {
+        return wireFormat;
+    }
+}
@@ -0,0 +1,12 @@
+package org.serverchat;
+
+/**
+ * Сообщение комнаты, сохранённое в журнале {@link MessageJournal}.
+ *
+ * @param sequence Порядковый номер сообщения в журнале (начиная с 1).
+ * @param timestamp Время записи в миллисекундах с начала эпохи.
+ * @param room Имя комнаты.
+ * @param text Текст сообщения.
+ */
+public record JournalRecord(long sequence, long timestamp, String room, String text) {
+}
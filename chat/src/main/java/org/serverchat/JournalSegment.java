@@ -0,0 +1,510 @@
+package org.serverchat;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.protocolchat.Protocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Сегмент журнала сообщений: файл записей {@code <номер>.log} и разреженный индекс {@code <номер>.idx},
+ * где номер — порядковый номер первой записи сегмента.
+ * <p>
+ * Запись — это длина (4 байта), номер (8 байт), время (8 байт), длина имени комнаты (2 байта), имя комнаты,
+ * текст в UTF-8 и контрольная сумма CRC32C всего, что идёт после длины. Записи только дописываются в конец.
+ * Примерно через каждые {@value #INDEX_INTERVAL_BYTES} байт в индекс добавляется элемент
+ * (номер, время, смещение записи), поэтому поиск по номеру или времени читает не больше этого объёма.
+ * Читатели видят только записи, целиком записанные в файл ({@code size}).
+ * </p>
+ *
+ * <p>Переменные класса:</p>
+ * <ul>
+ *   <li>{@code LOG_SUFFIX} — Расширение файла записей.</li>
+ *   <li>{@code INDEX_SUFFIX} — Расширение файла индекса.</li>
+ *   <li>{@code INDEX_INTERVAL_BYTES} — Объём записей между соседними элементами индекса.</li>
+ *   <li>{@code INDEX_ENTRY_SIZE} — Размер элемента индекса в файле.</li>
+ *   <li>{@code HEADER_SIZE} — Размер записи без имени комнаты и текста.</li>
+ *   <li>{@code MAX_RECORD_SIZE} — Наибольший допустимый размер записи (защита от повреждённой длины).</li>
+ *   <li>{@code baseSequence} — Номер первой записи сегмента.</li>
+ *   <li>{@code logPath} — Путь к файлу записей.</li>
+ *   <li>{@code log} — Канал файла записей.</li>
+ *   <li>{@code index} — Канал файла индекса.</li>
+ *   <li>{@code size} — Размер записанной части файла записей.</li>
+ *   <li>{@code nextSequence} — Номер следующей записи сегмента.</li>
+ *   <li>{@code unwritten} — Закодированные записи текущей пачки, ещё не записанные в файл.</li>
+ *   <li>{@code unwrittenBytes} — Объём записей текущей пачки.</li>
+ *   <li>{@code pendingIndex} — Элементы индекса для записей текущей пачки.</li>
+ *   <li>{@code bytesSinceIndex} — Объём записей после последнего элемента индекса.</li>
+ *   <li>{@code indexSequences} — Номера записей в индексе.</li>
+ *   <li>{@code indexTimestamps} — Время записей в индексе.</li>
+ *   <li>{@code indexPositions} — Смещения записей в индексе.</li>
+ *   <li>{@code indexCount} — Количество элементов индекса.</li>
+ *   <li>{@code logger} — Логгер для записи действий и ошибок.</li>
+ * </ul>
+ */
+public final class JournalSegment {
+
+    private static final Logger logger = LogManager.getLogger(JournalSegment.class);
+
+    static final String LOG_SUFFIX = ".log";
+    static final String INDEX_SUFFIX = ".idx";
+    private static final int INDEX_INTERVAL_BYTES = 4096;
+    private static final int INDEX_ENTRY_SIZE = 24;
+    private static final int HEADER_SIZE = 8 + 8 + 2 + 4;
+    private static final int MAX_RECORD_SIZE = HEADER_SIZE + Short.MAX_VALUE + Protocol.MAX_FRAME_SIZE;
+
+    private final long baseSequence;
+    private final Path logPath;
+    private final Path indexPath;
+    private final FileChannel log;
+    private final FileChannel index;
+    private volatile long size;
+    private long nextSequence;
+
+    private final List<ByteBuffer> unwritten = new ArrayList<>();
+    private long unwrittenBytes = 0;
+    private final List<long[]> pendingIndex = new ArrayList<>();
+    private long bytesSinceIndex = INDEX_INTERVAL_BYTES;
+
+    private long[] indexSequences = new long[16];
+    private long[] indexTimestamps = new long[16];
+    private long[] indexPositions = new long[16];
+    private int indexCount = 0;
+
+    /**
+     * Открывает файлы сегмента.
+     *
+     * @param directory Каталог журнала.
+     * @param baseSequence Номер первой записи сегмента.
+     * @throws IOException если файлы не удалось открыть.
+     */
+    private JournalSegment(Path directory, long baseSequence) throws IOException {
+        this.baseSequence = baseSequence;
+        this.nextSequence = baseSequence;
+        String name = String.format("%020d", baseSequence);
+        this.logPath = directory.resolve(name + LOG_SUFFIX);
+        this.indexPath = directory.resolve(name + INDEX_SUFFIX);
+        this.log = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.index = FileChannel.open(indexPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Создаёт новый пустой сегмент.
+     *
+     * @param directory Каталог журнала.
+     * @param baseSequence Номер первой записи сегмента.
+     * @return Сегмент.
+     * @throws IOException если файлы не удалось создать.
+     */
+    static JournalSegment create(Path directory, long baseSequence) throws IOException {
+        JournalSegment segment = new JournalSegment(directory, baseSequence);
+        segment.log.truncate(0);
+        segment.index.truncate(0);
+        return segment;
+    }
+
+    /**
+     * Открывает существующий сегмент.
+     * Индекс закрытого сегмента читается из файла; последний сегмент проверяется целиком: неполная или
+     * повреждённая запись в конце (обрыв при аварийной остановке) отрезается, индекс строится заново.
+     *
+     * @param directory Каталог журнала.
+     * @param baseSequence Номер первой записи сегмента.
+     * @param isLast {@code true} для сегмента, в который продолжится запись.
+     * @return Сегмент.
+     * @throws IOException если файлы не удалось прочитать.
+     */
+    static JournalSegment open(Path directory, long baseSequence, boolean isLast) throws IOException {
+        JournalSegment segment = new JournalSegment(directory, baseSequence);
+        segment.size = segment.log.size();
+        if (isLast || !segment.loadIndex()) {
+            segment.recover();
+        }
+        return segment;
+    }
+
+    /**
+     * Читает индекс из файла.
+     *
+     * @return {@code false}, если файл индекса отсутствует или повреждён.
+     * @throws IOException при ошибке чтения.
+     */
+    private boolean loadIndex() throws IOException {
+        long indexSize = index.size();
+        if (indexSize == 0 || indexSize % INDEX_ENTRY_SIZE != 0) {
+            return false;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) indexSize);
+        while (buffer.hasRemaining() && index.read(buffer, buffer.position()) >= 0) {
+            // Читаем файл индекса целиком
+        }
+        buffer.flip();
+        while (buffer.remaining() >= INDEX_ENTRY_SIZE) {
+            addIndexEntry(buffer.getLong(), buffer.getLong(), buffer.getLong());
+        }
+        return indexSequences[0] == baseSequence && indexPositions[0] == 0;
+    }
+
+    /**
+     * Проверяет записи сегмента, отрезает повреждённый конец и строит индекс заново.
+     *
+     * @throws IOException при ошибке чтения или записи.
+     */
+    private void recover() throws IOException {
+        indexCount = 0;
+        index.truncate(0);
+        long position = 0;
+        JournalRecord record;
+        while ((record = readAt(position, log.size())) != null && record.sequence() == nextSequence) {
+            int length = encodedLength(record);
+            pendingIndex(record, position, length);
+            position += length;
+            nextSequence++;
+        }
+        if (position < log.size()) {
+            logger.warn("Journal segment {} is truncated from {} to {} bytes",
+                    logPath.getFileName(), log.size(), position);
+            log.truncate(position);
+        }
+        size = position;
+        writeIndex();
+    }
+
+    /**
+     * Добавляет запись в текущую пачку. Записи пачки попадают в файл при {@link #flush()}.
+     *
+     * @param record Запись с номером, следующим за последней записью сегмента.
+     */
+    void append(JournalRecord record) {
+        ByteBuffer encoded = encode(record);
+        pendingIndex(record, size + unwrittenBytes, encoded.remaining());
+        unwritten.add(encoded);
+        unwrittenBytes += encoded.remaining();
+        nextSequence = record.sequence() + 1;
+    }
+
+    /**
+     * Запоминает элемент индекса для записи, если с предыдущего элемента набралось достаточно данных.
+     *
+     * @param record Запись.
+     * @param position Смещение записи в файле.
+     * @param length Размер записи.
+     */
+    private void pendingIndex(JournalRecord record, long position, int length) {
+        if (bytesSinceIndex >= INDEX_INTERVAL_BYTES) {
+            pendingIndex.add(new long[]{record.sequence(), record.timestamp(), position});
+            bytesSinceIndex = 0;
+        }
+        bytesSinceIndex += length;
+    }
+
+    /**
+     * Записывает текущую пачку в файл одной операцией и дописывает индекс.
+     *
+     * @throws IOException при ошибке записи.
+     */
+    void flush() throws IOException {
+        if (!unwritten.isEmpty()) {
+            ByteBuffer[] buffers = unwritten.toArray(new ByteBuffer[0]);
+            long position = size;
+            log.position(position);
+            while (buffers[buffers.length - 1].hasRemaining()) {
+                log.write(buffers);
+            }
+            unwritten.clear();
+            size = position + unwrittenBytes;
+            unwrittenBytes = 0;
+        }
+        writeIndex();
+    }
+
+    /**
+     * Дописывает накопленные элементы индекса в файл и делает их видимыми для поиска.
+     *
+     * @throws IOException при ошибке записи.
+     */
+    private void writeIndex() throws IOException {
+        if (pendingIndex.isEmpty()) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(pendingIndex.size() * INDEX_ENTRY_SIZE);
+        for (long[] entry : pendingIndex) {
+            buffer.putLong(entry[0]).putLong(entry[1]).putLong(entry[2]);
+            addIndexEntry(entry[0], entry[1], entry[2]);
+        }
+        pendingIndex.clear();
+        buffer.flip();
+        long position = index.size();
+        while (buffer.hasRemaining()) {
+            position += index.write(buffer, position);
+        }
+    }
+
+    /**
+     * Сбрасывает записанные данные сегмента на диск.
+     *
+     * @throws IOException при ошибке синхронизации.
+     */
+    void sync() throws IOException {
+        log.force(false);
+        index.force(false);
+    }
+
+    /**
+     * Добавляет элемент в индекс в памяти.
+     *
+     * @param sequence Номер записи.
+     * @param timestamp Время записи.
+     * @param position Смещение записи.
+     */
+    private synchronized void addIndexEntry(long sequence, long timestamp, long position) {
+        if (indexCount == indexSequences.length) {
+            indexSequences = Arrays.copyOf(indexSequences, indexCount * 2);
+            indexTimestamps = Arrays.copyOf(indexTimestamps, indexCount * 2);
+            indexPositions = Arrays.copyOf(indexPositions, indexCount * 2);
+        }
+        indexSequences[indexCount] = sequence;
+        indexTimestamps[indexCount] = timestamp;
+        indexPositions[indexCount] = position;
+        indexCount++;
+    }
+
+    /**
+     * Ищет в индексе смещение, с которого нужно читать, чтобы найти запись с указанным номером.
+     *
+     * @param sequence Номер записи.
+     * @return Смещение последнего элемента индекса с номером не больше указанного.
+     */
+    private synchronized long floorBySequence(long sequence) {
+        int found = Arrays.binarySearch(indexSequences, 0, indexCount, sequence);
+        int entry = found >= 0 ? found : -found - 2;
+        return entry < 0 ? 0 : indexPositions[entry];
+    }
+
+    /**
+     * Ищет в индексе смещение, с которого нужно читать, чтобы найти первую запись не раньше указанного времени.
+     *
+     * @param timestamp Время в миллисекундах.
+     * @return Смещение последнего элемента индекса со временем строго раньше указанного.
+     */
+    private synchronized long floorByTimestamp(long timestamp) {
+        int low = 0;
+        int high = indexCount - 1;
+        int entry = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (indexTimestamps[middle] < timestamp) {
+                entry = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return entry < 0 ? 0 : indexPositions[entry];
+    }
+
+    /**
+     * Возвращает время первой записи сегмента.
+     *
+     * @return Время в миллисекундах или {@link Long#MAX_VALUE}, если сегмент пуст.
+     */
+    synchronized long firstTimestamp() {
+        return indexCount == 0 ? Long.MAX_VALUE : indexTimestamps[0];
+    }
+
+    /**
+     * Читает записи начиная с указанного номера.
+     *
+     * @param fromSequence Номер первой нужной записи.
+     * @param limit Наибольшее количество записей в результате.
+     * @param result Список, в который добавляются записи.
+     * @throws IOException при ошибке чтения.
+     */
+    void read(long fromSequence, int limit, List<JournalRecord> result) throws IOException {
+        long end = size;
+        long position = floorBySequence(fromSequence);
+        JournalRecord record;
+        while (result.size() < limit && (record = readAt(position, end)) != null) {
+            if (record.sequence() >= fromSequence) {
+                result.add(record);
+            }
+            position += encodedLength(record);
+        }
+    }
+
+    /**
+     * Ищет первую запись сегмента не раньше указанного времени.
+     *
+     * @param timestamp Время в миллисекундах.
+     * @return Номер записи или {@code -1}, если в сегменте таких записей нет.
+     * @throws IOException при ошибке чтения.
+     */
+    long findSequence(long timestamp) throws IOException {
+        long end = size;
+        long position = floorByTimestamp(timestamp);
+        JournalRecord record;
+        while ((record = readAt(position, end)) != null) {
+            if (record.timestamp() >= timestamp) {
+                return record.sequence();
+            }
+            position += encodedLength(record);
+        }
+        return -1;
+    }
+
+    /**
+     * Читает запись по смещению.
+     *
+     * @param position Смещение записи.
+     * @param end Граница прочитанной части файла.
+     * @return Запись или {@code null}, если за границей нет целой записи с верной контрольной суммой.
+     * @throws IOException при ошибке чтения.
+     */
+    private JournalRecord readAt(long position, long end) throws IOException {
+        if (end - position < 4) {
+            return null;
+        }
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+        readFully(lengthBuffer, position);
+        int length = lengthBuffer.getInt(0);
+        if (length < HEADER_SIZE || length > MAX_RECORD_SIZE || end - position - 4 < length) {
+            return null;
+        }
+        ByteBuffer body = ByteBuffer.allocate(length);
+        readFully(body, position + 4);
+        CRC32C crc = new CRC32C();
+        crc.update(body.array(), 0, length - 4);
+        if ((int) crc.getValue() != body.getInt(length - 4)) {
+            return null;
+        }
+        long sequence = body.getLong(0);
+        long timestamp = body.getLong(8);
+        int roomLength = body.getShort(16) & 0xFFFF;
+        if (HEADER_SIZE + roomLength > length) {
+            return null;
+        }
+        String room = new String(body.array(), 18, roomLength, StandardCharsets.UTF_8);
+        String text = new String(body.array(), 18 + roomLength, length - HEADER_SIZE - roomLength, StandardCharsets.UTF_8);
+        return new JournalRecord(sequence, timestamp, room, text);
+    }
+
+    /**
+     * Читает буфер целиком с указанного смещения файла записей.
+     *
+     * @param buffer Буфер.
+     * @param position Смещение.
+     * @throws IOException при ошибке чтения или неожиданном конце файла.
+     */
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = log.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of journal segment " + logPath.getFileName());
+            }
+        }
+    }
+
+    /**
+     * Кодирует запись.
+     *
+     * @param record Запись.
+     * @return Буфер, готовый к записи.
+     */
+    private static ByteBuffer encode(JournalRecord record) {
+        byte[] room = record.room().getBytes(StandardCharsets.UTF_8);
+        byte[] text = record.text().getBytes(StandardCharsets.UTF_8);
+        int length = HEADER_SIZE + room.length + text.length;
+        ByteBuffer buffer = ByteBuffer.allocate(4 + length);
+        buffer.putInt(length)
+                .putLong(record.sequence())
+                .putLong(record.timestamp())
+                .putShort((short) room.length)
+                .put(room)
+                .put(text);
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), 4, length - 4);
+        buffer.putInt((int) crc.getValue());
+        return buffer.flip();
+    }
+
+    /**
+     * Вычисляет размер закодированной записи.
+     *
+     * @param record Запись.
+     * @return Размер вместе с полем длины.
+     */
+    private static int encodedLength(JournalRecord record) {
+        return 4 + HEADER_SIZE + record.room().getBytes(StandardCharsets.UTF_8).length
+                + record.text().getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    /**
+     * Закрывает файлы сегмента.
+     */
+    void close() {
+        try {
+            log.close();
+            index.close();
+        } catch (IOException e) {
+            logger.error("Error closing journal segment {}: {}", logPath.getFileName(), e.getMessage());
+        }
+    }
+
+    /**
+     * Закрывает и удаляет файлы сегмента.
+     *
+     * @throws IOException при ошибке удаления.
+     */
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(logPath);
+        Files.deleteIfExists(indexPath);
+    }
+
+    /**
+     * Возвращает номер первой записи сегмента.
+     *
+     * @return Номер записи.
+     */
+    long getBaseSequence() {
+        return baseSequence;
+    }
+
+    /**
+     * Возвращает номер, который получит следующая запись сегмента.
+     *
+     * @return Номер записи.
+     */
+    long getNextSequence() {
+        return nextSequence;
+    }
+
+    /**
+     * Возвращает размер сегмента вместе с текущей пачкой.
+     *
+     * @return Размер в байтах.
+     */
+    long getSize() {
+        return size + unwrittenBytes;
+    }
+
+    /**
+     * Возвращает время последнего изменения файла записей.
+     *
+     * @return Время в миллисекундах.
+     * @throws IOException при ошибке чтения атрибутов файла.
+     */
+    long getLastModified() throws IOException {
+        return Files.getLastModifiedTime(logPath).toMillis();
+    }
+}
@@ -0,0 +1,154 @@
+package org.serverchat;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Гистограмма задержек в микросекундах с постоянной относительной точностью.
+ * <p>
+ * Значения до {@value #LINEAR_BUCKETS} мкс хранятся точно, большие — в логарифмических корзинах:
+ * каждый интервал {@code [2^k, 2^(k+1))} делится на {@value #SUB_BUCKETS} равных частей, поэтому погрешность
+ * процентиля не больше 1/64 значения при любом масштабе. Запись не блокируется и может выполняться
+ * из любого числа потоков одновременно.
+ * </p>
+ *
+ * <p>Переменные класса:</p>
+ * <ul>
+ *   <li>{@code LINEAR_BUCKETS} — Число корзин шириной 1 мкс для малых значений.</li>
+ *   <li>{@code SUB_BUCKET_BITS} — Число бит, на которые делится каждый интервал степени двойки.</li>
+ *   <li>{@code SUB_BUCKETS} — Число корзин в интервале степени двойки.</li>
+ *   <li>{@code MAX_EXPONENT} — Степень двойки наибольшего различимого значения (около 12 суток).</li>
+ *   <li>{@code counts} — Число значений в каждой корзине.</li>
+ *   <li>{@code count} — Общее число значений.</li>
+ *   <li>{@code sum} — Сумма значений для среднего.</li>
+ *   <li>{@code max} — Наибольшее значение.</li>
+ * </ul>
+ */
+public final class LatencyHistogram {
+
+    private static final int LINEAR_BUCKETS = 128;
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;
+
+    private final AtomicLongArray counts =
+            new AtomicLongArray(LINEAR_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS) * SUB_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Добавляет значение.
+     *
+     * @param micros Задержка в микросекундах; отрицательные значения считаются нулём.
+     */
+    public void record(long micros) {
+        long value = Math.max(0, micros);
+        counts.incrementAndGet(indexOf(value));
+        count.increment();
+        sum.add(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * Возвращает число значений.
+     *
+     * @return Число значений.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Возвращает наибольшее значение.
+     *
+     * @return Наибольшее значение в микросекундах.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Возвращает среднее значение.
+     *
+     * @return Среднее в микросекундах или {@code 0}, если значений нет.
+     */
+    public double getMean() {
+        long total = count.sum();
+        return total == 0 ? 0 : (double) sum.sum() / total;
+    }
+
+    /**
+     * Возвращает процентиль: значение, не меньше которого доля {@code fraction} всех значений.
+     *
+     * @param fraction Доля от 0 до 1 (например, {@code 0.999} для p999).
+     * @return Верхняя граница корзины процентиля в микросекундах (не больше максимума).
+     */
+    public long getPercentile(double fraction) {
+        long total = count.sum();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(lowerBound(i + 1) - 1, max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Возвращает распределение по интервалам степеней двойки: элемент {@code k} — число значений
+     * в интервале {@code [2^k, 2^(k+1))} мкс (нулевой элемент включает и значение 0).
+     *
+     * @return Число значений в каждом интервале.
+     */
+    public long[] getPowerOfTwoCounts() {
+        long[] result = new long[MAX_EXPONENT + 1];
+        for (int i = 0; i < counts.length(); i++) {
+            long bucketCount = counts.get(i);
+            if (bucketCount != 0) {
+                long lower = lowerBound(i);
+                result[lower == 0 ? 0 : 63 - Long.numberOfLeadingZeros(lower)] += bucketCount;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Вычисляет номер корзины значения.
+     *
+     * @param value Значение в микросекундах.
+     * @return Номер корзины.
+     */
+    private static int indexOf(long value) {
+        if (value < LINEAR_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return LINEAR_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS) * SUB_BUCKETS - 1;
+        }
+        int subBucket = (int) ((value >> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+        return LINEAR_BUCKETS + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Вычисляет наименьшее значение корзины.
+     *
+     * @param index Номер корзины.
+     * @return Нижняя граница корзины в микросекундах.
+     */
+    private static long lowerBound(int index) {
+        if (index < LINEAR_BUCKETS) {
+            return index;
+        }
+        int exponent = SUB_BUCKET_BITS + 1 + (index - LINEAR_BUCKETS) / SUB_BUCKETS;
+        long subBucket = (index - LINEAR_BUCKETS) % SUB_BUCKETS;
+        return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+}
@@ -0,0 +1,61 @@
+package org.serverchat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+/**
+ * Разбивает поток байтов от клиента на строки в кодировке UTF-8.
+ * Используется неблокирующим сервером вместо {@code BufferedReader.readLine()}.
+ *
+ * <p>Переменные класса:</p>
+ * <ul>
+ *   <li>{@code MAX_LINE_LENGTH} — Максимальная длина строки в байтах.</li>
+ *   <li>{@code buffer} — Накопленные байты незавершённой строки.</li>
+ *   <li>{@code length} — Количество байтов в {@code buffer}.</li>
+ * </ul>
+ */
+public class LineDecoder {
+
+    public static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    private byte[] buffer = new byte[256];
+    private int length = 0;
+
+    /**
+     * Читает байты из буфера и передаёт каждую завершённую строку обработчику.
+     * Символ {@code '\r'} перед переводом строки отбрасывается.
+     *
+     * @param input Буфер с данными в режиме чтения.
+     * @param lineConsumer Обработчик строк; если он вернул {@code false}, разбор прекращается.
+     * @return {@code false}, если обработчик попросил прекратить чтение.
+     * @throws IOException если строка превышает {@link #MAX_LINE_LENGTH}.
+     */
+    public boolean decode(ByteBuffer input, Predicate<String> lineConsumer) throws IOException {
+        while (input.hasRemaining()) {
+            byte b = input.get();
+            if (b == '\n') {
+                int end = length;
+                if (end > 0 && buffer[end - 1] == '\r') {
+                    end--;
+                }
+                String line = new String(buffer, 0, end, StandardCharsets.UTF_8);
+                length = 0;
+                if (!lineConsumer.test(line)) {
+                    return false;
+                }
+            } else {
+                if (length == MAX_LINE_LENGTH) {
+                    throw new IOException("Line too long");
+                }
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, Math.min(buffer.length * 2, MAX_LINE_LENGTH));
+                }
+                buffer[length++] = b;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,470 @@
+package org.serverchat;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Журнал сообщений комнат: каждое разосланное сообщение сохраняется с номером и временем
+ * в сегменты {@link JournalSegment}, которые только дописываются.
+ * <p>
+ * Рассылка не ждёт диска: {@link #append(String, String)} присваивает номер и ставит запись в очередь,
+ * а поток записи забирает из очереди всё накопившееся и записывает одной операцией (групповая запись).
+ * Когда данные сбрасываются на диск, определяет {@link FsyncPolicy}: после каждой пачки, не чаще заданного
+ * интервала или на усмотрение ОС. Сегмент закрывается, когда достигает размера {@value #SEGMENT_BYTES_PROPERTY};
+ * старые сегменты удаляются, когда журнал превышает {@value #RETENTION_BYTES_PROPERTY} байт или сегмент старше
+ * {@value #RETENTION_HOURS_PROPERTY} часов. Журнал пишется в каталог {@value #DIRECTORY_PROPERTY}
+ * (по умолчанию {@value #DEFAULT_DIRECTORY}); пустое значение свойства выключает журнал.
+ * </p>
+ * <p>
+ * Очередь записей ограничена ({@value #QUEUE_CAPACITY_PROPERTY}); что делать, если диск не успевает и очередь
+ * заполнилась, определяет {@link OverflowPolicy}. Если запись в файл не удалась, журнал не пытается продолжить
+ * с пропуском пачки: он прекращает работу, и все следующие сообщения не сохраняются, о чём сообщается в лог.
+ * </p>
+ *
+ * <p>Переменные класса:</p>
+ * <ul>
+ *   <li>{@code DIRECTORY_PROPERTY} — Системное свойство для каталога журнала.</li>
+ *   <li>{@code SEGMENT_BYTES_PROPERTY} — Системное свойство для размера сегмента.</li>
+ *   <li>{@code FSYNC_PROPERTY} — Системное свойство для политики сброса на диск.</li>
+ *   <li>{@code FSYNC_INTERVAL_PROPERTY} — Системное свойство для интервала сброса в миллисекундах.</li>
+ *   <li>{@code RETENTION_BYTES_PROPERTY} — Системное свойство для наибольшего размера журнала.</li>
+ *   <li>{@code RETENTION_HOURS_PROPERTY} — Системное свойство для срока хранения сегментов в часах.</li>
+ *   <li>{@code QUEUE_CAPACITY_PROPERTY} — Системное свойство для ёмкости очереди записей.</li>
+ *   <li>{@code OVERFLOW_PROPERTY} — Системное свойство для политики переполнения очереди записей.</li>
+ *   <li>{@code RETENTION_CHECK_MILLIS} — Как часто проверяется срок хранения, если сегменты не сменяются.</li>
+ *   <li>{@code directory} — Каталог журнала ({@code null}, если журнал выключен).</li>
+ *   <li>{@code segmentBytes} — Размер сегмента.</li>
+ *   <li>{@code fsyncPolicy} — Политика сброса на диск.</li>
+ *   <li>{@code fsyncIntervalMillis} — Интервал сброса для {@link FsyncPolicy#INTERVAL}.</li>
+ *   <li>{@code retentionBytes} — Наибольший размер журнала.</li>
+ *   <li>{@code retentionMillis} — Срок хранения сегмента.</li>
+ *   <li>{@code segments} — Сегменты по номеру первой записи.</li>
+ *   <li>{@code overflowPolicy} — Политика переполнения очереди записей.</li>
+ *   <li>{@code pending} — Очередь записей для потока записи.</li>
+ *   <li>{@code droppedCount} — Количество сообщений, не сохранённых из-за переполнения очереди с начала переполнения.</li>
+ *   <li>{@code appendLock} — Блокировка, сохраняющая порядок номеров в очереди.</li>
+ *   <li>{@code nextSequence} — Номер следующей записи.</li>
+ *   <li>{@code lastTimestamp} — Время последней записи (время записей не убывает).</li>
+ *   <li>{@code writer} — Поток записи.</li>
+ *   <li>{@code isClosed} — Флаг закрытия журнала.</li>
+ *   <li>{@code isFailed} — Флаг, что запись в файл не удалась и журнал больше не сохраняет сообщения.</li>
+ *   <li>{@code logger} — Логгер для записи действий и ошибок.</li>
+ * </ul>
+ */
+public class MessageJournal {
+
+    private static final Logger logger = LogManager.getLogger(MessageJournal.class);
+
+    public static final String DIRECTORY_PROPERTY = "chat.server.journalDir";
+    public static final String SEGMENT_BYTES_PROPERTY = "chat.server.journalSegmentBytes";
+    public static final String FSYNC_PROPERTY = "chat.server.journalFsync";
+    public static final String FSYNC_INTERVAL_PROPERTY = "chat.server.journalFsyncIntervalMillis";
+    public static final String RETENTION_BYTES_PROPERTY = "chat.server.journalRetentionBytes";
+    public static final String RETENTION_HOURS_PROPERTY = "chat.server.journalRetentionHours";
+    public static final String QUEUE_CAPACITY_PROPERTY = "chat.server.journalQueueCapacity";
+    public static final String OVERFLOW_PROPERTY = "chat.server.journalOverflow";
+    public static final String DEFAULT_DIRECTORY = "history";
+    public static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+    public static final long DEFAULT_FSYNC_INTERVAL_MILLIS = 1000;
+    public static final long DEFAULT_RETENTION_BYTES = 1024L * 1024 * 1024;
+    public static final long DEFAULT_RETENTION_HOURS = 24 * 7;
+    public static final int DEFAULT_QUEUE_CAPACITY = 64 * 1024;
+    private static final long RETENTION_CHECK_MILLIS = 60_000;
+
+    /**
+     * Политика сброса журнала на диск.
+     */
+    public enum FsyncPolicy {
+
+        /** Сбрасывать после каждой пачки: записанное сообщение переживёт отключение питания. */
+        ALWAYS,
+
+        /** Сбрасывать не чаще интервала {@value MessageJournal#FSYNC_INTERVAL_PROPERTY}. */
+        INTERVAL,
+
+        /** Не сбрасывать явно: данные переживут падение процесса, но не ОС. */
+        NEVER;
+
+        /**
+         * Определяет политику по системному свойству {@value MessageJournal#FSYNC_PROPERTY}.
+         *
+         * @return Выбранная политика или {@link #INTERVAL}, если свойство не задано.
+         * @throws IllegalArgumentException если политика с таким названием не существует.
+         */
+        public static FsyncPolicy fromSystemProperty() {
+            String value = System.getProperty(FSYNC_PROPERTY);
+            return value == null || value.isBlank() ? INTERVAL : valueOf(value.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * Политика при переполнении очереди записей.
+     */
+    public enum OverflowPolicy {
+
+        /** Не сохранять сообщение: рассылка не задерживается, пропуск отмечается в логе. */
+        DROP,
+
+        /** Ждать места в очереди: все сообщения сохраняются, но рассылка замедляется до скорости диска. */
+        BLOCK;
+
+        /**
+         * Определяет политику по системному свойству {@value MessageJournal#OVERFLOW_PROPERTY}.
+         *
+         * @return Выбранная политика или {@link #DROP}, если свойство не задано.
+         * @throws IllegalArgumentException если политика с таким названием не существует.
+         */
+        public static OverflowPolicy fromSystemProperty() {
+            String value = System.getProperty(OVERFLOW_PROPERTY);
+            return value == null || value.isBlank() ? DROP : valueOf(value.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final FsyncPolicy fsyncPolicy;
+    private final long fsyncIntervalMillis;
+    private final long retentionBytes;
+    private final long retentionMillis;
+    private final ConcurrentNavigableMap<Long, JournalSegment> segments = new ConcurrentSkipListMap<>();
+    private final OverflowPolicy overflowPolicy;
+    private final BlockingQueue<JournalRecord> pending;
+    private final Object appendLock = new Object();
+    private long droppedCount = 0;
+    private long nextSequence = 1;
+    private long lastTimestamp = 0;
+    private Thread writer;
+    private volatile boolean isClosed = false;
+    private volatile boolean isFailed = false;
+
+    /**
+     * Создаёт журнал с указанными настройками. Журнал начинает работу после {@link #open()}.
+     *
+     * @param directory Каталог журнала или {@code null}, чтобы журнал ничего не сохранял.
+     * @param segmentBytes Размер сегмента в байтах.
+     * @param fsyncPolicy Политика сброса на диск.
+     * @param fsyncIntervalMillis Интервал сброса для {@link FsyncPolicy#INTERVAL}.
+     * @param retentionBytes Наибольший размер журнала в байтах.
+     * @param retentionMillis Срок хранения сегмента в миллисекундах.
+     * @param queueCapacity Ёмкость очереди записей.
+     * @param overflowPolicy Политика при переполнении очереди записей.
+     */
+    public MessageJournal(Path directory, long segmentBytes, FsyncPolicy fsyncPolicy, long fsyncIntervalMillis,
+                          long retentionBytes, long retentionMillis, int queueCapacity, OverflowPolicy overflowPolicy) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+        this.retentionBytes = retentionBytes;
+        this.retentionMillis = retentionMillis;
+        this.pending = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Создаёт журнал, который ничего не сохраняет.
+     *
+     * @return Выключенный журнал.
+     */
+    public static MessageJournal disabled() {
+        return new MessageJournal(null, DEFAULT_SEGMENT_BYTES, FsyncPolicy.NEVER, 0, 0, 0, 1, OverflowPolicy.DROP);
+    }
+
+    /**
+     * Создаёт журнал с настройками из системных свойств.
+     *
+     * @return Журнал или выключенный журнал, если каталог задан пустой строкой.
+     */
+    public static MessageJournal fromSystemProperties() {
+        String directory = System.getProperty(DIRECTORY_PROPERTY, DEFAULT_DIRECTORY).trim();
+        if (directory.isEmpty()) {
+            return disabled();
+        }
+        return new MessageJournal(Path.of(directory),
+                Long.getLong(SEGMENT_BYTES_PROPERTY, DEFAULT_SEGMENT_BYTES),
+                FsyncPolicy.fromSystemProperty(),
+                Long.getLong(FSYNC_INTERVAL_PROPERTY, DEFAULT_FSYNC_INTERVAL_MILLIS),
+                Long.getLong(RETENTION_BYTES_PROPERTY, DEFAULT_RETENTION_BYTES),
+                TimeUnit.HOURS.toMillis(Long.getLong(RETENTION_HOURS_PROPERTY, DEFAULT_RETENTION_HOURS)),
+                Integer.getInteger(QUEUE_CAPACITY_PROPERTY, DEFAULT_QUEUE_CAPACITY),
+                OverflowPolicy.fromSystemProperty());
+    }
+
+    /**
+     * Проверяет, сохраняет ли журнал сообщения.
+     *
+     * @return {@code true}, если журналу задан каталог.
+     */
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * Открывает сегменты из каталога (восстанавливая последний после аварийной остановки)
+     * и запускает поток записи.
+     *
+     * @throws IOException если каталог или сегменты не удалось открыть.
+     */
+    public void open() throws IOException {
+        if (!isEnabled()) {
+            return;
+        }
+        Files.createDirectories(directory);
+        List<Long> bases = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.endsWith(JournalSegment.LOG_SUFFIX))
+                    .forEach(name -> bases.add(Long.parseLong(name.substring(0, name.length() - JournalSegment.LOG_SUFFIX.length()))));
+        }
+        bases.sort(null);
+        for (int i = 0; i < bases.size(); i++) {
+            segments.put(bases.get(i), JournalSegment.open(directory, bases.get(i), i == bases.size() - 1));
+        }
+        if (segments.isEmpty()) {
+            segments.put(1L, JournalSegment.create(directory, 1));
+        }
+        nextSequence = segments.lastEntry().getValue().getNextSequence();
+        enforceRetention();
+
+        writer = Thread.ofPlatform().daemon().name("journal-writer").start(this::writeLoop);
+        logger.info("Message journal: {}, next sequence {}, fsync {}",
+                directory.toAbsolutePath(), nextSequence, fsyncPolicy.name().toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Добавляет сообщение в журнал. Не ждёт записи на диск; при переполненной очереди ждёт места
+     * только при политике {@link OverflowPolicy#BLOCK}.
+     *
+     * @param room Имя комнаты.
+     * @param text Текст сообщения.
+     * @return Номер сообщения в журнале или {@code -1}, если журнал выключен, закрыт, прекратил работу
+     *         или сообщение не сохранено из-за переполнения очереди.
+     */
+    public long append(String room, String text) {
+        if (!isEnabled() || isClosed || isFailed) {
+            return -1;
+        }
+        synchronized (appendLock) {
+            lastTimestamp = Math.max(lastTimestamp, System.currentTimeMillis());
+            JournalRecord record = new JournalRecord(nextSequence, lastTimestamp, room, text);
+            if (!pending.offer(record)) {
+                if (overflowPolicy == OverflowPolicy.DROP) {
+                    if (droppedCount++ == 0) {
+                        logger.warn("Message journal queue is full, messages are not saved");
+                    }
+                    return -1;
+                }
+                try {
+                    pending.put(record);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return -1;
+                }
+            }
+            if (droppedCount > 0) {
+                logger.warn("Message journal queue drained, {} messages were not saved", droppedCount);
+                droppedCount = 0;
+            }
+            return nextSequence++;
+        }
+    }
+
+    /**
+     * Читает сохранённые сообщения начиная с указанного номера.
+     * Возвращает только записанные в файл сообщения; сообщения из удалённых сегментов пропускаются.
+     *
+     * @param fromSequence Номер первого нужного сообщения.
+     * @param limit Наибольшее количество сообщений.
+     * @return Сообщения в порядке номеров.
+     */
+    public List<JournalRecord> read(long fromSequence, int limit) {
+        List<JournalRecord> result = new ArrayList<>();
+        if (!isEnabled()) {
+            return result;
+        }
+        Long first = segments.floorKey(fromSequence);
+        Map<Long, JournalSegment> tail = segments.tailMap(first != null ? first : fromSequence);
+        try {
+            for (JournalSegment segment : tail.values()) {
+                if (result.size() >= limit) {
+                    break;
+                }
+                segment.read(fromSequence, limit, result);
+            }
+        } catch (ClosedChannelException e) {
+            // Сегмент удалён по сроку хранения во время чтения: возвращаем то, что успели прочитать
+        } catch (IOException e) {
+            logger.error("Error reading message journal: {}", e.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * Ищет первое сообщение, записанное не раньше указанного времени.
+     *
+     * @param timestamp Время в миллисекундах с начала эпохи.
+     * @return Номер сообщения или номер следующего сообщения, если таких сообщений ещё нет.
+     */
+    public long findSequence(long timestamp) {
+        if (isEnabled()) {
+            try {
+                for (Map.Entry<Long, JournalSegment> entry : segments.entrySet()) {
+                    Map.Entry<Long, JournalSegment> next = segments.higherEntry(entry.getKey());
+                    if (next != null && next.getValue().firstTimestamp() < timestamp) {
+                        continue;
+                    }
+                    long sequence = entry.getValue().findSequence(timestamp);
+                    if (sequence >= 0) {
+                        return sequence;
+                    }
+                }
+            } catch (IOException e) {
+                logger.error("Error searching message journal: {}", e.getMessage());
+            }
+        }
+        synchronized (appendLock) {
+            return nextSequence;
+        }
+    }
+
+    /**
+     * Записывает накопившиеся сообщения пачками, пока журнал не закрыт и очередь не опустела.
+     */
+    private void writeLoop() {
+        List<JournalRecord> batch = new ArrayList<>();
+        long lastSync = System.nanoTime();
+        long lastRetentionCheck = System.nanoTime();
+        boolean isDirty = false;
+        while (!isClosed || !pending.isEmpty()) {
+            try {
+                JournalRecord first = pending.poll(Math.max(1, Math.min(fsyncIntervalMillis, RETENTION_CHECK_MILLIS)),
+                        TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    pending.drainTo(batch);
+                    writeBatch(batch);
+                    batch.clear();
+                    isDirty = true;
+                }
+                long now = System.nanoTime();
+                if (isDirty && (fsyncPolicy == FsyncPolicy.ALWAYS || fsyncPolicy == FsyncPolicy.INTERVAL
+                        && now - lastSync >= TimeUnit.MILLISECONDS.toNanos(fsyncIntervalMillis))) {
+                    segments.lastEntry().getValue().sync();
+                    lastSync = now;
+                    isDirty = false;
+                }
+                if (now - lastRetentionCheck >= TimeUnit.MILLISECONDS.toNanos(RETENTION_CHECK_MILLIS)) {
+                    enforceRetention();
+                    lastRetentionCheck = now;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException e) {
+                // Пропуск пачки оставил бы в журнале дыру: прекращаем запись, а не продолжаем с неё
+                isFailed = true;
+                logger.error("Message journal failed, {} queued messages and all further messages are not saved",
+                        batch.size() + pending.size(), e);
+                pending.clear();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Записывает пачку сообщений, закрывая заполненные сегменты.
+     *
+     * @param batch Сообщения в порядке номеров.
+     * @throws IOException при ошибке записи.
+     */
+    private void writeBatch(List<JournalRecord> batch) throws IOException {
+        JournalSegment segment = segments.lastEntry().getValue();
+        for (JournalRecord record : batch) {
+            if (segment.getSize() >= segmentBytes) {
+                segment = roll(segment, record.sequence());
+            }
+            segment.append(record);
+        }
+        segment.flush();
+    }
+
+    /**
+     * Закрывает заполненный сегмент и начинает новый.
+     *
+     * @param current Заполненный сегмент.
+     * @param baseSequence Номер первой записи нового сегмента.
+     * @return Новый сегмент.
+     * @throws IOException при ошибке записи или создания файлов.
+     */
+    private JournalSegment roll(JournalSegment current, long baseSequence) throws IOException {
+        current.flush();
+        if (fsyncPolicy != FsyncPolicy.NEVER) {
+            current.sync();
+        }
+        JournalSegment next = JournalSegment.create(directory, baseSequence);
+        segments.put(baseSequence, next);
+        enforceRetention();
+        return next;
+    }
+
+    /**
+     * Удаляет старые сегменты, пока журнал больше {@code retentionBytes} или старейший сегмент
+     * старше {@code retentionMillis}. Текущий сегмент не удаляется.
+     */
+    private void enforceRetention() {
+        long total = segments.values().stream().mapToLong(JournalSegment::getSize).sum();
+        long expiredBefore = System.currentTimeMillis() - retentionMillis;
+        while (segments.size() > 1) {
+            JournalSegment oldest = segments.firstEntry().getValue();
+            try {
+                if (total <= retentionBytes && oldest.getLastModified() >= expiredBefore) {
+                    return;
+                }
+                total -= oldest.getSize();
+                segments.remove(oldest.getBaseSequence());
+                oldest.delete();
+            } catch (IOException e) {
+                logger.error("Error deleting journal segment: {}", e.getMessage());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Записывает оставшиеся сообщения, сбрасывает журнал на диск и закрывает сегменты.
+     */
+    public void close() {
+        if (!isEnabled() || isClosed) {
+            return;
+        }
+        isClosed = true;
+        try {
+            if (writer != null) {
+                writer.join(TimeUnit.SECONDS.toMillis(5));
+            }
+            if (fsyncPolicy != FsyncPolicy.NEVER) {
+                segments.lastEntry().getValue().sync();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            logger.error("Error syncing message journal: {}", e.getMessage());
+        }
+        segments.values().forEach(JournalSegment::close);
+    }
+}
@@ -0,0 +1,136 @@
+package org.serverchat;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.serverchat.exceptions.ClientConnectionException;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Неблокирующий SSL-сервер чата на {@code Selector}/{@code SocketChannel} и {@code SSLEngine}.
+ * Принимает подключения в вызывающем потоке и распределяет их по кругу между несколькими циклами событий.
+ * Логика обработки клиентов (имена, {@code /kick}, {@code /list}, рассылка) общая с блокирующим режимом
+ * и реализована в {@link ClientHandler}.
+ *
+ * <p>Переменные класса:</p>
+ * <ul>
+ *   <li>{@code EVENT_LOOPS_PROPERTY} — Системное свойство для числа циклов событий (по умолчанию — число ядер).</li>
+ *   <li>{@code sslContext} — SSL-контекст сервера.</li>
+ *   <li>{@code address} — Адрес, на котором сервер принимает подключения.</li>
+ *   <li>{@code eventLoops} — Циклы событий, между которыми распределяются соединения.</li>
+ *   <li>{@code serverChannel} — Канал для приёма подключений.</li>
+ *   <li>{@code nextLoop} — Индекс цикла для следующего подключения.</li>
+ *   <li>{@code logger} — Логгер для записи действий и ошибок.</li>
+ * </ul>
+ */
+public class NioServer {
+
+    private static final Logger logger = LogManager.getLogger(NioServer.class);
+
+    public static final String EVENT_LOOPS_PROPERTY = "chat.server.eventLoops";
+
+    private final SSLContext sslContext;
+    private final InetSocketAddress address;
+    private final EventLoop[] eventLoops;
+    private ServerSocketChannel serverChannel;
+    private int nextLoop = 0;
+
+    /**
+     * Создаёт неблокирующий сервер.
+     *
+     * @param sslContext SSL-контекст сервера.
+     * @param address Адрес для приёма подключений.
+     * @throws IOException если не удалось открыть селекторы циклов событий.
+     */
+    public NioServer(SSLContext sslContext, InetSocketAddress address) throws IOException {
+        this.sslContext = sslContext;
+        this.address = address;
+        int loopCount = Integer.getInteger(EVENT_LOOPS_PROPERTY, Runtime.getRuntime().availableProcessors());
+        this.eventLoops = new EventLoop[Math.max(1, loopCount)];
+        for (int i = 0; i < eventLoops.length; i++) {
+            eventLoops[i] = new EventLoop("chat-event-loop-" + i);
+        }
+    }
+
+    /**
+     * Открывает серверный канал и запускает циклы событий.
+     *
+     * @throws IOException При ошибке открытия канала.
+     */
+    public void start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address, 50);
+        for (EventLoop eventLoop : eventLoops) {
+            eventLoop.start();
+        }
+    }
+
+    /**
+     * Возвращает количество циклов событий.
+     *
+     * @return Число циклов событий.
+     */
+    public int getEventLoopCount() {
+        return eventLoops.length;
+    }
+
+    /**
+     * Ожидает подключения клиента и передаёт его следующему циклу событий.
+     *
+     * @throws ClientConnectionException При ошибке подключения клиента.
+     */
+    public void acceptClientConnection() throws ClientConnectionException {
+        try {
+            if (serverChannel != null && serverChannel.isOpen()) {
+                SocketChannel channel = serverChannel.accept();
+                ServerMetrics.recordAccepted();
+                InetSocketAddress remote = (InetSocketAddress) channel.getRemoteAddress();
+                logger.info("The client is connected: {}", remote.getAddress());
+
+                SSLEngine engine = sslContext.createSSLEngine(remote.getHostString(), remote.getPort());
+                engine.setUseClientMode(false);
+                engine.setEnabledProtocols(new String[]{"TLSv1.3"});
+                engine.beginHandshake();
+
+                EventLoop eventLoop = eventLoops[nextLoop];
+                nextLoop = (nextLoop + 1) % eventLoops.length;
+
+                NioTransport transport = new NioTransport(eventLoop, channel, engine, String.valueOf(remote.getAddress()));
+                transport.setHandler(new ClientHandler(transport));
+                eventLoop.register(channel, transport);
+            }
+        } catch (IOException e) {
+            if (Server.isServerRunning()) {
+                throw new ClientConnectionException("Error connecting client", e);
+            }
+        }
+    }
+
+    /**
+     * Проверяет, принимает ли сервер подключения.
+     *
+     * @return {@code true}, если серверный канал открыт.
+     */
+    public boolean isOpen() {
+        return serverChannel != null && serverChannel.isOpen();
+    }
+
+    /**
+     * Закрывает серверный канал и останавливает циклы событий.
+     *
+     * @throws IOException При ошибке закрытия канала.
+     */
+    public void stop() throws IOException {
+        if (serverChannel != null && serverChannel.isOpen()) {
+            serverChannel.close();
+        }
+        for (EventLoop eventLoop : eventLoops) {
+            eventLoop.shutdown();
+        }
+    }
+}
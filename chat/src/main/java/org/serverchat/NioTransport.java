@@ -0,0 +1,459 @@
+package org.serverchat;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Неблокирующий транспорт поверх {@link SocketChannel} и {@link SSLEngine}.
+ * Все операции с каналом и движком TLS выполняются в потоке своего {@link EventLoop};
+ * другие потоки только ставят сообщения в ограниченную очередь методом {@link #send(OutboundMessage)}.
+ *
+ * <p>Переменные класса:</p>
+ * <ul>
+ *   <li>{@code eventLoop} — Цикл событий, который обслуживает это соединение.</li>
+ *   <li>{@code channel} — Неблокирующий канал клиента.</li>
+ *   <li>{@code engine} — Движок TLS для шифрования и расшифровки данных.</li>
+ *   <li>{@code outboundQueue} — Ограниченная очередь сообщений, поставленных из других потоков.</li>
+ *   <li>{@code wireFormat} — Формат, в котором сообщения кодируются для клиента.</li>
+ *   <li>{@code writing} — Сообщения, которые сейчас шифруются (только поток цикла, не более {@code MAX_WRITING}).</li>
+ *   <li>{@code netIn}, {@code appIn}, {@code netOut} — Буферы зашифрованных и расшифрованных данных.</li>
+ *   <li>{@code isClosed} — Флаг, после установки которого новые сообщения не принимаются.</li>
+ *   <li>{@code acceptedAt} — Момент принятия подключения, от которого отсчитывается рукопожатие.</li>
+ *   <li>{@code isHandshakeRecorded} — Флаг, что длительность рукопожатия учтена в {@link ServerMetrics}.</li>
+ *   <li>{@code logger} — Логгер для записи действий и ошибок.</li>
+ * </ul>
+ */
+public class NioTransport implements ClientTransport {
+
+    private static final Logger logger = LogManager.getLogger(NioTransport.class);
+
+    private static final ByteBuffer[] NO_DATA = new ByteBuffer[0];
+    private static final int MAX_WRITING = 64;
+
+    private final EventLoop eventLoop;
+    private final SocketChannel channel;
+    private final SSLEngine engine;
+    private final String remoteAddress;
+    private final OutboundQueue outboundQueue = new OutboundQueue();
+    private final ArrayDeque<ByteBuffer> writing = new ArrayDeque<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private volatile WireFormat wireFormat = WireFormat.LINE;
+
+    private ClientHandler handler;
+    private SelectionKey key;
+    private ByteBuffer netIn;
+    private ByteBuffer appIn;
+    private ByteBuffer netOut;
+    private volatile boolean isClosed = false;
+    private boolean isCloseRequested = false;
+    private boolean isChannelClosed = false;
+    private final long acceptedAt = System.nanoTime();
+    private boolean isHandshakeRecorded = false;
+
+    /**
+     * Создаёт транспорт для принятого канала.
+     *
+     * @param eventLoop Цикл событий, который будет обслуживать канал.
+     * @param channel Канал клиента.
+     * @param engine Движок TLS в серверном режиме.
+     * @param remoteAddress Адрес клиента.
+     */
+    public NioTransport(EventLoop eventLoop, SocketChannel channel, SSLEngine engine, String remoteAddress) {
+        this.eventLoop = eventLoop;
+        this.channel = channel;
+        this.engine = engine;
+        this.remoteAddress = remoteAddress;
+
+        int packetSize = engine.getSession().getPacketBufferSize();
+        this.netIn = ByteBuffer.allocate(packetSize);
+        this.appIn = ByteBuffer.allocate(engine.getSession().getApplicationBufferSize());
+        this.netOut = ByteBuffer.allocate(packetSize);
+        this.netOut.flip(); // netOut всегда в режиме чтения: position..limit — ещё не отправленные байты
+    }
+
+    /**
+     * Устанавливает обработчик, которому передаются данные от клиента.
+     *
+     * @param handler Обработчик клиента.
+     */
+    public void setHandler(ClientHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Привязывает транспорт к ключу селектора. Вызывается в потоке цикла после регистрации канала.
+     *
+     * @param key Ключ регистрации канала.
+     */
+    void attach(SelectionKey key) {
+        this.key = key;
+    }
+
+    @Override
+    public boolean send(OutboundMessage message) {
+        if (isClosed) {
+            return true;
+        }
+        if (!outboundQueue.offer(message, wireFormat)) {
+            return false;
+        }
+        scheduleFlush();
+        return true;
+    }
+
+    @Override
+    public OutboundQueue getOutboundQueue() {
+        return outboundQueue;
+    }
+
+    @Override
+    public void setWireFormat(WireFormat wireFormat) {
+        this.wireFormat = wireFormat;
+    }
+
+    @Override
+    public WireFormat getWireFormat() {
+        return wireFormat;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return isClosed;
+    }
+
+    @Override
+    public String getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    /**
+     * Закрывает соединение после отправки уже поставленных в очередь сообщений и {@code close_notify}.
+     */
+    @Override
+    public void close() {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+        eventLoop.execute(this::closeGracefully);
+    }
+
+    @Override
+    public void abort() {
+        isClosed = true;
+        eventLoop.execute(this::closeNow);
+    }
+
+    /**
+     * Планирует отправку очереди сообщений в потоке цикла, если она ещё не запланирована.
+     * Сообщения, поставленные до того, как цикл дойдёт до задачи, уходят вместе в одной TLS-записи,
+     * а сама отправка не откладывается дольше одного прохода цикла.
+     */
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            eventLoop.execute(() -> {
+                flushScheduled.set(false);
+                if (!isChannelClosed) {
+                    pump();
+                }
+            });
+        }
+    }
+
+    /**
+     * Обрабатывает готовность канала к чтению.
+     */
+    void onReadable() {
+        int read;
+        try {
+            read = channel.read(netIn);
+        } catch (IOException e) {
+            closeNow();
+            return;
+        }
+        if (read < 0) {
+            try {
+                engine.closeInbound();
+            } catch (SSLException e) {
+                // Клиент закрыл соединение без close_notify
+            }
+            closeNow();
+            return;
+        }
+        pump();
+    }
+
+    /**
+     * Обрабатывает готовность канала к записи.
+     */
+    void onWritable() {
+        pump();
+    }
+
+    /**
+     * Продвигает рукопожатие, расшифровывает входящие и шифрует исходящие данные, пока есть прогресс.
+     * Непредвиденное исключение (в том числе из обработчика клиента) закрывает только это соединение.
+     */
+    private void pump() {
+        try {
+            boolean progress;
+            do {
+                switch (engine.getHandshakeStatus()) {
+                    case NEED_TASK -> {
+                        runDelegatedTasks();
+                        progress = true;
+                    }
+                    case NEED_WRAP -> progress = wrap(NO_DATA);
+                    case NEED_UNWRAP, NEED_UNWRAP_AGAIN -> progress = unwrap();
+                    default -> {
+                        progress = unwrap();
+                        if (!isChannelClosed) {
+                            progress |= wrapPending();
+                        }
+                    }
+                }
+            } while (progress && !isChannelClosed);
+
+            if (!isHandshakeRecorded && engine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING) {
+                isHandshakeRecorded = true;
+                ServerMetrics.recordHandshake(System.nanoTime() - acceptedAt);
+            }
+            if (!isChannelClosed) {
+                finishPump();
+            }
+        } catch (IOException e) {
+            closeNow();
+        } catch (RuntimeException e) {
+            logger.error("Client connection handler failed", e);
+            closeNow();
+        }
+    }
+
+    /**
+     * Выполняет задачи движка TLS (проверка сертификатов, вычисление ключей).
+     */
+    private void runDelegatedTasks() {
+        Runnable task;
+        while ((task = engine.getDelegatedTask()) != null) {
+            task.run();
+        }
+    }
+
+    /**
+     * Расшифровывает накопленные входящие данные и передаёт их обработчику.
+     *
+     * @return {@code true}, если удалось продвинуться.
+     * @throws IOException при ошибке TLS или нарушении протокола клиентом.
+     */
+    private boolean unwrap() throws IOException {
+        if (netIn.position() == 0) {
+            return false;
+        }
+        netIn.flip();
+        SSLEngineResult result;
+        try {
+            result = engine.unwrap(netIn, appIn);
+        } finally {
+            netIn.compact();
+        }
+
+        switch (result.getStatus()) {
+            case BUFFER_OVERFLOW -> {
+                appIn = enlarge(appIn, engine.getSession().getApplicationBufferSize());
+                return true;
+            }
+            case BUFFER_UNDERFLOW -> {
+                int packetSize = engine.getSession().getPacketBufferSize();
+                if (netIn.capacity() < packetSize) {
+                    netIn = enlarge(netIn, packetSize);
+                }
+                return false;
+            }
+            case CLOSED -> {
+                closeNow();
+                return false;
+            }
+            default -> {
+                // OK
+            }
+        }
+
+        if (appIn.position() > 0) {
+            appIn.flip();
+            boolean keepReading = handler == null || handler.handleInput(appIn);
+            appIn.clear();
+            if (!keepReading) {
+                close();
+                return false;
+            }
+        }
+        return result.bytesConsumed() > 0 || result.bytesProduced() > 0;
+    }
+
+    /**
+     * Шифрует сообщения из очереди. Несколько сообщений собираются в одну TLS-запись (gathering wrap)
+     * прямо из общих буферов рассылки, без копирования.
+     * Из очереди забирается не больше {@code MAX_WRITING} сообщений, чтобы её глубина отражала отставание клиента.
+     *
+     * @return {@code true}, если удалось продвинуться.
+     * @throws IOException при ошибке TLS или записи в канал.
+     */
+    private boolean wrapPending() throws IOException {
+        OutboundMessage pending;
+        while (writing.size() < MAX_WRITING && (pending = outboundQueue.poll()) != null) {
+            writing.add(pending.buffer(wireFormat));
+        }
+        if (writing.isEmpty()) {
+            return false;
+        }
+        long remainingBefore = remaining(writing);
+        boolean progress = wrap(writing.toArray(NO_DATA));
+        long bytesWrapped = remainingBefore - remaining(writing);
+        int messagesWrapped = 0;
+        while (!writing.isEmpty() && !writing.peekFirst().hasRemaining()) {
+            writing.pollFirst();
+            messagesWrapped++;
+        }
+        FlushStats.recordFlush(messagesWrapped, bytesWrapped);
+        return progress;
+    }
+
+    /**
+     * Считает, сколько байтов осталось отправить из буферов.
+     *
+     * @param buffers Буферы сообщений.
+     * @return Общее число оставшихся байтов.
+     */
+    private static long remaining(ArrayDeque<ByteBuffer> buffers) {
+        long total = 0;
+        for (ByteBuffer buffer : buffers) {
+            total += buffer.remaining();
+        }
+        return total;
+    }
+
+    /**
+     * Шифрует данные в {@code netOut} и пытается отправить их в канал.
+     *
+     * @param sources Данные приложения (пустой массив для сообщений рукопожатия).
+     * @return {@code true}, если удалось продвинуться.
+     * @throws IOException при ошибке TLS или записи в канал.
+     */
+    private boolean wrap(ByteBuffer[] sources) throws IOException {
+        if (!flushNetOut()) {
+            return false;
+        }
+        netOut.clear();
+        SSLEngineResult result;
+        try {
+            result = engine.wrap(sources, netOut);
+        } finally {
+            netOut.flip();
+        }
+
+        if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+            netOut = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+            netOut.flip();
+            return true;
+        }
+        flushNetOut();
+        return result.bytesConsumed() > 0 || result.bytesProduced() > 0;
+    }
+
+    /**
+     * Отправляет в канал ещё не отправленные зашифрованные данные.
+     *
+     * @return {@code true}, если все данные отправлены.
+     * @throws IOException при ошибке записи в канал.
+     */
+    private boolean flushNetOut() throws IOException {
+        while (netOut.hasRemaining()) {
+            if (channel.write(netOut) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Завершает закрытие, если всё отправлено, иначе подписывается на готовность к записи.
+     */
+    private void finishPump() {
+        if (isCloseRequested && engine.isOutboundDone() && !netOut.hasRemaining()) {
+            closeNow();
+            return;
+        }
+        if (key != null && key.isValid()) {
+            boolean hasPendingOutput = netOut.hasRemaining() || !writing.isEmpty();
+            key.interestOps(hasPendingOutput ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * Отправляет оставшиеся сообщения, затем {@code close_notify}, и закрывает канал.
+     */
+    private void closeGracefully() {
+        if (isChannelClosed) {
+            return;
+        }
+        isCloseRequested = true;
+        pump();
+        if (isChannelClosed) {
+            return;
+        }
+        engine.closeOutbound();
+        pump();
+    }
+
+    /**
+     * Немедленно закрывает канал и сообщает обработчику об отключении клиента.
+     * Вызывается только в потоке цикла.
+     */
+    void closeNow() {
+        if (isChannelClosed) {
+            return;
+        }
+        isChannelClosed = true;
+        isClosed = true;
+        ServerMetrics.recordClosed();
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.error("Error closing connection: {}", e.getMessage());
+        }
+        if (handler != null) {
+            try {
+                handler.cleanupClientResources();
+            } catch (RuntimeException e) {
+                logger.error("Error releasing client resources", e);
+            }
+        }
+    }
+
+    /**
+     * Увеличивает буфер в режиме записи, сохраняя его содержимое.
+     *
+     * @param buffer Исходный буфер.
+     * @param minCapacity Минимальная требуемая ёмкость.
+     * @return Новый буфер с тем же содержимым.
+     */
+    private static ByteBuffer enlarge(ByteBuffer buffer, int minCapacity) {
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(minCapacity, buffer.capacity() * 2));
+        buffer.flip();
+        larger.put(buffer);
+        return larger;
+    }
+}
@@ -0,0 +1,174 @@
+package org.serverchat;
+
+import org.protocolchat.Frame;
+import org.protocolchat.Opcode;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Неизменяемое исходящее сообщение, закодированное один раз для каждого формата {@link WireFormat}.
+ * <p>
+ * При рассылке одно и то же сообщение передаётся в очереди всех получателей: байты общие,
+ * поэтому стоимость кодирования и объём выделяемой памяти не зависят от числа клиентов в чате.
+ * Кодирование в каждом формате выполняется при первом обращении; если два потока закодируют
+ * сообщение одновременно, они получат одинаковые байты. Сжатие для клиентов {@link WireFormat#COMPRESSED}
+ * тоже выполняется один раз на сообщение, а не для каждого получателя. У сообщения комнаты с порядковым номером
+ * ({@link #sequenced(long, String)}) клиенты {@link WireFormat#SEQUENCED} получают кадр {@link Opcode#ROOM_MESSAGE},
+ * остальные — тот же текст без номера.
+ * </p>
+ *
+ * <p>Переменные класса:</p>
+ * <ul>
+ *   <li>{@code frame} — Кадр сообщения.</li>
+ *   <li>{@code sequencedFrame} — Кадр с порядковым номером для клиентов {@link WireFormat#SEQUENCED}
+ *   или {@code null}, если они получают {@code frame}.</li>
+ *   <li>{@code lineBytes} — Строка в UTF-8 с завершающим {@code '\n'}; массив никогда не изменяется.</li>
+ *   <li>{@code frameBytes} — Закодированный бинарный кадр; массив никогда не изменяется.</li>
+ *   <li>{@code compressedBytes} — Закодированный кадр для клиентов со сжатием; массив никогда не изменяется.</li>
+ *   <li>{@code sequencedBytes} — Закодированный кадр с порядковым номером; массив никогда не изменяется.</li>
+ * </ul>
+ */
+public final class OutboundMessage {
+
+    private final Frame frame;
+    private final Frame sequencedFrame;
+    private volatile byte[] lineBytes;
+    private volatile byte[] frameBytes;
+    private volatile byte[] compressedBytes;
+    private volatile byte[] sequencedBytes;
+
+    private OutboundMessage(Frame frame, Frame sequencedFrame) {
+        this.frame = frame;
+        this.sequencedFrame = sequencedFrame;
+    }
+
+    /**
+     * Создаёт текстовое сообщение чата.
+     *
+     * @param line Строка без символа перевода строки.
+     * @return Сообщение.
+     */
+    public static OutboundMessage of(String line) {
+        return new OutboundMessage(Frame.of(Opcode.TEXT, line), null);
+    }
+
+    /**
+     * Создаёт сообщение комнаты с порядковым номером.
+     *
+     * @param sequence Порядковый номер сообщения.
+     * @param line Строка без символа перевода строки.
+     * @return Сообщение.
+     */
+    public static OutboundMessage sequenced(long sequence, String line) {
+        return new OutboundMessage(Frame.of(Opcode.TEXT, line),
+                Frame.fields(Opcode.ROOM_MESSAGE, Long.toString(sequence), line));
+    }
+
+    /**
+     * Создаёт сообщение из кадра.
+     *
+     * @param frame Кадр для отправки.
+     * @return Сообщение.
+     */
+    public static OutboundMessage of(Frame frame) {
+        return new OutboundMessage(frame, null);
+    }
+
+    /**
+     * Возвращает кадр сообщения.
+     *
+     * @return Кадр.
+     */
+    public Frame getFrame() {
+        return frame;
+    }
+
+    /**
+     * Проверяет, можно ли отбросить сообщение при переполнении очереди клиента: это строка чата,
+     * которую клиент получает без порядкового номера.
+     *
+     * @param format Формат клиента.
+     * @return {@code false} для служебных кадров и для сообщений комнаты с номером у клиентов {@link WireFormat#SEQUENCED}.
+     */
+    public boolean isDroppable(WireFormat format) {
+        return frame.getOpcode() == Opcode.TEXT && (sequencedFrame == null || format != WireFormat.SEQUENCED);
+    }
+
+    /**
+     * Возвращает сообщение в формате строкового протокола.
+     *
+     * @return Текст без перевода строки.
+     */
+    public String getText() {
+        return frame.toLine();
+    }
+
+    /**
+     * Возвращает закодированное сообщение.
+     *
+     * @param format Формат клиента.
+     * @return Общий массив байтов; изменять его нельзя.
+     */
+    private byte[] encoded(WireFormat format) {
+        if (format == WireFormat.SEQUENCED && sequencedFrame != null) {
+            byte[] bytes = sequencedBytes;
+            if (bytes == null) {
+                sequencedBytes = bytes = format.encode(sequencedFrame);
+            }
+            return bytes;
+        }
+        if (format == WireFormat.BINARY) {
+            byte[] bytes = frameBytes;
+            if (bytes == null) {
+                frameBytes = bytes = format.encode(frame);
+            }
+            return bytes;
+        }
+        if (format == WireFormat.COMPRESSED || format == WireFormat.SEQUENCED) {
+            byte[] bytes = compressedBytes;
+            if (bytes == null) {
+                compressedBytes = bytes = format.encode(frame);
+            }
+            return bytes;
+        }
+        byte[] bytes = lineBytes;
+        if (bytes == null) {
+            lineBytes = bytes = format.encode(frame);
+        }
+        return bytes;
+    }
+
+    /**
+     * Возвращает новый буфер только для чтения над общими байтами сообщения.
+     * У каждого получателя своя позиция, сами байты не копируются.
+     *
+     * @param format Формат клиента.
+     * @return Буфер с закодированным сообщением.
+     */
+    public ByteBuffer buffer(WireFormat format) {
+        return ByteBuffer.wrap(encoded(format)).asReadOnlyBuffer();
+    }
+
+    /**
+     * Записывает закодированное сообщение в поток.
+     *
+     * @param out Поток вывода.
+     * @param format Формат клиента.
+     * @throws IOException При ошибке записи.
+     */
+    public void writeTo(OutputStream out, WireFormat format) throws IOException {
+        out.write(encoded(format));
+    }
+
+    /**
+     * Возвращает длину закодированного сообщения в байтах.
+     *
+     * @param format Формат клиента.
+     * @return Число байтов.
+     */
+    public int length(WireFormat format) {
+        return encoded(format).length;
+    }
+}
@@ -0,0 +1,153 @@
+package org.serverchat;
+
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ограниченная очередь исходящих сообщений одного клиента.
+ * <p>
+ * Отправитель только ставит сообщение в очередь, а запись в сокет выполняет писатель транспорта.
+ * Поэтому медленный клиент больше не задерживает рассылку для остальных: при переполнении очереди
+ * применяется {@link OverflowPolicy}. Вытеснять можно только строки чата без порядкового номера
+ * ({@link OutboundMessage#isDroppable(WireFormat)}): потеря сообщения комнаты с номером или служебного кадра
+ * нарушила бы состояние клиента, поэтому в этом случае клиент отключается, как при политике
+ * {@link OverflowPolicy#DISCONNECT}, и восстанавливает сессию при переподключении.
+ * </p>
+ *
+ * <p>Переменные класса:</p>
+ * <ul>
+ *   <li>{@code CAPACITY_PROPERTY} — Системное свойство для ёмкости очереди (по умолчанию {@value #DEFAULT_CAPACITY}).</li>
+ *   <li>{@code POLICY_PROPERTY} — Системное свойство для политики переполнения (по умолчанию {@code drop_oldest}).</li>
+ *   <li>{@code queue} — Сообщения, ожидающие отправки.</li>
+ *   <li>{@code policy} — Политика при переполнении очереди.</li>
+ *   <li>{@code droppedCount} — Количество сообщений, отброшенных из-за переполнения.</li>
+ * </ul>
+ */
+public class OutboundQueue {
+
+    public static final String CAPACITY_PROPERTY = "chat.server.outboundQueueCapacity";
+    public static final String POLICY_PROPERTY = "chat.server.overflowPolicy";
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * Политика обработки переполнения очереди.
+     */
+    public enum OverflowPolicy {
+
+        /** Отбросить самые старые строки чата без номера и продолжить работу. */
+        DROP_OLDEST,
+
+        /** Отключить клиента с уведомлением {@code /error}. */
+        DISCONNECT;
+
+        /**
+         * Определяет политику по системному свойству {@value OutboundQueue#POLICY_PROPERTY}.
+         *
+         * @return Выбранная политика или {@link #DROP_OLDEST}, если свойство не задано.
+         * @throws IllegalArgumentException если политика с таким названием не существует.
+         */
+        public static OverflowPolicy fromSystemProperty() {
+            String value = System.getProperty(POLICY_PROPERTY);
+            return value == null || value.isBlank() ? DROP_OLDEST : valueOf(value.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    private final ArrayBlockingQueue<OutboundMessage> queue;
+    private final OverflowPolicy policy;
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    /**
+     * Создаёт очередь с ёмкостью и политикой из системных свойств.
+     */
+    public OutboundQueue() {
+        this(Integer.getInteger(CAPACITY_PROPERTY, DEFAULT_CAPACITY), OverflowPolicy.fromSystemProperty());
+    }
+
+    /**
+     * Создаёт очередь с указанной ёмкостью и политикой.
+     *
+     * @param capacity Максимальное число сообщений в очереди.
+     * @param policy Политика при переполнении.
+     */
+    public OutboundQueue(int capacity, OverflowPolicy policy) {
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.policy = policy;
+    }
+
+    /**
+     * Ставит сообщение в очередь.
+     * При политике {@link OverflowPolicy#DROP_OLDEST} переполнение вытесняет самые старые сообщения,
+     * пока самое старое из них можно потерять.
+     *
+     * @param message Сообщение для отправки.
+     * @param format Формат клиента, от которого зависит, можно ли потерять сообщение.
+     * @return {@code false}, если очередь переполнена и клиента нужно отключить.
+     */
+    public boolean offer(OutboundMessage message, WireFormat format) {
+        while (!queue.offer(message)) {
+            if (policy == OverflowPolicy.DISCONNECT) {
+                return false;
+            }
+            OutboundMessage oldest = queue.peek();
+            if (oldest == null) {
+                continue;
+            }
+            if (!oldest.isDroppable(format)) {
+                return false;
+            }
+            // Писатель мог успеть забрать это сообщение: тогда повторяем с новым самым старым
+            if (queue.remove(oldest)) {
+                droppedCount.incrementAndGet();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Очищает очередь и ставит в неё одно сообщение (уведомление перед отключением).
+     *
+     * @param message Последнее сообщение клиенту.
+     */
+    public void replaceAllWith(OutboundMessage message) {
+        droppedCount.addAndGet(queue.size());
+        queue.clear();
+        queue.offer(message);
+    }
+
+    /**
+     * Извлекает следующее сообщение для отправки.
+     *
+     * @return Сообщение или {@code null}, если очередь пуста.
+     */
+    public OutboundMessage poll() {
+        return queue.poll();
+    }
+
+    /**
+     * Проверяет, пуста ли очередь.
+     *
+     * @return {@code true}, если сообщений для отправки нет.
+     */
+    public boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    /**
+     * Возвращает текущую глубину очереди.
+     *
+     * @return Число сообщений, ожидающих отправки.
+     */
+    public int depth() {
+        return queue.size();
+    }
+
+    /**
+     * Возвращает количество отброшенных сообщений.
+     *
+     * @return Число сообщений, вытесненных из-за переполнения.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+}
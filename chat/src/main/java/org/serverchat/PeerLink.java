@@ -0,0 +1,183 @@
+package org.serverchat;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.protocolchat.Frame;
+import org.protocolchat.Opcode;
+import org.protocolchat.Protocol;
+
+import javax.net.ssl.SSLSocket;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ProtocolException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Соединение с другим узлом кластера.
+ * <p>
+ * Узлы обмениваются кадрами бинарного протокола с кодами {@code PEER_*}. Первым кадром каждая сторона
+ * отправляет {@link Opcode#PEER_HELLO} со своим идентификатором. Кадры на отправку ставятся в ограниченную очередь
+ * и записываются отдельным потоком пачками, поэтому рассылка никогда не ждёт медленного узла; если очередь
+ * переполнилась, соединение закрывается, и после переподключения узлы заново обмениваются списками пользователей.
+ * </p>
+ *
+ * <p>Переменные класса:</p>
+ * <ul>
+ *   <li>{@code QUEUE_CAPACITY} — Ёмкость очереди кадров на отправку.</li>
+ *   <li>{@code node} — Узел, которому принадлежит соединение.</li>
+ *   <li>{@code socket} — SSL-сокет соединения.</li>
+ *   <li>{@code isDialer} — Флаг, что соединение установил этот узел.</li>
+ *   <li>{@code outbound} — Очередь кадров на отправку.</li>
+ *   <li>{@code remoteId} — Идентификатор узла на другой стороне ({@code null} до приветствия).</li>
+ *   <li>{@code isClosed} — Флаг закрытия соединения.</li>
+ *   <li>{@code logger} — Логгер для записи действий и ошибок.</li>
+ * </ul>
+ */
+public class PeerLink {
+
+    private static final Logger logger = LogManager.getLogger(PeerLink.class);
+
+    private static final int QUEUE_CAPACITY = 65536;
+
+    private final ClusterNode node;
+    private final SSLSocket socket;
+    private final boolean isDialer;
+    private final BlockingQueue<Frame> outbound = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private volatile String remoteId;
+    private volatile boolean isClosed = false;
+
+    /**
+     * Создаёт соединение поверх подключенного сокета.
+     *
+     * @param node Узел, которому принадлежит соединение.
+     * @param socket SSL-сокет.
+     * @param isDialer {@code true}, если соединение установил этот узел.
+     */
+    public PeerLink(ClusterNode node, SSLSocket socket, boolean isDialer) {
+        this.node = node;
+        this.socket = socket;
+        this.isDialer = isDialer;
+    }
+
+    /**
+     * Обслуживает соединение в текущем потоке: обменивается приветствиями, запускает писателя
+     * и передаёт узлу входящие кадры, пока соединение не закроется.
+     */
+    public void serve() {
+        try {
+            DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            OutputStream output = new BufferedOutputStream(socket.getOutputStream());
+            output.write(Frame.fields(Opcode.PEER_HELLO, node.getNodeId()).encode());
+            output.flush();
+
+            Frame hello = Frame.readFrom(input, Protocol.MAX_FRAME_SIZE);
+            if (hello == null || hello.getOpcode() != Opcode.PEER_HELLO) {
+                throw new ProtocolException("Expected PEER_HELLO");
+            }
+            remoteId = hello.getFields().get(0);
+            Thread.ofPlatform().daemon().name("peer-writer-" + remoteId).start(() -> writeLoop(output));
+            if (!node.onLinkUp(this)) {
+                return;
+            }
+
+            Frame frame;
+            while (!isClosed && (frame = Frame.readFrom(input, Protocol.MAX_FRAME_SIZE)) != null) {
+                node.onFrame(this, frame);
+            }
+        } catch (IOException e) {
+            if (!isClosed) {
+                logger.error("Cluster link {} failed: {}", describe(), e.getMessage());
+            }
+        } finally {
+            close();
+            node.onLinkDown(this);
+        }
+    }
+
+    /**
+     * Ставит кадр в очередь на отправку. При переполнении очереди соединение закрывается.
+     *
+     * @param frame Кадр для отправки.
+     */
+    public void send(Frame frame) {
+        if (isClosed) {
+            return;
+        }
+        if (!outbound.offer(frame)) {
+            logger.warn("Cluster link {} is not keeping up: closing", describe());
+            close();
+        }
+    }
+
+    /**
+     * Записывает кадры из очереди: всё, что накопилось, одной записью.
+     *
+     * @param output Поток вывода сокета.
+     */
+    private void writeLoop(OutputStream output) {
+        try {
+            while (!isClosed) {
+                Frame frame = outbound.poll(1, TimeUnit.SECONDS);
+                if (frame == null) {
+                    continue;
+                }
+                do {
+                    output.write(frame.encode());
+                } while ((frame = outbound.poll()) != null);
+                output.flush();
+            }
+        } catch (IOException e) {
+            if (!isClosed) {
+                logger.error("Cluster link {} write failed: {}", describe(), e.getMessage());
+            }
+            close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Закрывает соединение.
+     */
+    public void close() {
+        isClosed = true;
+        try {
+            socket.close();
+        } catch (IOException e) {
+            logger.error("Error closing cluster link: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Возвращает идентификатор узла на другой стороне.
+     *
+     * @return Идентификатор узла или {@code null} до приветствия.
+     */
+    public String getRemoteId() {
+        return remoteId;
+    }
+
+    /**
+     * Возвращает идентификатор узла, установившего соединение.
+     * По нему выбирается одно из двух встречных соединений между парой узлов.
+     *
+     * @return Идентификатор узла-инициатора.
+     */
+    public String getDialerId() {
+        return isDialer ? node.getNodeId() : remoteId;
+    }
+
+    /**
+     * Описывает соединение для журнала.
+     *
+     * @return Идентификатор узла или адрес сокета.
+     */
+    private String describe() {
+        return remoteId != null ? remoteId : String.valueOf(socket.getRemoteSocketAddress());
+    }
+}
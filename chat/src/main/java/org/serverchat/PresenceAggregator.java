@@ -0,0 +1,221 @@
+package org.serverchat;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.protocolchat.Frame;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Уведомления о подключениях и отключениях пользователей комнаты.
+ * <p>
+ * Пока в комнате меньше {@value #DEFAULT_THRESHOLD} пользователей (свойство {@value #THRESHOLD_PROPERTY}),
+ * каждое событие сразу рассылается текстом, за ним — новое количество пользователей, а список пользователей
+ * записывается в лог (уровень DEBUG). В большой комнате каждое событие так стоило бы рассылки всем участникам,
+ * и массовое переподключение после перезапуска давало бы квадратичный трафик. Поэтому там события копятся в течение окна
+ * (свойство {@value #WINDOW_PROPERTY}, по умолчанию {@value #DEFAULT_WINDOW_MILLIS} мс) и рассылаются одной сводкой
+ * с одним сообщением о количестве; в лог записывается одна строка на окно.
+ * Подключение и отключение одного и того же имени внутри окна взаимно погашаются.
+ * </p>
+ *
+ * <p>Переменные класса:</p>
+ * <ul>
+ *   <li>{@code THRESHOLD_PROPERTY} — Системное свойство для размера комнаты, с которого события объединяются.</li>
+ *   <li>{@code WINDOW_PROPERTY} — Системное свойство для длины окна объединения в миллисекундах.</li>
+ *   <li>{@code MAX_LISTED_NAMES} — Сколько имён перечисляется в сводке, остальные только считаются.</li>
+ *   <li>{@code room} — Комната, участников которой касаются уведомления.</li>
+ *   <li>{@code timer} — Планировщик сброса окна.</li>
+ *   <li>{@code threshold} — Размер комнаты, с которого события объединяются.</li>
+ *   <li>{@code windowMillis} — Длина окна объединения.</li>
+ *   <li>{@code lock} — Блокировка накопленных событий.</li>
+ *   <li>{@code joined} — Имена, подключившиеся за текущее окно.</li>
+ *   <li>{@code left} — Имена, отключившиеся за текущее окно.</li>
+ *   <li>{@code isWindowOpen} — Флаг, что окно открыто и его сброс запланирован.</li>
+ *   <li>{@code logger} — Логгер для записи действий и ошибок.</li>
+ * </ul>
+ */
+public class PresenceAggregator {
+
+    private static final Logger logger = LogManager.getLogger(PresenceAggregator.class);
+
+    public static final String THRESHOLD_PROPERTY = "chat.server.presenceDebounceThreshold";
+    public static final String WINDOW_PROPERTY = "chat.server.presenceWindowMillis";
+    public static final int DEFAULT_THRESHOLD = 100;
+    public static final long DEFAULT_WINDOW_MILLIS = 500;
+    private static final int MAX_LISTED_NAMES = 10;
+
+    private final Room room;
+    private final ScheduledExecutorService timer;
+    private final int threshold;
+    private final long windowMillis;
+
+    private final Object lock = new Object();
+    private final Set<String> joined = new LinkedHashSet<>();
+    private final Set<String> left = new LinkedHashSet<>();
+    private boolean isWindowOpen = false;
+
+    /**
+     * Создаёт агрегатор с настройками из системных свойств.
+     *
+     * @param room Комната.
+     * @param timer Планировщик сброса окна.
+     */
+    public PresenceAggregator(Room room, ScheduledExecutorService timer) {
+        this(room, timer,
+                Integer.getInteger(THRESHOLD_PROPERTY, DEFAULT_THRESHOLD),
+                Math.max(1, Long.getLong(WINDOW_PROPERTY, DEFAULT_WINDOW_MILLIS)));
+    }
+
+    /**
+     * Создаёт агрегатор с указанными настройками.
+     *
+     * @param room Комната.
+     * @param timer Планировщик сброса окна.
+     * @param threshold Размер комнаты, с которого события объединяются.
+     * @param windowMillis Длина окна объединения в миллисекундах.
+     */
+    public PresenceAggregator(Room room, ScheduledExecutorService timer, int threshold, long windowMillis) {
+        this.room = room;
+        this.timer = timer;
+        this.threshold = threshold;
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * Уведомляет о подключении пользователя.
+     *
+     * @param username Имя пользователя.
+     */
+    public void joined(String username) {
+        if (!deferred(username, joined, left)) {
+            broadcast(OutboundMessage.of(username + " подключился!"));
+            broadcastCount();
+            printConnectedClients();
+        }
+    }
+
+    /**
+     * Уведомляет об отключении пользователя.
+     *
+     * @param username Имя пользователя.
+     */
+    public void left(String username) {
+        if (!deferred(username, left, joined)) {
+            broadcastCount();
+            broadcast(OutboundMessage.of(username + " отключился!"));
+            printConnectedClients();
+        }
+    }
+
+    /**
+     * Уведомляет об отключении пользователя администратором.
+     * В большой комнате учитывается в сводке как обычное отключение.
+     *
+     * @param username Имя пользователя.
+     */
+    public void kicked(String username) {
+        if (!deferred(username, left, joined)) {
+            broadcast(OutboundMessage.of("Пользователь " + username + " был отключён Администратором"));
+            broadcastCount();
+            printConnectedClients();
+        }
+    }
+
+    /**
+     * Откладывает событие до конца окна, если комната большая или окно уже открыто.
+     * Пока окно открыто, в него попадают все события, чтобы они не обгоняли уже накопленные.
+     *
+     * @param username Имя пользователя.
+     * @param events Накопленные события того же вида.
+     * @param opposite Накопленные события противоположного вида.
+     * @return {@code true}, если событие отложено; {@code false}, если о нём нужно уведомить сразу.
+     */
+    private boolean deferred(String username, Set<String> events, Set<String> opposite) {
+        synchronized (lock) {
+            if (!isWindowOpen) {
+                if (room.size() < threshold) {
+                    return false;
+                }
+                isWindowOpen = true;
+                timer.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+            }
+            if (!opposite.remove(username)) {
+                events.add(username);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Закрывает окно и рассылает одну сводку накопленных событий.
+     */
+    private void flush() {
+        List<String> joinedNames;
+        List<String> leftNames;
+        synchronized (lock) {
+            joinedNames = new ArrayList<>(joined);
+            leftNames = new ArrayList<>(left);
+            joined.clear();
+            left.clear();
+            isWindowOpen = false;
+        }
+        try {
+            if (!joinedNames.isEmpty()) {
+                broadcast(OutboundMessage.of("Подключились: " + summarize(joinedNames)));
+            }
+            if (!leftNames.isEmpty()) {
+                broadcast(OutboundMessage.of("Отключились: " + summarize(leftNames)));
+            }
+            int count = room.size();
+            broadcast(OutboundMessage.of(Frame.count(count)));
+            logger.info("Presence: +{} joined, -{} left, users: {}", joinedNames.size(), leftNames.size(), count);
+        } catch (RuntimeException e) {
+            logger.error("Error sending presence summary: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Формирует список имён для сводки, перечисляя не больше {@value #MAX_LISTED_NAMES} из них.
+     *
+     * @param names Имена пользователей.
+     * @return Строка вида {@code a, b, c и ещё 5}.
+     */
+    private static String summarize(List<String> names) {
+        String listed = String.join(", ", names.subList(0, Math.min(names.size(), MAX_LISTED_NAMES)));
+        int rest = names.size() - MAX_LISTED_NAMES;
+        return rest > 0 ? listed + " и ещё " + rest : listed;
+    }
+
+    /**
+     * Рассылает сообщение участникам комнаты на этом узле.
+     *
+     * @param message Сообщение.
+     */
+    private void broadcast(OutboundMessage message) {
+        room.broadcast(message, null);
+    }
+
+    /**
+     * Рассылает текущее количество пользователей и записывает его в лог.
+     */
+    private void broadcastCount() {
+        OutboundMessage userCountMessage = OutboundMessage.of(Frame.count(room.size()));
+        broadcast(userCountMessage);
+        logger.info("{}", userCountMessage.getText());
+    }
+
+    /**
+     * Запись списка подключенных пользователей в лог (уровень DEBUG: список собирается за O(n)
+     * на каждый вход и выход, поэтому только когда этот уровень включён).
+     */
+    private void printConnectedClients() {
+        if (logger.isDebugEnabled()) {
+            logger.debug("List of connected users: {}", String.join(", ", room.usernames()));
+        }
+    }
+}
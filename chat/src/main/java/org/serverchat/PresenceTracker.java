@@ -0,0 +1,106 @@
+package org.serverchat;
+
+import org.protocolchat.Frame;
+import org.protocolchat.Opcode;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Подписка на изменения списка пользователей.
+ * <p>
+ * Подписчик один раз получает полный список с номером версии ({@link Opcode#PRESENCE_SNAPSHOT}), а затем только
+ * изменения ({@link Opcode#PRESENCE_JOINED}, {@link Opcode#PRESENCE_LEFT}), каждое со следующим номером версии.
+ * Изменения и снимки выдаются под одной короткой блокировкой: внутри неё сообщения только ставятся в очереди
+ * подписчиков, поэтому каждый подписчик получает изменения строго по порядку версий и без пропусков.
+ * </p>
+ *
+ * <p>Переменные класса:</p>
+ * <ul>
+ *   <li>{@code lock} — Блокировка, упорядочивающая изменения и снимки.</li>
+ *   <li>{@code members} — Имена подключенных пользователей в порядке подключения.</li>
+ *   <li>{@code subscribers} — Клиенты, подписанные на изменения.</li>
+ *   <li>{@code version} — Номер последнего изменения.</li>
+ * </ul>
+ */
+public class PresenceTracker {
+
+    private final Object lock = new Object();
+    private final Set<String> members = new LinkedHashSet<>();
+    private final Set<ClientHandler> subscribers = new LinkedHashSet<>();
+    private long version = 0;
+
+    /**
+     * Учитывает подключение пользователя и рассылает изменение подписчикам.
+     *
+     * @param username Имя пользователя.
+     */
+    public void joined(String username) {
+        publish(Opcode.PRESENCE_JOINED, username);
+    }
+
+    /**
+     * Учитывает отключение пользователя и рассылает изменение подписчикам.
+     *
+     * @param username Имя пользователя.
+     */
+    public void left(String username) {
+        publish(Opcode.PRESENCE_LEFT, username);
+    }
+
+    /**
+     * Подписывает клиента и отправляет ему полный список пользователей.
+     * Повторная подписка отправляет новый снимок (используется клиентом для восстановления после пропуска версии).
+     *
+     * @param client Клиент-подписчик.
+     */
+    public void subscribe(ClientHandler client) {
+        boolean isDelivered;
+        synchronized (lock) {
+            subscribers.add(client);
+            Frame snapshot = Frame.presenceSnapshot(version, List.copyOf(members));
+            isDelivered = client.offerMessage(OutboundMessage.of(snapshot));
+        }
+        if (!isDelivered) {
+            client.disconnectSlowConsumer();
+        }
+    }
+
+    /**
+     * Отменяет подписку клиента.
+     *
+     * @param client Клиент-подписчик.
+     */
+    public void unsubscribe(ClientHandler client) {
+        synchronized (lock) {
+            subscribers.remove(client);
+        }
+    }
+
+    /**
+     * Применяет изменение и ставит его в очереди всех подписчиков.
+     * Подписчики с переполненной очередью отключаются уже после выхода из блокировки.
+     *
+     * @param opcode Вид изменения.
+     * @param username Имя пользователя.
+     */
+    private void publish(Opcode opcode, String username) {
+        List<ClientHandler> overflowed = new ArrayList<>();
+        synchronized (lock) {
+            boolean isChanged = opcode == Opcode.PRESENCE_JOINED ? members.add(username) : members.remove(username);
+            if (!isChanged) {
+                return;
+            }
+            version++;
+            OutboundMessage change = OutboundMessage.of(Frame.presenceChange(opcode, version, username));
+            for (ClientHandler subscriber : subscribers) {
+                if (!subscriber.offerMessage(change)) {
+                    overflowed.add(subscriber);
+                }
+            }
+        }
+        overflowed.forEach(ClientHandler::disconnectSlowConsumer);
+    }
+}
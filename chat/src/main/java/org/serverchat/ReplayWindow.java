@@ -0,0 +1,170 @@
+package org.serverchat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Окно повтора: последние сообщения комнаты с порядковыми номерами сервера.
+ * <p>
+ * Каждое сообщение комнаты получает следующий номер из общего для сервера счётчика, поэтому номера растут
+ * во всех комнатах, а номер, однажды выданный, не повторяется и после удаления и повторного создания комнаты.
+ * Счётчик начинается со времени запуска сервера, сдвинутого на 20 бит, поэтому номера продолжают расти
+ * и после перезапуска. Счётчики разных узлов кластера независимы, поэтому номер имеет смысл только вместе
+ * с идентификатором узла ({@link ClusterNode#getNodeId()}). Клиент, восстанавливающий сессию, сообщает номер последнего полученного сообщения
+ * и получает из окна только более новые; если часть нужных сообщений уже вытеснена из окна,
+ * {@link #covers(long)} возвращает {@code false}. Новое окно покрывает любой номер, выданный этим процессом
+ * сервера: комната, созданная заново, ещё не разослала ни одного сообщения, которое можно было пропустить.
+ * Номера, выданные до запуска процесса, окно не покрывает: сообщения до перезапуска в нём отсутствуют. Вместе с сообщением хранятся имя автора и идентификатор,
+ * назначенный клиентом, чтобы повторно отправленное после разрыва сообщение не было разослано дважды;
+ * для поиска по ним окно ведёт индекс, из которого сообщение удаляется вместе с вытеснением из окна.
+ * Окно не потокобезопасно: его защищает блокировка комнаты ({@link Room}).
+ * </p>
+ *
+ * <p>Переменные класса:</p>
+ * <ul>
+ *   <li>{@code CAPACITY_PROPERTY} — Системное свойство для числа сообщений в окне каждой комнаты.</li>
+ *   <li>{@code DEFAULT_CAPACITY} — Число сообщений в окне по умолчанию.</li>
+ *   <li>{@code CAPACITY} — Число сообщений в окне.</li>
+ *   <li>{@code FIRST_SEQUENCE} — Последний номер, выданный до запуска процесса сервера.</li>
+ *   <li>{@code lastSequence} — Последний выданный номер сообщения.</li>
+ *   <li>{@code sequences} — Номера сообщений (кольцевой буфер).</li>
+ *   <li>{@code authors} — Нормализованные имена авторов или {@code null} для сообщений без автора на этом узле.</li>
+ *   <li>{@code clientIds} — Идентификаторы, назначенные клиентами, или {@code null}.</li>
+ *   <li>{@code messages} — Закодированные сообщения.</li>
+ *   <li>{@code identified} — Номера сообщений в окне по автору и идентификатору, назначенному клиентом.</li>
+ *   <li>{@code head} — Позиция самого старого сообщения.</li>
+ *   <li>{@code size} — Число сообщений в окне.</li>
+ *   <li>{@code floor} — Номер, начиная с которого (не включая его) окно хранит все сообщения комнаты.</li>
+ * </ul>
+ */
+public class ReplayWindow {
+
+    public static final String CAPACITY_PROPERTY = "chat.server.replayWindow";
+    public static final int DEFAULT_CAPACITY = 1000;
+    static final int CAPACITY = Math.max(1, Integer.getInteger(CAPACITY_PROPERTY, DEFAULT_CAPACITY));
+
+    private static final long FIRST_SEQUENCE = System.currentTimeMillis() << 20;
+    private static final AtomicLong lastSequence = new AtomicLong(FIRST_SEQUENCE);
+
+    private final long[] sequences;
+    private final String[] authors;
+    private final String[] clientIds;
+    private final OutboundMessage[] messages;
+    private final Map<ClientMessage, Long> identified = new HashMap<>();
+    private int head = 0;
+    private int size = 0;
+    private long floor;
+
+    /**
+     * Создаёт пустое окно, которое покрывает все номера, выданные с запуска процесса сервера.
+     *
+     * @param capacity Наибольшее число хранимых сообщений.
+     */
+    public ReplayWindow(int capacity) {
+        this.sequences = new long[capacity];
+        this.authors = new String[capacity];
+        this.clientIds = new String[capacity];
+        this.messages = new OutboundMessage[capacity];
+        this.floor = FIRST_SEQUENCE;
+    }
+
+    /**
+     * Выдаёт следующий номер сообщения.
+     *
+     * @return Номер, больший всех выданных ранее.
+     */
+    static long nextSequence() {
+        return lastSequence.incrementAndGet();
+    }
+
+    /**
+     * Возвращает последний выданный номер сообщения.
+     *
+     * @return Номер сообщения.
+     */
+    static long lastSequence() {
+        return lastSequence.get();
+    }
+
+    /**
+     * Добавляет сообщение, вытесняя самое старое, если окно заполнено.
+     *
+     * @param sequence Номер сообщения.
+     * @param author Имя автора или {@code null}.
+     * @param clientId Идентификатор, назначенный клиентом, или {@code null}.
+     * @param message Закодированное сообщение.
+     */
+    public void add(long sequence, String author, String clientId, OutboundMessage message) {
+        if (size == messages.length) {
+            floor = sequences[head];
+            if (clientIds[head] != null) {
+                identified.remove(new ClientMessage(authors[head], clientIds[head]), sequences[head]);
+            }
+            messages[head] = null;
+            head = (head + 1) % messages.length;
+            size--;
+        }
+        int index = (head + size) % messages.length;
+        sequences[index] = sequence;
+        authors[index] = author == null ? null : ClientRegistry.normalize(author);
+        clientIds[index] = clientId;
+        messages[index] = message;
+        size++;
+        if (author != null && clientId != null) {
+            identified.put(new ClientMessage(authors[index], clientId), sequence);
+        }
+    }
+
+    /**
+     * Ищет сообщение автора с идентификатором, назначенным клиентом.
+     *
+     * @param author Имя автора.
+     * @param clientId Идентификатор сообщения.
+     * @return Номер сообщения или {@code -1}, если такого сообщения в окне нет.
+     */
+    public long find(String author, String clientId) {
+        Long sequence = identified.get(new ClientMessage(ClientRegistry.normalize(author), clientId));
+        return sequence == null ? -1 : sequence;
+    }
+
+    /**
+     * Проверяет, хранит ли окно все сообщения с номерами больше заданного.
+     *
+     * @param after Номер последнего полученного клиентом сообщения.
+     * @return {@code false}, если часть таких сообщений уже вытеснена или разослана до запуска процесса сервера.
+     */
+    public boolean covers(long after) {
+        return after >= floor;
+    }
+
+    /**
+     * Возвращает сообщения с номерами больше заданного в порядке номеров.
+     *
+     * @param after Номер последнего полученного клиентом сообщения.
+     * @param excludedAuthor Автор, собственные сообщения которого не возвращаются.
+     * @return Сообщения для повторной отправки.
+     */
+    public List<OutboundMessage> since(long after, String excludedAuthor) {
+        String excluded = ClientRegistry.normalize(excludedAuthor);
+        List<OutboundMessage> missed = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            int index = (head + i) % messages.length;
+            if (sequences[index] > after && !excluded.equals(authors[index])) {
+                missed.add(messages[index]);
+            }
+        }
+        return missed;
+    }
+
+    /**
+     * Ключ индекса сообщений с идентификатором, назначенным клиентом.
+     *
+     * @param author Нормализованное имя автора.
+     * @param clientId Идентификатор сообщения.
+     */
+    private record ClientMessage(String author, String clientId) {
+    }
+}
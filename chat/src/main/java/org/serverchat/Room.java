@@ -0,0 +1,321 @@
+package org.serverchat;
+
+import org.protocolchat.Frame;
+import org.protocolchat.Opcode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Комната чата: участники, их присутствие и рассылка только участникам.
+ * <p>
+ * Сообщения комнаты обходят только её участников, поэтому стоимость рассылки зависит от размера комнаты,
+ * а не от числа клиентов на сервере. Список участников, подписка на присутствие и уведомления
+ * о подключениях у каждой комнаты свои. В кластере комната знает и участников на других узлах
+ * ({@link ClusterNode}): они учитываются в списке и количестве, а сообщения им доставляют их узлы.
+ * </p>
+ * <p>
+ * Сообщения чата ({@link #deliver(String, String, String, ClientHandler)}) нумеруются и сохраняются в окне повтора
+ * ({@link ReplayWindow}). Под блокировкой комнаты, под которой участники и входят в комнату, сообщению только
+ * выдаётся номер, оно добавляется в окно повтора и вместе со снимком участников ставится в очередь рассылки.
+ * Рассылку по снимкам ведёт вне блокировки один поток за раз, в порядке номеров, поэтому рассылка не задерживает
+ * вход и выход участников, а каждый участник получает сообщения строго по возрастанию номеров.
+ * Всё, что было разослано до входа участника, он может получить из окна повтора без пропусков и повторов.
+ * Получатели с переполненной очередью отключаются после рассылки.
+ * </p>
+ *
+ * <p>Переменные класса:</p>
+ * <ul>
+ *   <li>{@code MISSED_NOTICE} — Уведомление о том, что часть сообщений за время разрыва могла быть пропущена.</li>
+ *   <li>{@code name} — Имя комнаты в том виде, в каком её создали.</li>
+ *   <li>{@code members} — Участники комнаты на этом узле.</li>
+ *   <li>{@code remoteMembers} — Участники комнаты на других узлах кластера: нормализованное имя → имя.</li>
+ *   <li>{@code presence} — Подписка на изменения списка участников.</li>
+ *   <li>{@code notices} — Уведомления о входе и выходе участников.</li>
+ *   <li>{@code replay} — Последние сообщения комнаты для клиентов, восстанавливающих сессию.</li>
+ *   <li>{@code dispatches} — Пронумерованные сообщения, ожидающие рассылки, в порядке номеров.</li>
+ *   <li>{@code isDispatching} — Флаг, что какой-то поток уже рассылает сообщения из {@code dispatches}.</li>
+ *   <li>{@code isClosed} — Флаг, что пустая комната удалена из {@link RoomRegistry} и больше не принимает участников.</li>
+ * </ul>
+ */
+public final class Room {
+
+    static final String MISSED_NOTICE = "Часть сообщений комнаты за время разрыва могла быть пропущена";
+
+    private final String name;
+    private final ClientRegistry members = new ClientRegistry();
+    private final Map<String, String> remoteMembers = new ConcurrentHashMap<>();
+    private final PresenceTracker presence = new PresenceTracker();
+    private final PresenceAggregator notices;
+    private final ReplayWindow replay = new ReplayWindow(ReplayWindow.CAPACITY);
+    private final Queue<Dispatch> dispatches = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean isDispatching = new AtomicBoolean(false);
+    private boolean isClosed = false;
+
+    /**
+     * Создаёт пустую комнату.
+     *
+     * @param name Имя комнаты.
+     * @param timer Планировщик сводок присутствия.
+     */
+    Room(String name, ScheduledExecutorService timer) {
+        this.name = name;
+        this.notices = new PresenceAggregator(this, timer);
+    }
+
+    /**
+     * Добавляет участника, если комната ещё не удалена, и ставит в его очередь кадр {@link Opcode#ROOM}.
+     * Клиенту с нумерацией сообщений ({@link WireFormat#SEQUENCED}) вслед за ним отправляются сообщения,
+     * пропущенные во время разрыва (если клиент восстанавливает сессию), и номер последнего сообщения,
+     * разосланного до его входа, вместе с идентификатором узла, который выдаёт номера ({@link Opcode#SEQUENCE}).
+     *
+     * @param client Клиент с заполненным именем пользователя.
+     * Если в комнате уже есть участник с тем же именем (прежнее соединение пользователя ещё не вышло),
+     * клиент не добавляется и кадры ему не ставятся.
+     *
+     * @param client Клиент с заполненным именем пользователя.
+     * @param resumeAfter Номер последнего сообщения комнаты, полученного клиентом до разрыва,
+     *                    или отрицательное число, если пропущенные сообщения отправлять не нужно.
+     * @return Результат входа.
+     */
+    Admission add(ClientHandler client, long resumeAfter) {
+        List<OutboundMessage> entry = new ArrayList<>();
+        entry.add(OutboundMessage.of(Frame.of(Opcode.ROOM, name)));
+        boolean isDelivered = true;
+        synchronized (this) {
+            if (isClosed) {
+                return Admission.CLOSED;
+            }
+            if (!members.register(client)) {
+                return Admission.NAME_TAKEN;
+            }
+            if (client.transport.getWireFormat() == WireFormat.SEQUENCED) {
+                if (resumeAfter >= 0) {
+                    if (!replay.covers(resumeAfter)) {
+                        entry.add(OutboundMessage.of(MISSED_NOTICE));
+                    }
+                    entry.addAll(replay.since(resumeAfter, client.username));
+                }
+                entry.add(OutboundMessage.of(Frame.sequence(ReplayWindow.lastSequence(), ClientHandler.getNodeId())));
+            }
+            for (OutboundMessage message : entry) {
+                isDelivered &= client.offerMessage(message);
+            }
+        }
+        if (!isDelivered) {
+            client.disconnectSlowConsumer();
+        }
+        return Admission.JOINED;
+    }
+
+    /**
+     * Удаляет участника.
+     *
+     * @param client Клиент.
+     * @return {@code true}, если клиент был участником.
+     */
+    synchronized boolean remove(ClientHandler client) {
+        return members.remove(client);
+    }
+
+    /**
+     * Добавляет участника с другого узла, если комната ещё не удалена.
+     *
+     * @param username Имя пользователя.
+     * @return {@code false}, если комната уже удалена и нужно войти в новую.
+     */
+    synchronized boolean addRemote(String username) {
+        if (isClosed) {
+            return false;
+        }
+        remoteMembers.put(ClientRegistry.normalize(username), username);
+        return true;
+    }
+
+    /**
+     * Удаляет участника с другого узла.
+     *
+     * @param username Имя пользователя.
+     * @return {@code true}, если пользователь был участником.
+     */
+    synchronized boolean removeRemote(String username) {
+        return remoteMembers.remove(ClientRegistry.normalize(username)) != null;
+    }
+
+    /**
+     * Помечает комнату удалённой, если в ней не осталось участников.
+     *
+     * @return {@code true}, если комната пуста и удалена.
+     */
+    synchronized boolean closeIfEmpty() {
+        if (size() == 0) {
+            isClosed = true;
+        }
+        return isClosed;
+    }
+
+    /**
+     * Отправка сообщения всем участникам комнаты, кроме указанного.
+     * Рассылка идёт по снимку участников, сообщение кодируется один раз для каждого протокола.
+     * Использование функционала StreamAPI.
+     *
+     * @param message Сообщение для отправки.
+     * @param excludedClient Клиент, которому не нужно отправлять сообщение, или {@code null}.
+     */
+    public void broadcast(OutboundMessage message, ClientHandler excludedClient) {
+        long start = System.nanoTime();
+        Arrays.stream(members.snapshot())
+                .filter(client -> client != excludedClient && !client.isClosed)
+                .forEach(client -> client.sendMessage(message));
+        ServerMetrics.recordBroadcast(System.nanoTime() - start);
+    }
+
+    /**
+     * Нумерует сообщение чата, сохраняет его в окне повтора и рассылает участникам комнаты, кроме отправителя.
+     * Отправителю сообщения с идентификатором клиента вместо него отправляется подтверждение {@link Opcode#CHAT_ACK},
+     * которое встаёт в его очередь после всех сообщений с меньшими номерами.
+     *
+     * @param text Текст сообщения.
+     * @param author Имя автора или {@code null}, если автор подключен к другому узлу.
+     * @param clientId Идентификатор, назначенный клиентом, или {@code null}.
+     * @param sender Клиент, которому не нужно отправлять сообщение, или {@code null}.
+     */
+    public void deliver(String text, String author, String clientId, ClientHandler sender) {
+        long start = System.nanoTime();
+        synchronized (this) {
+            long sequence = ReplayWindow.nextSequence();
+            OutboundMessage message = OutboundMessage.sequenced(sequence, text);
+            replay.add(sequence, author, clientId, message);
+            OutboundMessage ack = sender == null || clientId == null ? null
+                    : OutboundMessage.of(Frame.fields(Opcode.CHAT_ACK, clientId, Long.toString(sequence)));
+            dispatches.add(new Dispatch(members.snapshot(), message, sender, ack));
+        }
+        dispatch();
+        ServerMetrics.recordBroadcast(System.nanoTime() - start);
+    }
+
+    /**
+     * Рассылает сообщения из очереди рассылки, если этим не занят другой поток.
+     * Поток, застав рассылку занятой, не ждёт: его сообщение разошлёт поток, который её ведёт.
+     */
+    private void dispatch() {
+        // Повторяем, если сообщение добавили после опустошения очереди, а флаг ещё не был снят
+        while (!dispatches.isEmpty() && isDispatching.compareAndSet(false, true)) {
+            List<ClientHandler> overflowed = new ArrayList<>();
+            try {
+                Dispatch next;
+                while ((next = dispatches.poll()) != null) {
+                    for (ClientHandler client : next.recipients()) {
+                        if (client != next.sender() && !client.isClosed && !client.offerMessage(next.message())) {
+                            overflowed.add(client);
+                        }
+                    }
+                    if (next.ack() != null && !next.sender().offerMessage(next.ack())) {
+                        overflowed.add(next.sender());
+                    }
+                }
+            } finally {
+                isDispatching.set(false);
+            }
+            overflowed.forEach(ClientHandler::disconnectSlowConsumer);
+        }
+    }
+
+    /**
+     * Ищет в окне повтора сообщение, уже отправленное автором с тем же идентификатором.
+     *
+     * @param author Имя автора.
+     * @param clientId Идентификатор, назначенный клиентом.
+     * @return Номер сообщения или {@code -1}, если сообщение ещё не рассылалось.
+     */
+    public synchronized long findSequence(String author, String clientId) {
+        return replay.find(author, clientId);
+    }
+
+    /**
+     * Возвращает имя комнаты.
+     *
+     * @return Имя комнаты.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Возвращает число участников комнаты на всех узлах.
+     *
+     * @return Количество участников.
+     */
+    public int size() {
+        return members.size() + remoteMembers.size();
+    }
+
+    /**
+     * Возвращает имена участников комнаты: сначала на этом узле, затем на других.
+     *
+     * @return Список имён.
+     */
+    public List<String> usernames() {
+        List<String> usernames = new ArrayList<>(members.usernames());
+        usernames.addAll(remoteMembers.values());
+        return usernames;
+    }
+
+    /**
+     * Возвращает участников комнаты на этом узле.
+     *
+     * @return Реестр участников.
+     */
+    public ClientRegistry getMembers() {
+        return members;
+    }
+
+    /**
+     * Возвращает подписку на изменения списка участников.
+     *
+     * @return Подписка на присутствие.
+     */
+    public PresenceTracker getPresence() {
+        return presence;
+    }
+
+    /**
+     * Возвращает уведомления о входе и выходе участников.
+     *
+     * @return Уведомления комнаты.
+     */
+    public PresenceAggregator getNotices() {
+        return notices;
+    }
+
+    /**
+     * Пронумерованное сообщение, ожидающее рассылки.
+     *
+     * @param recipients Участники комнаты в момент выдачи номера.
+     * @param message Сообщение.
+     * @param sender Отправитель, которому сообщение не рассылается, или {@code null}.
+     * @param ack Подтверждение для отправителя или {@code null}.
+     */
+    private record Dispatch(ClientHandler[] recipients, OutboundMessage message, ClientHandler sender,
+                            OutboundMessage ack) {
+    }
+
+    /**
+     * Результат входа участника в комнату.
+     */
+    enum Admission {
+        /** Клиент стал участником комнаты. */
+        JOINED,
+        /** Комната уже удалена, нужно войти в новую. */
+        CLOSED,
+        /** В комнате уже есть участник с таким именем. */
+        NAME_TAKEN
+    }
+}
@@ -0,0 +1,161 @@
+package org.serverchat;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Реестр комнат чата.
+ * <p>
+ * Комната создаётся при первом входе в неё и удаляется, когда из неё выходит последний участник
+ * (кроме комнаты по умолчанию {@value #DEFAULT_ROOM}, в которую попадает каждый клиент после регистрации).
+ * Имена комнат сравниваются без учёта регистра, как имена пользователей ({@link ClientRegistry#normalize(String)}).
+ * </p>
+ *
+ * <p>Переменные класса:</p>
+ * <ul>
+ *   <li>{@code DEFAULT_ROOM} — Имя комнаты по умолчанию.</li>
+ *   <li>{@code MAX_NAME_LENGTH} — Максимальная длина имени комнаты.</li>
+ *   <li>{@code rooms} — Комнаты по нормализованному имени.</li>
+ *   <li>{@code defaultRoom} — Комната по умолчанию (никогда не удаляется).</li>
+ *   <li>{@code timer} — Планировщик сводок присутствия для комнат.</li>
+ * </ul>
+ */
+public class RoomRegistry {
+
+    public static final String DEFAULT_ROOM = "general";
+    public static final int MAX_NAME_LENGTH = 32;
+
+    private final ConcurrentMap<String, Room> rooms = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer;
+    private final Room defaultRoom;
+
+    /**
+     * Создаёт реестр с комнатой по умолчанию.
+     *
+     * @param timer Планировщик сводок присутствия для комнат.
+     */
+    public RoomRegistry(ScheduledExecutorService timer) {
+        this.timer = timer;
+        this.defaultRoom = new Room(DEFAULT_ROOM, timer);
+        rooms.put(ClientRegistry.normalize(DEFAULT_ROOM), defaultRoom);
+    }
+
+    /**
+     * Проверяет имя комнаты: непустое, без пробельных символов и не длиннее {@value #MAX_NAME_LENGTH} символов.
+     *
+     * @param name Имя комнаты.
+     * @return {@code true}, если имя допустимо.
+     */
+    public static boolean isValidName(String name) {
+        return name != null && !name.isEmpty() && name.length() <= MAX_NAME_LENGTH
+                && name.codePoints().noneMatch(Character::isWhitespace);
+    }
+
+    /**
+     * Добавляет клиента в комнату, создавая её при необходимости.
+     * Если комната была удалена между поиском и входом, создаётся новая.
+     *
+     * @param client Клиент с заполненным именем пользователя.
+     * @param name Имя комнаты.
+     * @param resumeAfter Номер последнего сообщения комнаты, полученного клиентом до разрыва соединения,
+     *                    или отрицательное число (см. {@link Room#add(ClientHandler, long)}).
+     * @return Комната, участником которой стал клиент, или {@code null}, если в комнате уже есть участник
+     *         с таким именем (прежнее соединение пользователя ещё не вышло из неё).
+     */
+    public Room join(ClientHandler client, String name, long resumeAfter) {
+        String key = ClientRegistry.normalize(name);
+        while (true) {
+            Room room = rooms.computeIfAbsent(key, ignored -> new Room(name, timer));
+            switch (room.add(client, resumeAfter)) {
+                case JOINED -> {
+                    return room;
+                }
+                case NAME_TAKEN -> {
+                    return null;
+                }
+                case CLOSED -> rooms.remove(key, room);
+            }
+        }
+    }
+
+    /**
+     * Удаляет клиента из комнаты и удаляет опустевшую комнату (кроме комнаты по умолчанию).
+     *
+     * @param client Клиент.
+     * @param room Комната клиента.
+     * @return {@code true}, если клиент был участником комнаты.
+     */
+    public boolean leave(ClientHandler client, Room room) {
+        boolean wasMember = room.remove(client);
+        if (!isDefault(room) && room.closeIfEmpty()) {
+            rooms.remove(ClientRegistry.normalize(room.getName()), room);
+        }
+        return wasMember;
+    }
+
+    /**
+     * Добавляет в комнату участника с другого узла кластера, создавая комнату при необходимости.
+     *
+     * @param username Имя пользователя.
+     * @param name Имя комнаты.
+     * @return Комната, участником которой стал пользователь.
+     */
+    public Room joinRemote(String username, String name) {
+        String key = ClientRegistry.normalize(name);
+        while (true) {
+            Room room = rooms.computeIfAbsent(key, ignored -> new Room(name, timer));
+            if (room.addRemote(username)) {
+                return room;
+            }
+            rooms.remove(key, room);
+        }
+    }
+
+    /**
+     * Удаляет из комнаты участника с другого узла и удаляет опустевшую комнату (кроме комнаты по умолчанию).
+     *
+     * @param username Имя пользователя.
+     * @param name Имя комнаты.
+     * @return Комната, если пользователь был её участником; иначе {@code null}.
+     */
+    public Room leaveRemote(String username, String name) {
+        Room room = rooms.get(ClientRegistry.normalize(name));
+        if (room == null || !room.removeRemote(username)) {
+            return null;
+        }
+        if (!isDefault(room) && room.closeIfEmpty()) {
+            rooms.remove(ClientRegistry.normalize(room.getName()), room);
+        }
+        return room;
+    }
+
+    /**
+     * Ищет комнату по имени без учёта регистра.
+     *
+     * @param name Имя комнаты.
+     * @return Комната или {@code null}, если её нет.
+     */
+    public Room find(String name) {
+        return rooms.get(ClientRegistry.normalize(name));
+    }
+
+    /**
+     * Проверяет, является ли комната комнатой по умолчанию.
+     *
+     * @param room Комната.
+     * @return {@code true} для комнаты {@value #DEFAULT_ROOM}.
+     */
+    public boolean isDefault(Room room) {
+        return room == defaultRoom;
+    }
+
+    /**
+     * Возвращает число комнат.
+     *
+     * @return Количество комнат.
+     */
+    public int size() {
+        return rooms.size();
+    }
+}
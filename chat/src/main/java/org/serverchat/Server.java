@@ -1,34 +1,62 @@
 package org.serverchat;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.protocolchat.Frame;
+import org.protocolchat.Opcode;
 import org.serverchat.exceptions.*;
 
 import javax.net.ssl.*;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.security.KeyStore;
-import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Класс {@code Server} предназначен для запуска SSL-сервера чата.
  * Он принимает подключения клиентов и обрабатывает их.
- * Сервер работает на порту 8040 и IP-адресе 127.0.0.1.
+ * Сервер работает на порту 8040 (свойство {@value #PORT_PROPERTY}) и IP-адресе 127.0.0.1.
+ * Режим работы (блокирующий или неблокирующий) выбирается при запуске, см. {@link ServerEngine}.
+ * Несколько серверов могут работать как один чат, см. {@link ClusterNode}.
+ * Сообщения комнат сохраняются в журнал, см. {@link MessageJournal}.
  * <p>
  * Переменные:
  * <ul>
  *     <li>{@code serverSocket} — сокет для SSL-соединений, который используется для прослушивания входящих соединений.</li>
+ *     <li>{@code nioServer} — неблокирующий сервер, используемый в режиме {@link ServerEngine#NIO}.</li>
+ *     <li>{@code engine} — выбранный режим работы сервера.</li>
+ *     <li>{@code clientCounter} — счётчик подключений для имён виртуальных потоков.</li>
+ *     <li>{@code clusterNode} — узел кластера (без соединений, если кластер не настроен).</li>
+ *     <li>{@code journal} — журнал сообщений комнат.</li>
+ *     <li>{@code PORT_PROPERTY} — системное свойство для порта сервера.</li>
  *     <li>{@code PORT} — порт, на котором работает сервер (по умолчанию 8040).</li>
  *     <li>{@code IP} — IP-адрес, на котором работает сервер (по умолчанию 127.0.0.1).</li>
  *     <li>{@code isServerRunning} — флаг, указывающий на состояние сервера. Если сервер работает, значение {@code true}; если остановлен, значение {@code false}.</li>
+ *     <li>{@code SESSION_CACHE_PROPERTY} — системное свойство для размера кэша TLS-сессий.</li>
+ *     <li>{@code SESSION_TIMEOUT_PROPERTY} — системное свойство для времени жизни TLS-сессий в секундах.</li>
+ *     <li>{@code logger} — логгер для записи действий и ошибок сервера.</li>
  * </ul>
  */
 public class Server {
 
+    private static final Logger logger = LogManager.getLogger(Server.class);
+
     public SSLServerSocket serverSocket;
-    private static final int PORT = 8040; // Порт сервера
+    private NioServer nioServer;
+    private final ServerEngine engine;
+    private long clientCounter = 0; // Номер для имени виртуального потока клиента
+    private ClusterNode clusterNode = ClusterNode.standalone();
+    private MessageJournal journal = MessageJournal.disabled();
+    public static final String PORT_PROPERTY = "chat.server.port";
+    private static final int PORT = Integer.getInteger(PORT_PROPERTY, 8040); // Порт сервера
     private static final String IP = "127.0.0.1"; // IP-адрес сервера
     private static boolean isServerRunning = false; // Флаг для проверки состояния сервера
+    public static final String SESSION_CACHE_PROPERTY = "chat.server.tlsSessionCacheSize";
+    public static final String SESSION_TIMEOUT_PROPERTY = "chat.server.tlsSessionTimeoutSeconds";
+    public static final int DEFAULT_SESSION_CACHE_SIZE = 20480;
+    public static final int DEFAULT_SESSION_TIMEOUT_SECONDS = 3600;
 
     /**
      * Точка входа в приложение для запуска сервера.
@@ -36,27 +64,64 @@ public class Server {
      * @param args Аргументы командной строки.
      */
     public static void main(String[] args) {
-        Server server = new Server();
+        Server server = args.length > 0 ? new Server(ServerEngine.parse(args[0])) : new Server();
         server.startServer();
     }
 
+    /**
+     * Создаёт сервер с режимом работы из системного свойства {@value ServerEngine#PROPERTY}.
+     */
+    public Server() {
+        this(ServerEngine.fromSystemProperty());
+    }
+
+    /**
+     * Создаёт сервер с указанным режимом работы.
+     *
+     * @param engine Режим работы сервера.
+     */
+    public Server(ServerEngine engine) {
+        this.engine = engine;
+    }
+
     /**
      * Метод для запуска сервера.
      * Настроить SSL, создать сокет и начать принимать подключения от клиентов.
+     * Если задано свойство {@value ClusterNode#PORT_PROPERTY}, сервер подключается к остальным узлам кластера.
      * Также регистрирует хук для остановки сервера при завершении работы программы.
      */
     public void startServer() {
         try {
             isServerRunning = true;
             SSLContext sslContext = setupSSLContext();
-            serverSocket = createServerSocket(sslContext);
+            journal = MessageJournal.fromSystemProperties();
+            journal.open();
+            ClientHandler.setJournal(journal);
+            ServerMetrics.get().start();
+            if (Integer.getInteger(ClusterNode.PORT_PROPERTY) != null) {
+                clusterNode = ClusterNode.fromSystemProperties(IP, setupClusterSSLContext());
+                ClientHandler.setCluster(clusterNode);
+                clusterNode.start();
+            }
 
-            System.out.println("The server is running IP: " + IP + ", and port: " + PORT);
+            if (engine == ServerEngine.NIO) {
+                nioServer = new NioServer(sslContext, new InetSocketAddress(InetAddress.getByName(IP), PORT));
+                nioServer.start();
+                logger.info("The server is running IP: {}, and port: {} (NIO, event loops: {})",
+                        IP, PORT, nioServer.getEventLoopCount());
+            } else {
+                serverSocket = createServerSocket(sslContext);
+                logger.info("The server is running IP: {}, and port: {} ({})", IP, PORT, engine);
+            }
 
             Runtime.getRuntime().addShutdownHook(new Thread(this::stopServer));
 
             while (isServerRunning) {
-                acceptClientConnection();
+                if (nioServer != null) {
+                    nioServer.acceptClientConnection();
+                } else {
+                    acceptClientConnection();
+                }
             }
         } catch (IOException | SSLConfigurationException | KeyStoreException | ClientConnectionException e) {
             handleServerError(e);
@@ -65,6 +130,10 @@ public class Server {
 
     /**
      * Метод для настройки SSL-контекста для сервера.
+     * Кэш сессий сервера позволяет переподключающимся клиентам возобновить TLS 1.3 сессию по билету (PSK)
+     * без полного рукопожатия. Размер кэша задаётся свойством {@value #SESSION_CACHE_PROPERTY}
+     * (по умолчанию {@value #DEFAULT_SESSION_CACHE_SIZE}, 0 — без ограничения), время жизни сессии —
+     * свойством {@value #SESSION_TIMEOUT_PROPERTY} (по умолчанию {@value #DEFAULT_SESSION_TIMEOUT_SECONDS} с).
      *
      * @return SSLContext настроенный для сервера.
      * @throws SSLConfigurationException При ошибке настройки SSL.
@@ -86,6 +155,10 @@ public class Server {
             kmf.init(keyStore, "xezzexserverkey".toCharArray());
             sslContext.init(kmf.getKeyManagers(), null, null);
 
+            SSLSessionContext sessionContext = sslContext.getServerSessionContext();
+            sessionContext.setSessionCacheSize(Integer.getInteger(SESSION_CACHE_PROPERTY, DEFAULT_SESSION_CACHE_SIZE));
+            sessionContext.setSessionTimeout(Integer.getInteger(SESSION_TIMEOUT_PROPERTY, DEFAULT_SESSION_TIMEOUT_SECONDS));
+
             return sslContext;
 
         } catch (Exception e) {
@@ -93,6 +166,37 @@ public class Server {
         }
     }
 
+    /**
+     * Метод для настройки SSL-контекста соединений между узлами кластера.
+     * Узлы предъявляют друг другу сертификат сервера и доверяют только ему.
+     *
+     * @return SSLContext для соединений между узлами.
+     * @throws SSLConfigurationException При ошибке настройки SSL.
+     */
+    public SSLContext setupClusterSSLContext() throws SSLConfigurationException {
+        try {
+            SSLContext sslContext = SSLContext.getInstance("TLSv1.3");
+            KeyStore keyStore = KeyStore.getInstance("JKS");
+
+            try (InputStream keyStoreInput = Server.class.getResourceAsStream("/serverkeystore.jks")) {
+                if (keyStoreInput == null) {
+                    throw new KeyStoreException("Failed to find keystore!");
+                }
+                keyStore.load(keyStoreInput, "xezzexserverkey".toCharArray());
+            }
+
+            KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            kmf.init(keyStore, "xezzexserverkey".toCharArray());
+            TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            tmf.init(keyStore);
+            sslContext.init(kmf.getKeyManagers(), tmf.getTrustManagers(), null);
+            return sslContext;
+
+        } catch (Exception e) {
+            throw new SSLConfigurationException("Cluster SSL setup error", e);
+        }
+    }
+
     /**
      * Создание SSL-сокета для сервера.
      *
@@ -119,9 +223,15 @@ public class Server {
             // Проверяем, что серверный сокет не закрыт перед ожиданием подключения
             if (serverSocket != null && !serverSocket.isClosed()) {
                 SSLSocket clientSocket = (SSLSocket) serverSocket.accept();
-                System.out.println("The client is connected: " + clientSocket.getInetAddress());
-                ClientHandler clientHandler = new ClientHandler(clientSocket);
-                new Thread(clientHandler).start();
+                ServerMetrics.recordAccepted();
+                logger.info("The client is connected: {}", clientSocket.getInetAddress());
+                if (engine == ServerEngine.VIRTUAL) {
+                    ClientHandler clientHandler = new ClientHandler(clientSocket, SocketTransport.VIRTUAL_WRITERS);
+                    Thread.ofVirtual().name("client-", clientCounter++).start(clientHandler);
+                } else {
+                    ClientHandler clientHandler = new ClientHandler(clientSocket, SocketTransport.PLATFORM_WRITERS);
+                    new Thread(clientHandler).start();
+                }
             }
         } catch (IOException e) {
             if (isServerRunning) {
@@ -137,27 +247,32 @@ public class Server {
     public void stopServer() {
         try {
             isServerRunning = false;
-            // Создаем копию списка подключенных клиентов для безопасного обхода
-            List<ClientHandler> clientsCopy;
-
-            synchronized (ClientHandler.getConnectedClients()) {
-                clientsCopy = new ArrayList<>(ClientHandler.getConnectedClients());
-            }
+            // Получаем снимок списка подключенных клиентов для безопасного обхода
+            List<ClientHandler> clientsCopy = ClientHandler.getConnectedClients();
 
+            OutboundMessage notice = OutboundMessage.of(Frame.of(Opcode.ERROR, "Разрыв соединения!"));
             for (ClientHandler client : clientsCopy) {
-                if (!client.clientSocket.isClosed()) {
-                    client.sendMessage("/error Разрыв соединения!");
+                if (!client.isClosed) {
+                    client.sendMessage(notice);
                     client.cleanupClientResources(false); // Закрываем соединения
                 }
             }
 
+            clusterNode.stop();
+            journal.close();
+            ServerMetrics.get().stop();
+
             // Закрываем серверный сокет
             if (serverSocket != null && !serverSocket.isClosed()) {
                 serverSocket.close();
-                System.out.println("Server stopped!");
+                logger.info("Server stopped!");
+            }
+            if (nioServer != null && nioServer.isOpen()) {
+                nioServer.stop();
+                logger.info("Server stopped!");
             }
         } catch (IOException e) {
-            System.err.println("Error while stopping server: " + e.getMessage());
+            logger.error("Error while stopping server: {}", e.getMessage());
         }
     }
 
@@ -170,6 +285,15 @@ public class Server {
         return isServerRunning;
     }
 
+    /**
+     * Возвращает порт, на котором работает сервер.
+     *
+     * @return Порт сервера.
+     */
+    public static int getPort() {
+        return PORT;
+    }
+
     /**
      * Обработка ошибок при запуске сервера.
      *
@@ -177,9 +301,9 @@ public class Server {
      */
     private void handleServerError(Exception e) {
         if (e instanceof java.net.BindException) {
-            System.err.println("Error: Port " + PORT + " already in use");
+            logger.warn("Error: Port {} already in use", PORT);
         } else {
-            System.err.println("Error starting server: " + e.getMessage());
+            logger.error("Error starting server: {}", e.getMessage());
         }
     }
 }
\ No newline at end of file
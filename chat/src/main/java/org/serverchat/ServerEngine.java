@@ -0,0 +1,53 @@
+package org.serverchat;
+
+/**
+ * Режим работы сервера, выбираемый при запуске.
+ * <p>
+ * Режим задаётся системным свойством {@code chat.server.engine} или первым аргументом командной строки
+ * {@link Server#main(String[])}. По умолчанию используется {@link #BLOCKING}.
+ * </p>
+ */
+public enum ServerEngine {
+
+    /** Блокирующие SSL-сокеты, отдельный поток на каждого клиента. */
+    BLOCKING,
+
+    /** Блокирующие SSL-сокеты, отдельный виртуальный поток на каждого клиента. */
+    VIRTUAL,
+
+    /** Неблокирующие каналы с {@code SSLEngine} и несколькими циклами событий (по одному на ядро). */
+    NIO;
+
+    /**
+     * Имя системного свойства для выбора режима.
+     */
+    public static final String PROPERTY = "chat.server.engine";
+
+    /**
+     * Определяет режим по строковому значению без учёта регистра.
+     *
+     * @param value Название режима (может быть {@code null}).
+     * @return Найденный режим или {@link #BLOCKING}, если значение не задано.
+     * @throws IllegalArgumentException если режим с таким названием не существует.
+     */
+    public static ServerEngine parse(String value) {
+        if (value == null || value.isBlank()) {
+            return BLOCKING;
+        }
+        for (ServerEngine engine : values()) {
+            if (engine.name().equalsIgnoreCase(value.trim())) {
+                return engine;
+            }
+        }
+        throw new IllegalArgumentException("Unknown server engine: " + value);
+    }
+
+    /**
+     * Определяет режим по системному свойству {@value #PROPERTY}.
+     *
+     * @return Выбранный режим работы сервера.
+     */
+    public static ServerEngine fromSystemProperty() {
+        return parse(System.getProperty(PROPERTY));
+    }
+}
@@ -0,0 +1,290 @@
+package org.serverchat;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Метрики сервера, доступные по JMX ({@value #OBJECT_NAME}) и в окне сервера.
+ * <p>
+ * Счётчики — {@link LongAdder}: каждый поток увеличивает свою ячейку, поэтому учёт на горячем пути
+ * (приём кадра, рассылка, сброс в сокет) не создаёт общей точки конкуренции между потоками клиентов
+ * и циклами событий. Сумма вычисляется только при чтении метрики. Сообщения и байты, записанные клиентам,
+ * берутся из {@link FlushStats}. Скорости сообщений пересчитывает раз в секунду поток {@code metrics-sampler},
+ * который работает, пока запущен сервер.
+ * </p>
+ *
+ * <p>Переменные класса:</p>
+ * <ul>
+ *   <li>{@code OBJECT_NAME} — Имя JMX-бина.</li>
+ *   <li>{@code INSTANCE} — Единственный экземпляр бина.</li>
+ *   <li>{@code acceptedConnections} — Число принятых подключений.</li>
+ *   <li>{@code closedConnections} — Число закрытых подключений.</li>
+ *   <li>{@code messagesIn} — Число кадров и строк, полученных от клиентов.</li>
+ *   <li>{@code kicks} — Число отключений командой {@code /kick}.</li>
+ *   <li>{@code handshakes} — Длительности TLS-рукопожатий.</li>
+ *   <li>{@code broadcasts} — Длительности рассылок по комнатам.</li>
+ *   <li>{@code sampler} — Поток пересчёта скоростей или {@code null}, если сервер не запущен.</li>
+ *   <li>{@code lastMessagesIn}, {@code lastMessagesOut} — Значения счётчиков при предыдущем пересчёте.</li>
+ *   <li>{@code messagesInPerSecond}, {@code messagesOutPerSecond} — Скорости за последнюю секунду.</li>
+ *   <li>{@code logger} — Логгер для записи действий и ошибок.</li>
+ * </ul>
+ */
+public final class ServerMetrics implements ServerMetricsMBean {
+
+    private static final Logger logger = LogManager.getLogger(ServerMetrics.class);
+
+    public static final String OBJECT_NAME = "org.serverchat:type=ServerMetrics";
+
+    private static final ServerMetrics INSTANCE = new ServerMetrics();
+
+    private static final LongAdder acceptedConnections = new LongAdder();
+    private static final LongAdder closedConnections = new LongAdder();
+    private static final LongAdder messagesIn = new LongAdder();
+    private static final LongAdder kicks = new LongAdder();
+    private static final LatencyHistogram handshakes = new LatencyHistogram();
+    private static final LatencyHistogram broadcasts = new LatencyHistogram();
+
+    private ScheduledExecutorService sampler;
+    private long lastMessagesIn = 0;
+    private long lastMessagesOut = 0;
+    private volatile double messagesInPerSecond = 0;
+    private volatile double messagesOutPerSecond = 0;
+
+    private ServerMetrics() {
+    }
+
+    /**
+     * Возвращает бин метрик.
+     *
+     * @return Бин метрик.
+     */
+    public static ServerMetrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Регистрирует бин в платформенном {@link MBeanServer} и запускает пересчёт скоростей.
+     */
+    public synchronized void start() {
+        if (sampler != null) {
+            return;
+        }
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!mBeanServer.isRegistered(name)) {
+                mBeanServer.registerMBean(this, name);
+            }
+        } catch (JMException e) {
+            logger.error("Error registering server metrics: {}", e.getMessage());
+        }
+        lastMessagesIn = messagesIn.sum();
+        lastMessagesOut = FlushStats.getMessageCount();
+        sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.scheduleAtFixedRate(this::sampleRates, 1, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Останавливает пересчёт скоростей и снимает бин с регистрации.
+     */
+    public synchronized void stop() {
+        if (sampler == null) {
+            return;
+        }
+        sampler.shutdownNow();
+        sampler = null;
+        messagesInPerSecond = 0;
+        messagesOutPerSecond = 0;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            // Бин не был зарегистрирован
+        }
+    }
+
+    /**
+     * Пересчитывает скорости сообщений за прошедшую секунду.
+     */
+    private synchronized void sampleRates() {
+        long in = messagesIn.sum();
+        long out = FlushStats.getMessageCount();
+        messagesInPerSecond = in - lastMessagesIn;
+        messagesOutPerSecond = out - lastMessagesOut;
+        lastMessagesIn = in;
+        lastMessagesOut = out;
+    }
+
+    /**
+     * Учитывает принятое подключение.
+     */
+    public static void recordAccepted() {
+        acceptedConnections.increment();
+    }
+
+    /**
+     * Учитывает закрытое подключение. Вызывается ровно один раз для каждого принятого подключения.
+     */
+    public static void recordClosed() {
+        closedConnections.increment();
+    }
+
+    /**
+     * Учитывает завершённое TLS-рукопожатие.
+     *
+     * @param nanos Длительность рукопожатия в наносекундах.
+     */
+    public static void recordHandshake(long nanos) {
+        handshakes.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    /**
+     * Учитывает кадр или строку, полученные от клиента.
+     */
+    public static void recordMessageIn() {
+        messagesIn.increment();
+    }
+
+    /**
+     * Учитывает рассылку по комнате.
+     *
+     * @param nanos Длительность рассылки в наносекундах.
+     */
+    public static void recordBroadcast(long nanos) {
+        broadcasts.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    /**
+     * Учитывает отключение пользователя командой {@code /kick}.
+     */
+    public static void recordKick() {
+        kicks.increment();
+    }
+
+    @Override
+    public long getAcceptedConnections() {
+        return acceptedConnections.sum();
+    }
+
+    @Override
+    public long getActiveConnections() {
+        // Закрытия читаются первыми: подключение, закрытое между чтениями, не даст отрицательного значения
+        long closed = closedConnections.sum();
+        return Math.max(0, acceptedConnections.sum() - closed);
+    }
+
+    @Override
+    public int getConnectedUsers() {
+        return ClientHandler.getConnectedClients().size();
+    }
+
+    @Override
+    public long getHandshakeCount() {
+        return handshakes.getCount();
+    }
+
+    @Override
+    public double getHandshakeMeanMicros() {
+        return handshakes.getMean();
+    }
+
+    @Override
+    public long getHandshakeP99Micros() {
+        return handshakes.getPercentile(0.99);
+    }
+
+    @Override
+    public long getMessagesIn() {
+        return messagesIn.sum();
+    }
+
+    @Override
+    public long getMessagesOut() {
+        return FlushStats.getMessageCount();
+    }
+
+    @Override
+    public double getMessagesInPerSecond() {
+        return messagesInPerSecond;
+    }
+
+    @Override
+    public double getMessagesOutPerSecond() {
+        return messagesOutPerSecond;
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return FlushStats.getByteCount();
+    }
+
+    @Override
+    public long getFlushCount() {
+        return FlushStats.getFlushCount();
+    }
+
+    @Override
+    public double getAverageMessagesPerFlush() {
+        return FlushStats.getAverageMessagesPerFlush();
+    }
+
+    @Override
+    public double getAverageBytesPerFlush() {
+        return FlushStats.getAverageBytesPerFlush();
+    }
+
+    @Override
+    public long getBroadcastCount() {
+        return broadcasts.getCount();
+    }
+
+    @Override
+    public long getBroadcastP50Micros() {
+        return broadcasts.getPercentile(0.5);
+    }
+
+    @Override
+    public long getBroadcastP99Micros() {
+        return broadcasts.getPercentile(0.99);
+    }
+
+    @Override
+    public long getBroadcastMaxMicros() {
+        return broadcasts.getMax();
+    }
+
+    @Override
+    public long getOutboundQueueDepth() {
+        long depth = 0;
+        for (ClientHandler client : ClientHandler.getConnectedClients()) {
+            depth += client.getOutboundQueueDepth();
+        }
+        return depth;
+    }
+
+    @Override
+    public int getMaxOutboundQueueDepth() {
+        int depth = 0;
+        for (ClientHandler client : ClientHandler.getConnectedClients()) {
+            depth = Math.max(depth, client.getOutboundQueueDepth());
+        }
+        return depth;
+    }
+
+    @Override
+    public long getKicks() {
+        return kicks.sum();
+    }
+}
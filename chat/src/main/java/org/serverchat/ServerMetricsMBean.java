@@ -0,0 +1,114 @@
+package org.serverchat;
+
+/**
+ * Атрибуты JMX-бина {@link ServerMetrics} ({@value ServerMetrics#OBJECT_NAME}).
+ * Счётчики накапливаются с запуска сервера, скорости пересчитываются раз в секунду,
+ * длительности — в микросекундах.
+ */
+public interface ServerMetricsMBean {
+
+    /**
+     * @return Число принятых подключений.
+     */
+    long getAcceptedConnections();
+
+    /**
+     * @return Число открытых подключений.
+     */
+    long getActiveConnections();
+
+    /**
+     * @return Число зарегистрированных пользователей этого узла.
+     */
+    int getConnectedUsers();
+
+    /**
+     * @return Число завершённых TLS-рукопожатий.
+     */
+    long getHandshakeCount();
+
+    /**
+     * @return Средняя длительность TLS-рукопожатия.
+     */
+    double getHandshakeMeanMicros();
+
+    /**
+     * @return 99-й процентиль длительности TLS-рукопожатия.
+     */
+    long getHandshakeP99Micros();
+
+    /**
+     * @return Число сообщений и команд, полученных от клиентов.
+     */
+    long getMessagesIn();
+
+    /**
+     * @return Число сообщений, записанных клиентам.
+     */
+    long getMessagesOut();
+
+    /**
+     * @return Сообщений от клиентов в секунду за последнюю секунду.
+     */
+    double getMessagesInPerSecond();
+
+    /**
+     * @return Сообщений клиентам в секунду за последнюю секунду.
+     */
+    double getMessagesOutPerSecond();
+
+    /**
+     * @return Число байтов, записанных клиентам (до шифрования TLS).
+     */
+    long getBytesWritten();
+
+    /**
+     * @return Число сбросов исходящих очередей в сокеты.
+     */
+    long getFlushCount();
+
+    /**
+     * @return Среднее число сообщений, отправленных одним сбросом (1 — без объединения).
+     */
+    double getAverageMessagesPerFlush();
+
+    /**
+     * @return Средний объём одного сброса в байтах.
+     */
+    double getAverageBytesPerFlush();
+
+    /**
+     * @return Число рассылок по комнатам.
+     */
+    long getBroadcastCount();
+
+    /**
+     * @return Медиана длительности рассылки (снимок участников и постановка в очереди).
+     */
+    long getBroadcastP50Micros();
+
+    /**
+     * @return 99-й процентиль длительности рассылки.
+     */
+    long getBroadcastP99Micros();
+
+    /**
+     * @return Наибольшая длительность рассылки.
+     */
+    long getBroadcastMaxMicros();
+
+    /**
+     * @return Суммарная глубина исходящих очередей клиентов.
+     */
+    long getOutboundQueueDepth();
+
+    /**
+     * @return Наибольшая глубина исходящей очереди среди клиентов.
+     */
+    int getMaxOutboundQueueDepth();
+
+    /**
+     * @return Число пользователей, отключённых командой {@code /kick} на этом узле.
+     */
+    long getKicks();
+}
@@ -1,5 +1,8 @@
 package org.serverchat;
 
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.scene.Scene;
@@ -7,22 +10,32 @@ import javafx.scene.control.Label;
 import javafx.scene.image.Image;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 
+import java.util.Locale;
 import java.util.Objects;
 import java.util.Optional;
 
 /**
  * Класс {@code ServerUI} отвечает за отображение пользовательского интерфейса сервера чата.
  * Он использует JavaFX для создания окна с информацией о сервере, а также запускает сервер в отдельном потоке.
+ * Под адресом сервера раз в секунду обновляются основные метрики из {@link ServerMetrics}.
  * <p>
  * Переменные:
  * <ul>
  *     <li>{@code server} — экземпляр класса {@code Server}, который управляет запуском и обслуживанием серверной части чата.</li>
+ *     <li>{@code connectionsLabel}, {@code messagesLabel}, {@code broadcastLabel}, {@code queuesLabel} — метки с метриками сервера.</li>
+ *     <li>{@code metricsTimeline} — таймер обновления меток с метриками.</li>
  * </ul>
  */
 public class ServerUI extends Application {
 
     private Server server;
+    private final Label connectionsLabel = new Label();
+    private final Label messagesLabel = new Label();
+    private final Label broadcastLabel = new Label();
+    private final Label queuesLabel = new Label();
+    private Timeline metricsTimeline;
 
     /**
      * Статический метод для запуска серверного интерфейса.
@@ -57,7 +70,7 @@ public class ServerUI extends Application {
         layout.getStyleClass().add("vbox-layout");
 
         String ip = "127.0.0.1";
-        int port = 8040; // Порт сервера
+        int port = Server.getPort(); // Порт сервера
 
         Label statusLabel = new Label("Сервер запущен!");
         statusLabel.getStyleClass().add("bold-label");
@@ -66,11 +79,31 @@ public class ServerUI extends Application {
 
         Label portLabel = new Label("Port: " + port);
 
-        layout.getChildren().addAll(statusLabel, ipLabel, portLabel);
+        layout.getChildren().addAll(statusLabel, ipLabel, portLabel,
+                connectionsLabel, messagesLabel, broadcastLabel, queuesLabel);
+
+        updateMetrics();
+        metricsTimeline = new Timeline(new KeyFrame(Duration.seconds(1), event -> updateMetrics()));
+        metricsTimeline.setCycleCount(Animation.INDEFINITE);
+        metricsTimeline.play();
 
         return layout;
     }
 
+    /**
+     * Обновляет метки с метриками сервера. Вызывается в потоке JavaFX.
+     */
+    private void updateMetrics() {
+        ServerMetrics metrics = ServerMetrics.get();
+        connectionsLabel.setText(String.format(Locale.ROOT, "Подключения: %d (всего %d)",
+                metrics.getActiveConnections(), metrics.getAcceptedConnections()));
+        messagesLabel.setText(String.format(Locale.ROOT, "Сообщений/с: %.0f вх. / %.0f исх.",
+                metrics.getMessagesInPerSecond(), metrics.getMessagesOutPerSecond()));
+        broadcastLabel.setText(String.format(Locale.ROOT, "Рассылка p99: %d мкс", metrics.getBroadcastP99Micros()));
+        queuesLabel.setText(String.format(Locale.ROOT, "Очереди: %d (макс. %d), кики: %d",
+                metrics.getOutboundQueueDepth(), metrics.getMaxOutboundQueueDepth(), metrics.getKicks()));
+    }
+
     /**
      * Настраивает сцену с элементами интерфейса и отображает её в указанном окне.
      *
@@ -78,7 +111,7 @@ public class ServerUI extends Application {
      * @param layout layout с элементами интерфейса.
      */
     private void setupScene(Stage primaryStage, VBox layout) {
-        Scene scene = new Scene(layout, 200, 100);
+        Scene scene = new Scene(layout, 260, 220);
         scene.getStylesheets().add(Objects.requireNonNull(getClass().getResource("/img/styles.css")).toExternalForm());
 
         Image icon = new Image(Objects.requireNonNull(getClass().getResourceAsStream("/img/icon1.png")));
@@ -106,6 +139,7 @@ public class ServerUI extends Application {
      * При закрытии окна приложение корректно завершает работу.
      */
     private void handleCloseRequest() {
+        Optional.ofNullable(metricsTimeline).ifPresent(Timeline::stop);
         Optional.ofNullable(server).ifPresent(Server::stopServer);
         Platform.exit(); // Закрытие приложения
     }
@@ -0,0 +1,205 @@
+package org.serverchat;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.net.ssl.SSLSocket;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Блокирующий транспорт поверх {@link SSLSocket}.
+ * Используется сервером в режиме «поток на соединение».
+ * Сообщения ставятся в {@link OutboundQueue}, а в сокет их записывает отдельная задача-писатель,
+ * поэтому поток отправителя никогда не блокируется на медленном клиенте.
+ * Писатель копирует уже закодированные байты сообщений в буфер и сбрасывает его, как только очередь опустела;
+ * если сообщения идут непрерывно, буфер сбрасывается не реже бюджета задержки {@link FlushStats#BUDGET_NANOS}.
+ *
+ * <p>Переменные класса:</p>
+ * <ul>
+ *   <li>{@code PLATFORM_WRITERS} — Пул платформенных потоков-писателей для режима {@link ServerEngine#BLOCKING}.</li>
+ *   <li>{@code VIRTUAL_WRITERS} — Виртуальные потоки-писатели для режима {@link ServerEngine#VIRTUAL}.</li>
+ *   <li>{@code socket} — SSL-сокет клиента.</li>
+ *   <li>{@code outputStream} — Буферизованный поток для отправки данных клиенту.</li>
+ *   <li>{@code outboundQueue} — Очередь исходящих сообщений.</li>
+ *   <li>{@code wireFormat} — Формат, в котором сообщения кодируются для клиента.</li>
+ *   <li>{@code writerExecutor} — Исполнитель, в котором работает писатель.</li>
+ *   <li>{@code isWriterScheduled} — Флаг, что писатель уже запущен или поставлен в очередь.</li>
+ *   <li>{@code isCloseRequested} — Флаг, что после опустошения очереди сокет нужно закрыть.</li>
+ *   <li>{@code logger} — Логгер для записи действий и ошибок.</li>
+ * </ul>
+ */
+public class SocketTransport implements ClientTransport {
+
+    private static final Logger logger = LogManager.getLogger(SocketTransport.class);
+
+    public static final ExecutorService PLATFORM_WRITERS = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "client-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    public static final ExecutorService VIRTUAL_WRITERS = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("client-writer-", 0).factory());
+
+    private final SSLSocket socket;
+    private final OutputStream outputStream;
+    private final OutboundQueue outboundQueue = new OutboundQueue();
+    private final Executor writerExecutor;
+    private volatile WireFormat wireFormat = WireFormat.LINE;
+    private final AtomicBoolean isWriterScheduled = new AtomicBoolean(false);
+    private volatile boolean isCloseRequested = false;
+
+    /**
+     * Создаёт транспорт для указанного сокета.
+     *
+     * @param socket SSL-сокет клиента.
+     * @param writerExecutor Исполнитель для задачи, записывающей очередь в сокет.
+     * @throws IOException если не удалось открыть поток вывода.
+     */
+    public SocketTransport(SSLSocket socket, Executor writerExecutor) throws IOException {
+        this.socket = socket;
+        this.outputStream = new BufferedOutputStream(socket.getOutputStream(), 16 * 1024);
+        this.writerExecutor = writerExecutor;
+    }
+
+    @Override
+    public boolean send(OutboundMessage message) {
+        if (isCloseRequested || socket.isClosed()) {
+            return true; // Поток закрыт
+        }
+        if (!outboundQueue.offer(message, wireFormat)) {
+            return false;
+        }
+        scheduleWriter();
+        return true;
+    }
+
+    @Override
+    public OutboundQueue getOutboundQueue() {
+        return outboundQueue;
+    }
+
+    @Override
+    public void setWireFormat(WireFormat wireFormat) {
+        this.wireFormat = wireFormat;
+    }
+
+    @Override
+    public WireFormat getWireFormat() {
+        return wireFormat;
+    }
+
+    /**
+     * Запускает писателя, если он ещё не запущен.
+     */
+    private void scheduleWriter() {
+        if (isWriterScheduled.compareAndSet(false, true)) {
+            writerExecutor.execute(this::drainQueue);
+        }
+    }
+
+    /**
+     * Записывает сообщения из очереди в сокет, пока очередь не опустеет.
+     * После опустошения очереди закрывает сокет, если было запрошено закрытие.
+     */
+    private void drainQueue() {
+        do {
+            try {
+                writeBatch();
+            } catch (IOException e) {
+                // Клиент отключился: поток чтения обнаружит это и освободит ресурсы
+                abort();
+            }
+            isWriterScheduled.set(false);
+            // Повторяем, если за время выхода в очередь добавили сообщения и писатель ещё не перезапущен
+        } while (!outboundQueue.isEmpty() && !socket.isClosed() && isWriterScheduled.compareAndSet(false, true));
+
+        if (isCloseRequested) {
+            closeSocket();
+        }
+    }
+
+    /**
+     * Записывает сообщения в буфер и сбрасывает его в сокет одной записью, как только очередь опустела.
+     * Если сообщения идут непрерывно, буфер сбрасывается по истечении бюджета задержки.
+     *
+     * @throws IOException при ошибке записи.
+     */
+    private void writeBatch() throws IOException {
+        int pendingMessages = 0;
+        long pendingBytes = 0;
+        long firstPendingAt = 0;
+        while (!socket.isClosed()) {
+            OutboundMessage message = outboundQueue.poll();
+            if (message == null) {
+                break;
+            }
+            message.writeTo(outputStream, wireFormat);
+            if (pendingMessages++ == 0) {
+                firstPendingAt = System.nanoTime();
+            }
+            pendingBytes += message.length(wireFormat);
+            if (FlushStats.BUDGET_NANOS > 0 && System.nanoTime() - firstPendingAt >= FlushStats.BUDGET_NANOS) {
+                outputStream.flush();
+                FlushStats.recordFlush(pendingMessages, pendingBytes);
+                pendingMessages = 0;
+                pendingBytes = 0;
+            }
+        }
+        outputStream.flush();
+        FlushStats.recordFlush(pendingMessages, pendingBytes);
+    }
+
+    @Override
+    public boolean isClosed() {
+        return socket.isClosed();
+    }
+
+    @Override
+    public String getRemoteAddress() {
+        return String.valueOf(socket.getInetAddress());
+    }
+
+    /**
+     * Запрашивает закрытие: писатель отправит оставшиеся сообщения и закроет сокет.
+     */
+    @Override
+    public void close() {
+        isCloseRequested = true;
+        if (isWriterScheduled.compareAndSet(false, true)) {
+            writerExecutor.execute(this::drainQueue);
+        }
+    }
+
+    @Override
+    public void abort() {
+        try {
+            // Нулевой SO_LINGER: закрытие не ждёт писателя, заблокированного на медленном клиенте
+            socket.setSoLinger(true, 0);
+            socket.close();
+        } catch (IOException e) {
+            // Сокет уже закрыт
+        }
+    }
+
+    /**
+     * Закрывает поток вывода и сокет.
+     */
+    private void closeSocket() {
+        try {
+            if (!socket.isClosed()) {
+                outputStream.close();
+                socket.close();
+            }
+        } catch (IOException e) {
+            if (!"Socket closed".equals(e.getMessage())) {
+                logger.error("Error closing connection: {}", e.getMessage());
+            }
+        }
+    }
+}
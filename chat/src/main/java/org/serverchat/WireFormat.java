@@ -0,0 +1,58 @@
+package org.serverchat;
+
+import org.protocolchat.Frame;
+import org.protocolchat.FrameCompression;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Формат, в котором сервер отправляет данные клиенту.
+ * Определяется по первому байту, полученному от клиента (см. {@link InboundDecoder}),
+ * и по версии протокола, согласованной с бинарным клиентом.
+ */
+public enum WireFormat {
+
+    /** Строковый протокол: одна строка UTF-8 на сообщение, команды в виде {@code /команда аргументы}. */
+    LINE,
+
+    /** Бинарный протокол {@link org.protocolchat.Protocol}: кадры с длиной и кодом операции. */
+    BINARY,
+
+    /**
+     * Бинарный протокол, в котором кадры не меньше порога {@value #COMPRESSION_THRESHOLD_PROPERTY}
+     * сжимаются ({@link FrameCompression}).
+     */
+    COMPRESSED,
+
+    /**
+     * Бинарный протокол версии {@link org.protocolchat.Protocol#SEQUENCE_VERSION}: кадры сжимаются, как в
+     * {@link #COMPRESSED}, а сообщения комнат отправляются с порядковым номером
+     * ({@link org.protocolchat.Opcode#ROOM_MESSAGE}).
+     */
+    SEQUENCED;
+
+    /**
+     * Имя системного свойства для порога сжатия в байтах ({@code 0} — не сжимать и не предлагать сжатие клиентам).
+     */
+    public static final String COMPRESSION_THRESHOLD_PROPERTY = "chat.server.compressionThreshold";
+
+    /**
+     * Порог сжатия кадров.
+     */
+    public static final int COMPRESSION_THRESHOLD =
+            Integer.getInteger(COMPRESSION_THRESHOLD_PROPERTY, FrameCompression.DEFAULT_THRESHOLD);
+
+    /**
+     * Кодирует кадр в этом формате.
+     *
+     * @param frame Кадр для отправки.
+     * @return Байты для записи в сокет.
+     */
+    public byte[] encode(Frame frame) {
+        return switch (this) {
+            case LINE -> (frame.toLine() + "\n").getBytes(StandardCharsets.UTF_8);
+            case BINARY -> frame.encode();
+            case COMPRESSED, SEQUENCED -> FrameCompression.compress(frame, COMPRESSION_THRESHOLD).encode();
+        };
+    }
+}
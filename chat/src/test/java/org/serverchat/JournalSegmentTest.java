@@ -0,0 +1,117 @@
+package org.serverchat;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Проверки сегмента журнала: чтение по номеру, поиск по времени и восстановление после обрыва записи.
+ */
+class JournalSegmentTest {
+
+    private static final String TEXT = "x".repeat(200);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsFromSequenceInsideSegment() throws IOException {
+        JournalSegment segment = JournalSegment.create(directory, 1);
+        appendRecords(segment, 1, 100);
+
+        List<JournalRecord> records = new ArrayList<>();
+        segment.read(40, 5, records);
+
+        assertEquals(List.of(40L, 41L, 42L, 43L, 44L), sequences(records));
+        assertEquals(TEXT + 40, records.get(0).text());
+        segment.close();
+    }
+
+    @Test
+    void findsFirstRecordNotEarlierThanTimestamp() throws IOException {
+        JournalSegment segment = JournalSegment.create(directory, 1);
+        appendRecords(segment, 1, 100);
+
+        assertEquals(1, segment.findSequence(0));
+        assertEquals(1, segment.findSequence(1000));
+        assertEquals(26, segment.findSequence(25_500));
+        assertEquals(80, segment.findSequence(80_000));
+        assertEquals(-1, segment.findSequence(100_001));
+        segment.close();
+    }
+
+    @Test
+    void recoverTruncatesPartialLastRecord() throws IOException {
+        JournalSegment segment = JournalSegment.create(directory, 1);
+        appendRecords(segment, 1, 10);
+        long intactSize = segment.getSize() - encodedSize(10);
+        segment.close();
+        Path log = directory.resolve(String.format("%020d", 1) + JournalSegment.LOG_SUFFIX);
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            channel.truncate(intactSize + 7);
+        }
+
+        JournalSegment recovered = JournalSegment.open(directory, 1, true);
+
+        assertEquals(10, recovered.getNextSequence());
+        assertEquals(intactSize, recovered.getSize());
+        assertEquals(intactSize, Files.size(log));
+        List<JournalRecord> records = new ArrayList<>();
+        recovered.read(1, 100, records);
+        assertEquals(9, records.size());
+
+        recovered.append(new JournalRecord(10, 10_000, "general", "after recovery"));
+        recovered.flush();
+        records.clear();
+        recovered.read(9, 100, records);
+        assertEquals(List.of(9L, 10L), sequences(records));
+        assertEquals("after recovery", records.get(1).text());
+        recovered.close();
+    }
+
+    @Test
+    void recoverTruncatesRecordWithBadChecksum() throws IOException {
+        JournalSegment segment = JournalSegment.create(directory, 1);
+        appendRecords(segment, 1, 3);
+        long size = segment.getSize();
+        segment.close();
+        Path log = directory.resolve(String.format("%020d", 1) + JournalSegment.LOG_SUFFIX);
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{'?'}), size - 10);
+        }
+
+        JournalSegment recovered = JournalSegment.open(directory, 1, true);
+
+        assertEquals(3, recovered.getNextSequence());
+        assertEquals(size - encodedSize(3), recovered.getSize());
+        recovered.close();
+    }
+
+    /**
+     * Дописывает записи с номерами {@code from..to} и временем {@code номер * 1000} и сбрасывает их в файл.
+     */
+    private static void appendRecords(JournalSegment segment, long from, long to) throws IOException {
+        for (long sequence = from; sequence <= to; sequence++) {
+            segment.append(new JournalRecord(sequence, sequence * 1000, "general", TEXT + sequence));
+        }
+        segment.flush();
+    }
+
+    private static long encodedSize(long sequence) {
+        return 4 + 8 + 8 + 2 + "general".length() + (TEXT + sequence).length() + 4;
+    }
+
+    private static List<Long> sequences(List<JournalRecord> records) {
+        return records.stream().map(JournalRecord::sequence).toList();
+    }
+}
@@ -0,0 +1,132 @@
+package org.serverchat;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Проверки журнала сообщений: запись через несколько сегментов, повторное открытие, поиск и срок хранения.
+ */
+class MessageJournalTest {
+
+    private static final long SEGMENT_BYTES = 1024;
+    private static final long UNLIMITED_BYTES = Long.MAX_VALUE;
+    private static final long UNLIMITED_MILLIS = TimeUnit.DAYS.toMillis(365);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void roundTripsRecordsAcrossSegmentRoll() throws IOException {
+        MessageJournal journal = open(UNLIMITED_BYTES, UNLIMITED_MILLIS);
+        for (int i = 1; i <= 100; i++) {
+            assertEquals(i, journal.append(i % 2 == 0 ? "general" : "dev", "message " + i));
+        }
+        journal.close();
+        assertTrue(segmentCount() > 1);
+
+        MessageJournal reopened = open(UNLIMITED_BYTES, UNLIMITED_MILLIS);
+        List<JournalRecord> records = reopened.read(1, 1000);
+
+        assertEquals(100, records.size());
+        for (int i = 0; i < records.size(); i++) {
+            JournalRecord record = records.get(i);
+            assertEquals(i + 1, record.sequence());
+            assertEquals((i + 1) % 2 == 0 ? "general" : "dev", record.room());
+            assertEquals("message " + (i + 1), record.text());
+        }
+        assertEquals(List.of(60L, 61L), reopened.read(60, 2).stream().map(JournalRecord::sequence).toList());
+        assertEquals(101, reopened.append("general", "after reopen"));
+        reopened.close();
+    }
+
+    @Test
+    void findsSequenceByTime() throws IOException {
+        MessageJournal journal = open(UNLIMITED_BYTES, UNLIMITED_MILLIS);
+        long before = System.currentTimeMillis();
+        for (int i = 1; i <= 50; i++) {
+            journal.append("general", "message " + i);
+        }
+        journal.close();
+
+        MessageJournal reopened = open(UNLIMITED_BYTES, UNLIMITED_MILLIS);
+        List<JournalRecord> records = reopened.read(1, 1000);
+        JournalRecord middle = records.get(30);
+
+        assertEquals(1, reopened.findSequence(before - 1));
+        long found = reopened.findSequence(middle.timestamp());
+        assertTrue(found <= middle.sequence());
+        assertTrue(records.get((int) found - 1).timestamp() >= middle.timestamp());
+        assertTrue(found == 1 || records.get((int) found - 2).timestamp() < middle.timestamp());
+        assertEquals(51, reopened.findSequence(Long.MAX_VALUE));
+        reopened.close();
+    }
+
+    @Test
+    void retentionDeletesOldestSegmentsBeyondSize() throws IOException {
+        MessageJournal journal = open(SEGMENT_BYTES * 2, UNLIMITED_MILLIS);
+        for (int i = 1; i <= 200; i++) {
+            journal.append("general", "message " + i);
+        }
+        journal.close();
+
+        assertTrue(segmentCount() <= 3);
+        MessageJournal reopened = open(SEGMENT_BYTES * 2, UNLIMITED_MILLIS);
+        List<JournalRecord> records = reopened.read(1, 1000);
+        assertTrue(records.get(0).sequence() > 1);
+        assertEquals(200, records.get(records.size() - 1).sequence());
+        assertEquals(200 - records.get(0).sequence() + 1, records.size());
+        reopened.close();
+    }
+
+    @Test
+    void retentionDeletesExpiredSegments() throws IOException {
+        MessageJournal journal = open(UNLIMITED_BYTES, UNLIMITED_MILLIS);
+        for (int i = 1; i <= 100; i++) {
+            journal.append("general", "message " + i);
+        }
+        journal.close();
+        List<Path> logs = segmentLogs();
+        FileTime expired = FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(2));
+        for (Path log : logs.subList(0, logs.size() - 1)) {
+            Files.setLastModifiedTime(log, expired);
+        }
+
+        MessageJournal reopened = open(UNLIMITED_BYTES, TimeUnit.HOURS.toMillis(1));
+
+        assertEquals(List.of(logs.get(logs.size() - 1)), segmentLogs());
+        List<JournalRecord> records = reopened.read(1, 1000);
+        assertEquals(100, records.get(records.size() - 1).sequence());
+        assertEquals(101, reopened.append("general", "after retention"));
+        reopened.close();
+    }
+
+    private MessageJournal open(long retentionBytes, long retentionMillis) throws IOException {
+        MessageJournal journal = new MessageJournal(directory, SEGMENT_BYTES, MessageJournal.FsyncPolicy.NEVER, 0,
+                retentionBytes, retentionMillis, 1024, MessageJournal.OverflowPolicy.BLOCK);
+        journal.open();
+        return journal;
+    }
+
+    private int segmentCount() throws IOException {
+        return segmentLogs().size();
+    }
+
+    private List<Path> segmentLogs() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(JournalSegment.LOG_SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+    }
+}
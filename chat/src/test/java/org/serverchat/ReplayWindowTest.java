@@ -0,0 +1,74 @@
+package org.serverchat;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Проверки окна повтора: покрытие номеров, вытеснение и поиск повторно отправленных сообщений.
+ */
+class ReplayWindowTest {
+
+    /**
+     * Комната, созданная заново (например, после того как её покинули все участники), не рассылала сообщений,
+     * которые клиент мог пропустить, поэтому восстановление в неё не должно сообщать о пропуске.
+     */
+    @Test
+    void newWindowCoversSequencesIssuedBeforeItWasCreated() {
+        long resumeAfter = ReplayWindow.nextSequence();
+        ReplayWindow.nextSequence();
+
+        ReplayWindow window = new ReplayWindow(4);
+
+        assertTrue(window.covers(resumeAfter));
+        assertTrue(window.since(resumeAfter, "alice").isEmpty());
+    }
+
+    @Test
+    void evictedMessagesAreNoLongerCovered() {
+        ReplayWindow window = new ReplayWindow(2);
+        long first = add(window, "bob", null, "one");
+        long second = add(window, "bob", null, "two");
+        add(window, "bob", null, "three");
+
+        assertFalse(window.covers(first - 1));
+        assertTrue(window.covers(first));
+        assertEquals(List.of("three"), texts(window.since(second, "alice")));
+    }
+
+    @Test
+    void sinceSkipsOwnMessagesOfResumingClient() {
+        ReplayWindow window = new ReplayWindow(4);
+        long start = ReplayWindow.lastSequence();
+        add(window, "Alice", null, "mine");
+        add(window, "bob", null, "theirs");
+
+        assertEquals(List.of("theirs"), texts(window.since(start, "alice")));
+    }
+
+    @Test
+    void findsResentMessageUntilItIsEvicted() {
+        ReplayWindow window = new ReplayWindow(1);
+        long sequence = add(window, "Alice", "c1", "hello");
+
+        assertEquals(sequence, window.find("ALICE", "c1"));
+        assertEquals(-1, window.find("bob", "c1"));
+
+        add(window, "bob", null, "next");
+        assertEquals(-1, window.find("alice", "c1"));
+    }
+
+    private static long add(ReplayWindow window, String author, String clientId, String text) {
+        long sequence = ReplayWindow.nextSequence();
+        window.add(sequence, author, clientId, OutboundMessage.of(text));
+        return sequence;
+    }
+
+    private static List<String> texts(List<OutboundMessage> messages) {
+        return messages.stream().map(message -> message.getFrame().getText()).toList();
+    }
+}